@@ -2,11 +2,15 @@ package gaston.fernandez.spacex;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Clase principal de la aplicacion. En este proyecto usare Lombok para la generacion automatica de codigo mediante sus anotaciones
+ * <p>
+ * Se habilita la planificacion de tareas para refrescar en segundo plano el snapshot de lanzamientos.
  */
 @SpringBootApplication
+@EnableScheduling
 public class SpacexApplication {
 
 	/**
@@ -0,0 +1,18 @@
+package gaston.fernandez.spacex.collections;
+
+/**
+ * Resultado ya parseado de un endpoint de SpaceX junto con los validadores HTTP
+ * (ETag y Last-Modified) con los que se obtuvo.
+ * <p>
+ * Los validadores se reenvian como <code>If-None-Match</code> e
+ * <code>If-Modified-Since</code> en la siguiente peticion; si el servidor
+ * responde 304 se reutiliza <code>value</code> sin descargar ni parsear nada.
+ *
+ * @param <T>          el tipo del valor parseado
+ * @param etag         el ETag de la respuesta, o <code>null</code> si no vino
+ * @param lastModified el Last-Modified de la respuesta, o <code>null</code> si
+ *                     no vino
+ * @param value        el valor parseado de la respuesta
+ */
+public record CachedResponse<T>(String etag, String lastModified, T value) {
+}
@@ -0,0 +1,84 @@
+package gaston.fernandez.spacex.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Buffer circular con los ultimos eventos de cambios de lanzamientos, para que
+ * un cliente que se reconecta pueda recibir los que se perdio.
+ * <p>
+ * Los ids de los eventos son consecutivos, por lo que la posicion de un evento
+ * en el buffer se calcula a partir de su id. No es seguro para uso concurrente:
+ * quien lo usa debe sincronizar el acceso.
+ */
+public final class ChangeEventLog {
+
+    /**
+     * Evento ya serializado como frame de Server-Sent Events.
+     *
+     * @param id    el id del evento
+     * @param frame los bytes del frame, compartidos por todos los suscriptores
+     */
+    public record ChangeEvent(long id, byte[] frame) {
+    }
+
+    private final ChangeEvent[] events;
+
+    private long nextId;
+
+    private int size;
+
+    /**
+     * Crea un buffer vacio.
+     *
+     * @param capacity la cantidad maxima de eventos que se conservan
+     * @param firstId  el id del primer evento que se agregue
+     */
+    public ChangeEventLog(int capacity, long firstId) {
+        this.events = new ChangeEvent[Math.max(1, capacity)];
+        this.nextId = firstId;
+    }
+
+    /**
+     * Retorna el id que va a tener el proximo evento.
+     *
+     * @return el id del proximo evento
+     */
+    public long nextId() {
+        return nextId;
+    }
+
+    /**
+     * Agrega un evento, descartando el mas viejo si el buffer esta lleno.
+     *
+     * @param frame los bytes del frame; debe tener el id {@link #nextId()}
+     * @return el evento agregado
+     */
+    public ChangeEvent append(byte[] frame) {
+        ChangeEvent event = new ChangeEvent(nextId, frame);
+        events[(int) Math.floorMod(nextId, (long) events.length)] = event;
+        nextId++;
+        size = Math.min(size + 1, events.length);
+        return event;
+    }
+
+    /**
+     * Retorna los eventos posteriores al id indicado, del mas viejo al mas
+     * nuevo.
+     *
+     * @param lastId el id del ultimo evento que recibio el cliente
+     * @return los eventos posteriores, o <code>null</code> si el id no es de este
+     *         buffer o alguno de los eventos posteriores ya se descarto
+     */
+    public List<ChangeEvent> since(long lastId) {
+        long oldest = nextId - size;
+        if (lastId < oldest - 1 || lastId >= nextId) {
+            return null;
+        }
+        List<ChangeEvent> missed = new ArrayList<>((int) (nextId - 1 - lastId));
+        for (long id = lastId + 1; id < nextId; id++) {
+            missed.add(events[(int) Math.floorMod(id, (long) events.length)]);
+        }
+        return missed;
+    }
+}
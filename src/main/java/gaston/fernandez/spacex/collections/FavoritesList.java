@@ -1,45 +1,187 @@
 package gaston.fernandez.spacex.collections;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import gaston.fernandez.spacex.dtos.SpexLunches;
-import lombok.AllArgsConstructor;
-import lombok.Getter;
-import lombok.NoArgsConstructor;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
 
 /**
- * Clase que representa una lista de favoritos de lanzamientos de SpaceX.
+ * Clase que representa la lista de favoritos de lanzamientos de SpaceX de un
+ * usuario.
  * <p>
- * <ul>
- *     <li> Se utiliza la anotacion @Getter de Lombok para generar los metodos getter</li>
- *     <li> Se utiliza la anotacion @NoArgsConstructor de Lombok para generar un constructor vacio</li>
- *     <li> Se utiliza la anotacion @AllArgsConstructor de Lombok para generar un constructor con todos los atributos de la clase</li>
- * </ul>
+ * Es inmutable: guarda solo los numeros de vuelo, ordenados, en un arreglo de
+ * enteros primitivos (4 bytes por favorito), y cada modificacion retorna una
+ * nueva instancia con una nueva version. Los lanzamientos completos se
+ * resuelven contra el snapshot vigente al momento de leerlos.
  */
-@NoArgsConstructor
-@AllArgsConstructor
-@Getter
-public class FavoritesList {
-    List<SpexLunches> favorites = new ArrayList<>();
-
-
-    /**
-     * Obtiene un lanzamiento de SpaceX de la lista de favoritos
-     * segun su numero de vuelo.
-     * 
-     * @param flightNumber el n mero de vuelo del lanzamiento que se
-     *                     desea obtener de la lista de favoritos
-     * @return el lanzamiento de SpaceX con el n mero de vuelo
-     *         especificado, o null si no se encuentra en la lista
-     *         de favoritos
-     */
-    public SpexLunches getFavorite(int flightNumber) {
-        for (SpexLunches spexLunches : favorites) {
-            if (spexLunches.getFlightNumber() == flightNumber) {
-                return spexLunches;
+public final class FavoritesList {
+
+    /**
+     * Lista sin favoritos.
+     */
+    public static final FavoritesList EMPTY = new FavoritesList(new int[0], 0L);
+
+    private final int[] flightNumbers;
+
+    private final long version;
+
+    private FavoritesList(int[] flightNumbers, long version) {
+        this.flightNumbers = flightNumbers;
+        this.version = version;
+    }
+
+    /**
+     * Crea una lista de favoritos a partir de un arreglo de numeros de vuelo, que
+     * se copia, ordena y depura de repetidos.
+     *
+     * @param flightNumbers los numeros de vuelo favoritos
+     * @param version       la version de la lista
+     * @return la lista de favoritos
+     */
+    public static FavoritesList of(int[] flightNumbers, long version) {
+        int[] sorted = Arrays.stream(flightNumbers).sorted().distinct().toArray();
+        return new FavoritesList(sorted, version);
+    }
+
+    /**
+     * Indica si el numero de vuelo esta en la lista de favoritos.
+     *
+     * @param flightNumber el numero de vuelo a buscar
+     * @return <code>true</code> si el numero de vuelo es favorito
+     */
+    public boolean contains(int flightNumber) {
+        return Arrays.binarySearch(flightNumbers, flightNumber) >= 0;
+    }
+
+    /**
+     * Retorna una lista con el numero de vuelo agregado. Si ya estaba, retorna
+     * esta misma instancia.
+     *
+     * @param flightNumber el numero de vuelo a agregar
+     * @param version      la version de la nueva lista
+     * @return la lista con el numero de vuelo agregado
+     */
+    public FavoritesList with(int flightNumber, long version) {
+        int position = Arrays.binarySearch(flightNumbers, flightNumber);
+        if (position >= 0) {
+            return this;
+        }
+        int insertAt = -position - 1;
+        int[] updated = new int[flightNumbers.length + 1];
+        System.arraycopy(flightNumbers, 0, updated, 0, insertAt);
+        updated[insertAt] = flightNumber;
+        System.arraycopy(flightNumbers, insertAt, updated, insertAt + 1, flightNumbers.length - insertAt);
+        return new FavoritesList(updated, version);
+    }
+
+    /**
+     * Retorna una lista sin el numero de vuelo indicado. Si no estaba, retorna
+     * esta misma instancia.
+     *
+     * @param flightNumber el numero de vuelo a quitar
+     * @param version      la version de la nueva lista
+     * @return la lista sin el numero de vuelo
+     */
+    public FavoritesList without(int flightNumber, long version) {
+        int position = Arrays.binarySearch(flightNumbers, flightNumber);
+        if (position < 0) {
+            return this;
+        }
+        int[] updated = new int[flightNumbers.length - 1];
+        System.arraycopy(flightNumbers, 0, updated, 0, position);
+        System.arraycopy(flightNumbers, position + 1, updated, position, updated.length - position);
+        return new FavoritesList(updated, version);
+    }
+
+    /**
+     * Aplica en una sola pasada una secuencia de altas y bajas y retorna la lista
+     * resultante con una unica version nueva. Las operaciones se aplican en
+     * orden, como si se ejecutaran una por una, pero el arreglo resultante se
+     * arma una sola vez. Si ninguna operacion cambia la lista, retorna esta misma
+     * instancia y no se pide una version.
+     *
+     * @param flightNumbers los numeros de vuelo de cada operacion
+     * @param adds          <code>true</code> en las operaciones de alta y
+     *                      <code>false</code> en las de baja
+     * @param changed       se completa con <code>true</code> en las operaciones
+     *                      que modificaron la lista
+     * @param version       provee la version de la nueva lista
+     * @return la lista con las operaciones aplicadas
+     */
+    public FavoritesList apply(int[] flightNumbers, boolean[] adds, boolean[] changed, LongSupplier version) {
+        // Estado final de cada numero de vuelo tocado: 1 favorito, 0 no favorito.
+        FlightNumberIndex state = new FlightNumberIndex(flightNumbers.length);
+        boolean anyChange = false;
+        for (int i = 0; i < flightNumbers.length; i++) {
+            int previous = state.put(flightNumbers[i], adds[i] ? 1 : 0);
+            boolean present = previous == FlightNumberIndex.NOT_FOUND ? contains(flightNumbers[i]) : previous == 1;
+            changed[i] = present != adds[i];
+            anyChange |= changed[i];
+        }
+        if (!anyChange) {
+            return this;
+        }
+        int[] added = new int[flightNumbers.length];
+        int addedCount = 0;
+        for (int i = 0; i < flightNumbers.length; i++) {
+            int flightNumber = flightNumbers[i];
+            if (state.get(flightNumber) == 1 && !contains(flightNumber)) {
+                added[addedCount++] = flightNumber;
+                // Marca el numero como ya agregado para no repetirlo.
+                state.put(flightNumber, 2);
             }
         }
-        return null;
+        Arrays.sort(added, 0, addedCount);
+        int[] updated = new int[this.flightNumbers.length + addedCount];
+        int size = 0;
+        int next = 0;
+        for (int flightNumber : this.flightNumbers) {
+            while (next < addedCount && added[next] < flightNumber) {
+                updated[size++] = added[next++];
+            }
+            if (state.get(flightNumber) != 0) {
+                updated[size++] = flightNumber;
+            }
+        }
+        while (next < addedCount) {
+            updated[size++] = added[next++];
+        }
+        return new FavoritesList(Arrays.copyOf(updated, size), version.getAsLong());
+    }
+
+    /**
+     * Retorna el numero de vuelo en la posicion indicada, en orden ascendente.
+     *
+     * @param position la posicion, entre cero y {@link #size()} - 1
+     * @return el numero de vuelo
+     */
+    public int flightNumberAt(int position) {
+        return flightNumbers[position];
+    }
+
+    /**
+     * Retorna la cantidad de favoritos.
+     *
+     * @return la cantidad de favoritos
+     */
+    public int size() {
+        return flightNumbers.length;
+    }
+
+    /**
+     * Indica si la lista no tiene favoritos.
+     *
+     * @return <code>true</code> si no hay favoritos
+     */
+    public boolean isEmpty() {
+        return flightNumbers.length == 0;
+    }
+
+    /**
+     * Retorna la version de la lista. Cambia cada vez que se agrega o quita un
+     * favorito.
+     *
+     * @return la version de la lista
+     */
+    public long getVersion() {
+        return version;
     }
-}       
+}
@@ -0,0 +1,200 @@
+package gaston.fernandez.spacex.collections;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Almacen de las listas de favoritos de todos los usuarios.
+ * <p>
+ * Cada usuario tiene una {@link FavoritesList} inmutable dentro de un
+ * ConcurrentHashMap. Las lecturas no se bloquean y las escrituras solo
+ * sincronizan la entrada del usuario, sin un bloqueo global. Los usuarios que
+ * se quedan sin favoritos se eliminan del mapa.
+ */
+@Component
+public class FavoritesStore {
+
+    /**
+     * Usuario al que se asignan los favoritos cuando la peticion no indica
+     * ninguno.
+     */
+    public static final String DEFAULT_USER = "anonymous";
+
+    private static final Runnable NO_ACTION = () -> {
+    };
+
+    private final ConcurrentMap<String, FavoritesList> favorites = new ConcurrentHashMap<>();
+
+    private final AtomicLong versions = new AtomicLong();
+
+    /**
+     * Retorna la lista de favoritos del usuario.
+     *
+     * @param userId el identificador del usuario
+     * @return la lista de favoritos, vacia si el usuario no tiene ninguno
+     */
+    public FavoritesList get(String userId) {
+        return favorites.getOrDefault(userId, FavoritesList.EMPTY);
+    }
+
+    /**
+     * Agrega un numero de vuelo a los favoritos del usuario.
+     *
+     * @param userId       el identificador del usuario
+     * @param flightNumber el numero de vuelo a agregar
+     * @return la lista de favoritos resultante
+     */
+    public FavoritesList add(String userId, int flightNumber) {
+        return add(userId, flightNumber, NO_ACTION);
+    }
+
+    /**
+     * Agrega un numero de vuelo a los favoritos del usuario y, si la lista
+     * cambia, ejecuta <code>onChange</code> mientras se tiene tomada la entrada
+     * del usuario. Asi las acciones de dos escrituras concurrentes sobre el mismo
+     * usuario se ejecutan en el mismo orden en que se aplicaron.
+     *
+     * @param userId       el identificador del usuario
+     * @param flightNumber el numero de vuelo a agregar
+     * @param onChange     la accion a ejecutar si el numero de vuelo no estaba
+     * @return la lista de favoritos resultante
+     */
+    public FavoritesList add(String userId, int flightNumber, Runnable onChange) {
+        return favorites.compute(userId, (user, current) -> {
+            FavoritesList list = current == null ? FavoritesList.EMPTY : current;
+            if (list.contains(flightNumber)) {
+                return list;
+            }
+            FavoritesList updated = list.with(flightNumber, versions.incrementAndGet());
+            onChange.run();
+            return updated;
+        });
+    }
+
+    /**
+     * Quita un numero de vuelo de los favoritos del usuario.
+     *
+     * @param userId       el identificador del usuario
+     * @param flightNumber el numero de vuelo a quitar
+     * @return la lista de favoritos resultante, o <code>null</code> si el numero
+     *         de vuelo no estaba en los favoritos del usuario
+     */
+    public FavoritesList remove(String userId, int flightNumber) {
+        return remove(userId, flightNumber, NO_ACTION);
+    }
+
+    /**
+     * Quita un numero de vuelo de los favoritos del usuario y, si estaba,
+     * ejecuta <code>onChange</code> mientras se tiene tomada la entrada del
+     * usuario. Ver {@link #add(String, int, Runnable)}.
+     *
+     * @param userId       el identificador del usuario
+     * @param flightNumber el numero de vuelo a quitar
+     * @param onChange     la accion a ejecutar si el numero de vuelo estaba
+     * @return la lista de favoritos resultante, o <code>null</code> si el numero
+     *         de vuelo no estaba en los favoritos del usuario
+     */
+    public FavoritesList remove(String userId, int flightNumber, Runnable onChange) {
+        FavoritesList[] result = new FavoritesList[1];
+        favorites.computeIfPresent(userId, (user, current) -> {
+            if (!current.contains(flightNumber)) {
+                return current;
+            }
+            result[0] = current.without(flightNumber, versions.incrementAndGet());
+            onChange.run();
+            return result[0].isEmpty() ? null : result[0];
+        });
+        return result[0];
+    }
+
+    /**
+     * Aplica atomicamente una secuencia de altas y bajas a los favoritos del
+     * usuario. Ver {@link FavoritesList#apply}. Los lectores ven la lista
+     * anterior o la resultante de todas las operaciones, nunca un estado
+     * intermedio, y la version cambia una sola vez.
+     *
+     * @param userId        el identificador del usuario
+     * @param flightNumbers los numeros de vuelo de cada operacion
+     * @param adds          <code>true</code> en las operaciones de alta y
+     *                      <code>false</code> en las de baja
+     * @param changed       se completa con <code>true</code> en las operaciones
+     *                      que modificaron la lista
+     * @return la lista de favoritos resultante
+     */
+    public FavoritesList apply(String userId, int[] flightNumbers, boolean[] adds, boolean[] changed) {
+        return apply(userId, flightNumbers, adds, changed, NO_ACTION);
+    }
+
+    /**
+     * Aplica atomicamente una secuencia de altas y bajas a los favoritos del
+     * usuario y, si alguna modifico la lista, ejecuta <code>onChange</code>
+     * mientras se tiene tomada la entrada del usuario, con <code>changed</code>
+     * ya completo. Ver {@link #add(String, int, Runnable)}.
+     *
+     * @param userId        el identificador del usuario
+     * @param flightNumbers los numeros de vuelo de cada operacion
+     * @param adds          <code>true</code> en las operaciones de alta y
+     *                      <code>false</code> en las de baja
+     * @param changed       se completa con <code>true</code> en las operaciones
+     *                      que modificaron la lista
+     * @param onChange      la accion a ejecutar si alguna operacion modifico la
+     *                      lista
+     * @return la lista de favoritos resultante
+     */
+    public FavoritesList apply(String userId, int[] flightNumbers, boolean[] adds, boolean[] changed,
+            Runnable onChange) {
+        FavoritesList[] result = new FavoritesList[1];
+        favorites.compute(userId, (user, current) -> {
+            FavoritesList list = current == null ? FavoritesList.EMPTY : current;
+            result[0] = list.apply(flightNumbers, adds, changed, versions::incrementAndGet);
+            if (result[0] != list) {
+                onChange.run();
+            }
+            return result[0].isEmpty() ? null : result[0];
+        });
+        return result[0];
+    }
+
+    /**
+     * Reemplaza la lista de favoritos del usuario por los numeros de vuelo
+     * indicados. Se usa al recuperar los favoritos persistidos.
+     *
+     * @param userId        el identificador del usuario
+     * @param flightNumbers los numeros de vuelo favoritos
+     */
+    public void restore(String userId, int[] flightNumbers) {
+        if (flightNumbers.length == 0) {
+            favorites.remove(userId);
+        } else {
+            favorites.put(userId, FavoritesList.of(flightNumbers, versions.incrementAndGet()));
+        }
+    }
+
+    /**
+     * Espera a que termine cualquier escritura en curso sobre la entrada del
+     * usuario. Las acciones <code>onChange</code> se ejecutan antes de que la
+     * lista nueva sea visible; despues de llamar a este metodo, la lista de cada
+     * accion ya ejecutada se ve en {@link #get(String)} y {@link #forEach}.
+     *
+     * @param userId el identificador del usuario
+     */
+    public void settle(String userId) {
+        // compute toma el mismo bloqueo que las escrituras sobre la entrada.
+        favorites.compute(userId, (user, current) -> current);
+    }
+
+    /**
+     * Recorre las listas de favoritos de todos los usuarios que tienen al menos
+     * uno. Cada lista recibida es inmutable; el recorrido no bloquea a las
+     * escrituras concurrentes.
+     *
+     * @param action la accion a ejecutar para cada usuario y su lista
+     */
+    public void forEach(BiConsumer<String, FavoritesList> action) {
+        favorites.forEach(action);
+    }
+}
@@ -0,0 +1,164 @@
+package gaston.fernandez.spacex.collections;
+
+import java.util.Arrays;
+
+/**
+ * Indice de numeros de vuelo a posiciones enteras, con direccionamiento abierto
+ * sobre arreglos primitivos.
+ * <p>
+ * Las busquedas son O(1) y no generan objetos <code>Integer</code> ni entradas
+ * de mapa. La clase no es thread-safe: se arma completa antes de publicarse y a
+ * partir de ahi solo se lee.
+ */
+public class FlightNumberIndex {
+
+    /**
+     * Valor retornado cuando el numero de vuelo no esta en el indice.
+     */
+    public static final int NOT_FOUND = -1;
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+
+    private int[] values;
+
+    private int mask;
+
+    private int size;
+
+    /**
+     * Crea un indice vacio dimensionado para la cantidad de entradas esperada.
+     *
+     * @param expectedSize la cantidad de entradas esperada
+     */
+    public FlightNumberIndex(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Retorna la posicion asociada al numero de vuelo.
+     *
+     * @param flightNumber el numero de vuelo a buscar
+     * @return la posicion asociada, o {@link #NOT_FOUND} si no esta en el indice
+     */
+    public int get(int flightNumber) {
+        for (int slot = slot(flightNumber);; slot = (slot + 1) & mask) {
+            if (values[slot] == EMPTY) {
+                return NOT_FOUND;
+            }
+            if (keys[slot] == flightNumber) {
+                return values[slot];
+            }
+        }
+    }
+
+    /**
+     * Indica si el numero de vuelo esta en el indice.
+     *
+     * @param flightNumber el numero de vuelo a buscar
+     * @return <code>true</code> si el numero de vuelo esta en el indice
+     */
+    public boolean contains(int flightNumber) {
+        return get(flightNumber) != NOT_FOUND;
+    }
+
+    /**
+     * Asocia una posicion al numero de vuelo, reemplazando la anterior si existia.
+     *
+     * @param flightNumber el numero de vuelo
+     * @param position     la posicion a asociar, mayor o igual a cero
+     * @return la posicion anterior, o {@link #NOT_FOUND} si no existia
+     */
+    public int put(int flightNumber, int position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("La posicion debe ser mayor o igual a cero: " + position);
+        }
+        if ((size + 1) * 2 > values.length) {
+            rehash(values.length * 2);
+        }
+        for (int slot = slot(flightNumber);; slot = (slot + 1) & mask) {
+            if (values[slot] == EMPTY) {
+                keys[slot] = flightNumber;
+                values[slot] = position;
+                size++;
+                return NOT_FOUND;
+            }
+            if (keys[slot] == flightNumber) {
+                int previous = values[slot];
+                values[slot] = position;
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * Elimina el numero de vuelo del indice. Las entradas que quedan detras en la
+     * secuencia de sondeo se desplazan para no dejar huecos.
+     *
+     * @param flightNumber el numero de vuelo a eliminar
+     * @return la posicion que tenia asociada, o {@link #NOT_FOUND} si no existia
+     */
+    public int remove(int flightNumber) {
+        int gap = slot(flightNumber);
+        while (true) {
+            if (values[gap] == EMPTY) {
+                return NOT_FOUND;
+            }
+            if (keys[gap] == flightNumber) {
+                break;
+            }
+            gap = (gap + 1) & mask;
+        }
+        int removed = values[gap];
+        for (int next = (gap + 1) & mask; values[next] != EMPTY; next = (next + 1) & mask) {
+            int ideal = slot(keys[next]);
+            if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        values[gap] = EMPTY;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Retorna la cantidad de numeros de vuelo en el indice.
+     *
+     * @return la cantidad de entradas
+     */
+    public int size() {
+        return size;
+    }
+
+    private int slot(int flightNumber) {
+        int hash = flightNumber * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        return Math.max(capacity, 8);
+    }
+}
@@ -0,0 +1,11 @@
+package gaston.fernandez.spacex.collections;
+
+/**
+ * Pagina de resultados de una consulta sobre los lanzamientos.
+ *
+ * @param payload la pagina ya serializada
+ * @param total   la cantidad total de lanzamientos que cumplen los filtros,
+ *                sin aplicar el paginado
+ */
+public record LaunchPage(SerializedPayload payload, int total) {
+}
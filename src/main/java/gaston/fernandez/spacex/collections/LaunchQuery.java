@@ -0,0 +1,50 @@
+package gaston.fernandez.spacex.collections;
+
+/**
+ * Filtros y paginado de una consulta sobre los lanzamientos.
+ * <p>
+ * Los filtros en <code>null</code> no se aplican. El prefijo de mision se
+ * compara sin distinguir mayusculas de minusculas.
+ *
+ * @param rocketId      el id del cohete, o <code>null</code>
+ * @param active        si el cohete debe estar activo, o <code>null</code>
+ * @param minCost       el costo minimo por lanzamiento (inclusive), o
+ *                      <code>null</code>
+ * @param maxCost       el costo maximo por lanzamiento (inclusive), o
+ *                      <code>null</code>
+ * @param missionPrefix el prefijo del nombre de la mision, o <code>null</code>
+ * @param offset        la cantidad de resultados a saltear
+ * @param limit         la cantidad maxima de resultados a retornar
+ */
+public record LaunchQuery(String rocketId, Boolean active, Long minCost, Long maxCost, String missionPrefix,
+        int offset, int limit) {
+
+    /**
+     * Valida el paginado y el rango de costos.
+     *
+     * @throws IllegalArgumentException si algun valor es invalido
+     */
+    public LaunchQuery {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset debe ser mayor o igual a cero: " + offset);
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit debe ser mayor o igual a cero: " + limit);
+        }
+        if (minCost != null && maxCost != null && minCost > maxCost) {
+            throw new IllegalArgumentException("min_cost no puede ser mayor que max_cost");
+        }
+        if (missionPrefix != null && missionPrefix.isEmpty()) {
+            missionPrefix = null;
+        }
+    }
+
+    /**
+     * Indica si la consulta tiene algun filtro sobre los lanzamientos.
+     *
+     * @return <code>true</code> si hay al menos un filtro
+     */
+    public boolean hasFilters() {
+        return rocketId != null || active != null || minCost != null || maxCost != null || missionPrefix != null;
+    }
+}
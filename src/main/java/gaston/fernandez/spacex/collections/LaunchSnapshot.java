@@ -0,0 +1,276 @@
+package gaston.fernandez.spacex.collections;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+import gaston.fernandez.spacex.dtos.Rocket;
+import gaston.fernandez.spacex.dtos.SpexLunches;
+
+/**
+ * Foto inmutable de los lanzamientos de SpaceX ya asociados con sus cohetes.
+ * <p>
+ * Se reemplaza completa en cada refresco, junto con su indice por numero de
+ * vuelo, su tabla columnar, su indice de texto y su forma serializada, por lo que
+ * los lectores siempre ven una version consistente sin necesidad de
+ * sincronizacion. Cada foto se arma a partir de la anterior: los lanzamientos
+ * sin cambios se comparten y solo se re-serializan y re-indexan los que
+ * cambiaron.
+ *
+ * @param lunches       la lista inmutable de lanzamientos
+ * @param flightIndex   el indice de numero de vuelo a posicion en
+ *                      <code>lunches</code>
+ * @param contentHashes el hash de contenido de cada lanzamiento, por posicion
+ * @param rowOffsets    la posicion en <code>payload.json()</code> donde
+ *                      empieza cada lanzamiento; tiene una entrada extra al
+ *                      final para calcular el largo del ultimo
+ * @param table         la tabla columnar para resolver consultas con filtros
+ * @param searchIndex   el indice invertido sobre mision y detalles
+ * @param payload       la lista de lanzamientos ya serializada
+ * @param diff          la diferencia respecto de la foto anterior
+ * @param refreshedAt   el instante en que se obtuvo la foto
+ * @param version       el id del ultimo evento del stream de cambios incluido
+ *                      en la foto
+ */
+public record LaunchSnapshot(List<SpexLunches> lunches, FlightNumberIndex flightIndex, long[] contentHashes,
+        int[] rowOffsets, LaunchTable table, SearchIndex searchIndex, SerializedPayload payload, SnapshotDiff diff,
+        Instant refreshedAt, long version) {
+
+    /**
+     * Crea una foto a partir de la lista de lanzamientos y de la foto anterior.
+     * <p>
+     * Cada lanzamiento se compara por numero de vuelo con el de la foto anterior:
+     * si es la misma instancia, o tiene el mismo hash de contenido y es igual, se
+     * conserva la instancia anterior y sus bytes serializados. Solo se serializan
+     * los lanzamientos nuevos o modificados y el indice de texto se actualiza solo
+     * con ellos. Si no hubo ningun cambio se reutiliza la foto anterior. Si hay
+     * numeros de vuelo repetidos se indexa el primero. La nueva foto conserva la
+     * version de la anterior hasta que se le asigna la suya con
+     * {@link #withVersion(long)}.
+     * <p>
+     * Con <code>offHeap</code> los lanzamientos se guardan en memoria nativa
+     * mediante {@link OffHeapLaunchList} y se arman bajo demanda al leerlos. Si
+     * la foto anterior esta fuera del heap, cada lanzamiento se compara contra su
+     * registro nativo con {@link OffHeapLaunchList#matches(int, SpexLunches)} en
+     * lugar de armar el lanzamiento anterior. Solo los lanzamientos salen del
+     * heap: el JSON serializado, sus posiciones y hashes, la tabla columnar
+     * (incluidas las claves de mision) y el indice de texto siguen en el heap.
+     *
+     * @param lunches     la lista de lanzamientos
+     * @param previous    la foto anterior, o <code>null</code>
+     * @param serializer  la funcion que serializa un lanzamiento a JSON
+     * @param offHeap     <code>true</code> para guardar los lanzamientos fuera
+     *                    del heap
+     * @param refreshedAt el instante en que se obtuvo la foto
+     * @return la nueva foto
+     */
+    public static LaunchSnapshot of(List<SpexLunches> lunches, LaunchSnapshot previous,
+            Function<SpexLunches, byte[]> serializer, boolean offHeap, Instant refreshedAt) {
+        int size = lunches.size();
+        SpexLunches[] rows = new SpexLunches[size];
+        long[] hashes = new long[size];
+        int[] previousRows = new int[size];
+        byte[][] fresh = new byte[size][];
+        FlightNumberIndex index = new FlightNumberIndex(size);
+        int[] added = new int[size];
+        int[] changed = new int[size];
+        int addedCount = 0;
+        int changedCount = 0;
+        boolean sameLayout = previous != null && previous.lunches().size() == size
+                && previous.lunches() instanceof OffHeapLaunchList == offHeap;
+
+        for (int row = 0; row < size; row++) {
+            SpexLunches spexLunches = Objects.requireNonNull(lunches.get(row));
+            int flightNumber = spexLunches.flightNumber();
+            boolean first = !index.contains(flightNumber);
+            if (first) {
+                index.put(flightNumber, row);
+            }
+            int previousRow = previous == null ? FlightNumberIndex.NOT_FOUND
+                    : previous.flightIndex().get(flightNumber);
+            previousRows[row] = FlightNumberIndex.NOT_FOUND;
+            if (previousRow == FlightNumberIndex.NOT_FOUND) {
+                hashes[row] = contentHash(spexLunches);
+            } else if (previous.lunches() instanceof OffHeapLaunchList previousList) {
+                // Armar el lanzamiento anterior solo para compararlo crearia un objeto por
+                // fila en cada refresco; se compara contra el registro nativo.
+                if (previousList.matches(previousRow, spexLunches)) {
+                    hashes[row] = previous.contentHashes()[previousRow];
+                    previousRows[row] = previousRow;
+                } else {
+                    hashes[row] = contentHash(spexLunches);
+                }
+            } else {
+                SpexLunches old = previous.lunches().get(previousRow);
+                if (old == spexLunches) {
+                    hashes[row] = previous.contentHashes()[previousRow];
+                    previousRows[row] = previousRow;
+                } else {
+                    hashes[row] = contentHash(spexLunches);
+                    if (hashes[row] == previous.contentHashes()[previousRow] && old.equals(spexLunches)) {
+                        spexLunches = old;
+                        previousRows[row] = previousRow;
+                    }
+                }
+            }
+            rows[row] = spexLunches;
+            if (previousRows[row] == FlightNumberIndex.NOT_FOUND) {
+                fresh[row] = serializer.apply(spexLunches);
+                if (first && previousRow == FlightNumberIndex.NOT_FOUND) {
+                    added[addedCount++] = flightNumber;
+                } else if (first) {
+                    changed[changedCount++] = flightNumber;
+                }
+            }
+            sameLayout &= previousRows[row] == row;
+        }
+
+        int[] removed = new int[0];
+        if (previous != null) {
+            removed = new int[previous.lunches().size()];
+            int removedCount = 0;
+            for (int row = 0; row < previous.lunches().size(); row++) {
+                int flightNumber = previous.lunches() instanceof OffHeapLaunchList previousList
+                        ? previousList.flightNumberAt(row)
+                        : previous.lunches().get(row).flightNumber();
+                if (!index.contains(flightNumber) && previous.flightIndex().get(flightNumber) == row) {
+                    removed[removedCount++] = flightNumber;
+                }
+            }
+            removed = Arrays.copyOf(removed, removedCount);
+        }
+        SnapshotDiff diff = new SnapshotDiff(Arrays.copyOf(added, addedCount), Arrays.copyOf(changed, changedCount),
+                removed);
+        if (sameLayout && diff.isEmpty()) {
+            return previous.refreshed(refreshedAt);
+        }
+
+        int length = 2 + Math.max(0, size - 1);
+        for (int row = 0; row < size; row++) {
+            length += fresh[row] != null ? fresh[row].length : previous.rowLength(previousRows[row]);
+        }
+        byte[] json = new byte[length];
+        int[] offsets = new int[size + 1];
+        int position = 0;
+        json[position++] = '[';
+        for (int row = 0; row < size; row++) {
+            if (row > 0) {
+                json[position++] = ',';
+            }
+            offsets[row] = position;
+            if (fresh[row] != null) {
+                System.arraycopy(fresh[row], 0, json, position, fresh[row].length);
+                position += fresh[row].length;
+            } else {
+                int previousRow = previousRows[row];
+                int rowLength = previous.rowLength(previousRow);
+                System.arraycopy(previous.payload().json(), previous.rowOffsets()[previousRow], json, position,
+                        rowLength);
+                position += rowLength;
+            }
+        }
+        json[position] = ']';
+        offsets[size] = position + 1;
+
+        List<SpexLunches> copy = offHeap ? OffHeapLaunchList.of(rows) : List.of(rows);
+        SearchIndex searchIndex = SearchIndex.update(previous == null ? null : previous.searchIndex(), diff,
+                flightNumber -> rows[index.get(flightNumber)]);
+        return new LaunchSnapshot(copy, index, hashes, offsets, LaunchTable.of(copy), searchIndex,
+                SerializedPayload.precomputed(json), diff, refreshedAt, previous == null ? 0 : previous.version());
+    }
+
+    /**
+     * Retorna el lanzamiento con el numero de vuelo indicado en tiempo constante.
+     *
+     * @param flightNumber el numero de vuelo a buscar
+     * @return el lanzamiento, o <code>null</code> si no se encuentra
+     */
+    public SpexLunches findByFlightNumber(int flightNumber) {
+        int position = flightIndex.get(flightNumber);
+        return position == FlightNumberIndex.NOT_FOUND ? null : lunches.get(position);
+    }
+
+    /**
+     * Escribe el lanzamiento de la fila indicada tal como esta serializado en
+     * <code>payload</code>, sin volver a serializarlo.
+     *
+     * @param row la fila del lanzamiento
+     * @param out el stream de salida
+     * @throws IOException si falla la escritura
+     */
+    public void writeRow(int row, OutputStream out) throws IOException {
+        out.write(payload.json(), rowOffsets[row], rowLength(row));
+    }
+
+    /**
+     * Retorna una copia de esta foto con otro instante de obtencion y sin
+     * diferencias. Se usa cuando el refresco confirma que los datos no cambiaron.
+     *
+     * @param now el nuevo instante de obtencion
+     * @return la foto con el instante actualizado
+     */
+    public LaunchSnapshot refreshed(Instant now) {
+        return new LaunchSnapshot(lunches, flightIndex, contentHashes, rowOffsets, table, searchIndex, payload,
+                SnapshotDiff.EMPTY, now, version);
+    }
+
+    /**
+     * Retorna una copia de esta foto con la version indicada.
+     *
+     * @param version el id del ultimo evento del stream de cambios incluido en
+     *                la foto
+     * @return la foto con la version asignada
+     */
+    public LaunchSnapshot withVersion(long version) {
+        return new LaunchSnapshot(lunches, flightIndex, contentHashes, rowOffsets, table, searchIndex, payload,
+                diff, refreshedAt, version);
+    }
+
+    /**
+     * Retorna la antiguedad de la foto respecto al instante indicado.
+     *
+     * @param now el instante de referencia
+     * @return la antiguedad de la foto
+     */
+    public Duration age(Instant now) {
+        return Duration.between(refreshedAt, now);
+    }
+
+    /**
+     * Retorna el largo en bytes del lanzamiento serializado en la posicion
+     * indicada, sin la coma separadora.
+     */
+    private int rowLength(int row) {
+        return rowOffsets[row + 1] - 1 - rowOffsets[row];
+    }
+
+    /**
+     * Calcula un hash de 64 bits del contenido de un lanzamiento y su cohete. Solo
+     * se usa para descartar rapido los lanzamientos que cambiaron; si dos hashes
+     * coinciden se confirma con <code>equals</code>.
+     */
+    private static long contentHash(SpexLunches spexLunches) {
+        long hash = spexLunches.flightNumber();
+        hash = mix(hash, Objects.hashCode(spexLunches.missionName()));
+        hash = mix(hash, Objects.hashCode(spexLunches.details()));
+        Rocket rocket = spexLunches.rocket();
+        if (rocket != null) {
+            hash = mix(hash, Objects.hashCode(rocket.rocketId()));
+            hash = mix(hash, Objects.hashCode(rocket.rocketName()));
+            hash = mix(hash, rocket.active() ? 1 : 2);
+            hash = mix(hash, Long.hashCode(rocket.costPerLaunch()));
+            hash = mix(hash, Objects.hashCode(rocket.company()));
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        hash = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+}
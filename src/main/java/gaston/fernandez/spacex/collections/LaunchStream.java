@@ -0,0 +1,67 @@
+package gaston.fernandez.spacex.collections;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Resultado de una consulta sobre los lanzamientos que se escribe de a bloques
+ * de lanzamientos, en lugar de serializarse completo en memoria.
+ * <p>
+ * El stack servlet escribe todos los bloques en el stream de la respuesta con
+ * {@link #body()}; el stack reactivo pide un bloque por vez a medida que el
+ * cliente los consume. Un LaunchStream se recorre una sola vez.
+ *
+ * @param total  la cantidad total de lanzamientos que cumplen los filtros, sin
+ *               aplicar el paginado
+ * @param chunks escribe los lanzamientos de la pagina de a un bloque por vez
+ */
+public record LaunchStream(int total, Chunks chunks) {
+
+    /**
+     * Escritura del cuerpo de un {@link LaunchStream}.
+     */
+    @FunctionalInterface
+    public interface Body {
+
+        /**
+         * Escribe los lanzamientos en el stream indicado. No cierra el stream.
+         *
+         * @param out el stream de salida
+         * @throws IOException si falla la escritura
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Escritura por bloques del cuerpo de un {@link LaunchStream}.
+     */
+    @FunctionalInterface
+    public interface Chunks {
+
+        /**
+         * Escribe el siguiente bloque de lanzamientos en el stream indicado. No
+         * cierra el stream.
+         *
+         * @param out el stream de salida
+         * @return <code>true</code> si quedan bloques por escribir
+         * @throws IOException si falla la escritura
+         */
+        boolean writeNext(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Retorna la escritura del cuerpo completo, que vacia el stream de salida
+     * despues de cada bloque para que el cliente reciba los primeros
+     * lanzamientos sin esperar al resto.
+     *
+     * @return el cuerpo
+     */
+    public Body body() {
+        return out -> {
+            while (chunks.writeNext(out)) {
+                out.flush();
+            }
+            out.flush();
+        };
+    }
+}
@@ -0,0 +1,381 @@
+package gaston.fernandez.spacex.collections;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntBinaryOperator;
+import java.util.stream.IntStream;
+
+import gaston.fernandez.spacex.dtos.Rocket;
+import gaston.fernandez.spacex.dtos.SpexLunches;
+
+/**
+ * Representacion columnar de los lanzamientos de un snapshot para resolver
+ * consultas con filtros sin recorrer los objetos.
+ * <p>
+ * Cada columna es un arreglo primitivo indexado por fila (la posicion del
+ * lanzamiento en el snapshot). Los ids de cohete se codifican con un
+ * diccionario y se precalculan indices secundarios: filas por cohete, filas
+ * activas e inactivas, filas ordenadas por costo y por nombre de mision. Una
+ * consulta parte del indice mas selectivo y verifica el resto de los filtros
+ * contra las columnas. La tabla es inmutable.
+ */
+public final class LaunchTable {
+
+    /**
+     * Codigo de cohete de las filas que no tienen cohete asociado.
+     */
+    private static final int NO_ROCKET = -1;
+
+    private static final int[] NO_ROWS = new int[0];
+
+    private final int size;
+
+    private final int[] flightNumbers;
+
+    private final long[] costs;
+
+    private final int[] rocketCodes;
+
+    private final boolean[] active;
+
+    private final String[] missionKeys;
+
+    private final Map<String, Integer> rocketDictionary;
+
+    private final int[][] rowsByRocket;
+
+    private final int[] activeRows;
+
+    private final int[] inactiveRows;
+
+    private final int[] rowsByCost;
+
+    private final long[] sortedCosts;
+
+    private final int[] rowsByMission;
+
+    private final String[] sortedMissionKeys;
+
+    private LaunchTable(List<SpexLunches> lunches) {
+        size = lunches.size();
+        flightNumbers = new int[size];
+        costs = new long[size];
+        rocketCodes = new int[size];
+        active = new boolean[size];
+        missionKeys = new String[size];
+        rocketDictionary = new HashMap<>();
+        int[] rocketCounts = new int[size];
+        int withRocket = 0;
+        int activeCount = 0;
+        for (int row = 0; row < size; row++) {
+            SpexLunches spexLunches = lunches.get(row);
+            flightNumbers[row] = spexLunches.flightNumber();
+            missionKeys[row] = missionKey(spexLunches.missionName());
+            Rocket rocket = spexLunches.rocket();
+            if (rocket == null || rocket.rocketId() == null) {
+                rocketCodes[row] = NO_ROCKET;
+                continue;
+            }
+            int code = rocketDictionary.computeIfAbsent(rocket.rocketId(), id -> rocketDictionary.size());
+            rocketCodes[row] = code;
+            rocketCounts[code]++;
+            costs[row] = rocket.costPerLaunch();
+            active[row] = rocket.active();
+            withRocket++;
+            if (active[row]) {
+                activeCount++;
+            }
+        }
+
+        rowsByRocket = new int[rocketDictionary.size()][];
+        for (int code = 0; code < rowsByRocket.length; code++) {
+            rowsByRocket[code] = new int[rocketCounts[code]];
+        }
+        activeRows = new int[activeCount];
+        inactiveRows = new int[withRocket - activeCount];
+        int[] rocketFill = new int[rowsByRocket.length];
+        int activeFill = 0;
+        int inactiveFill = 0;
+        for (int row = 0; row < size; row++) {
+            int code = rocketCodes[row];
+            if (code == NO_ROCKET) {
+                continue;
+            }
+            rowsByRocket[code][rocketFill[code]++] = row;
+            if (active[row]) {
+                activeRows[activeFill++] = row;
+            } else {
+                inactiveRows[inactiveFill++] = row;
+            }
+        }
+
+        rowsByCost = new int[withRocket];
+        int costFill = 0;
+        for (int row = 0; row < size; row++) {
+            if (rocketCodes[row] != NO_ROCKET) {
+                rowsByCost[costFill++] = row;
+            }
+        }
+        sortRows(rowsByCost, (a, b) -> Long.compare(costs[a], costs[b]));
+        sortedCosts = new long[rowsByCost.length];
+        for (int i = 0; i < rowsByCost.length; i++) {
+            sortedCosts[i] = costs[rowsByCost[i]];
+        }
+
+        rowsByMission = new int[size];
+        for (int row = 0; row < size; row++) {
+            rowsByMission[row] = row;
+        }
+        sortRows(rowsByMission, (a, b) -> missionKeys[a].compareTo(missionKeys[b]));
+        sortedMissionKeys = new String[size];
+        for (int i = 0; i < size; i++) {
+            sortedMissionKeys[i] = missionKeys[rowsByMission[i]];
+        }
+    }
+
+    /**
+     * Arma la tabla columnar a partir de la lista de lanzamientos. La fila de cada
+     * lanzamiento es su posicion en la lista.
+     *
+     * @param lunches la lista de lanzamientos
+     * @return la tabla columnar
+     */
+    public static LaunchTable of(List<SpexLunches> lunches) {
+        return new LaunchTable(lunches);
+    }
+
+    /**
+     * Resuelve los filtros y el paginado de la consulta. Solo se arma el arreglo
+     * de las filas de la pagina, en el orden del snapshot.
+     * <p>
+     * Sin filtros la pagina es un rango de filas y no se recorre la tabla. Si un
+     * unico filtro se resuelve por completo con un indice, la pagina se copia del
+     * indice y el total es su tamano. En otro caso se recorren las candidatas del
+     * indice mas selectivo: la busqueda de la pagina termina al encontrar
+     * <code>offset + limit</code> filas, y el resto de las candidatas solo se
+     * cuenta para informar el total, sin guardar las filas.
+     *
+     * @param query             la consulta
+     * @param parallelThreshold la cantidad de filas restantes a partir de la cual
+     *                          el conteo se hace en paralelo
+     * @return las filas de la pagina y la cantidad total de resultados
+     */
+    public Selection select(LaunchQuery query, int parallelThreshold) {
+        int end = (int) Math.min((long) query.offset() + query.limit(), Integer.MAX_VALUE);
+        if (!query.hasFilters()) {
+            return new Selection(range(Math.min(query.offset(), size), Math.min(end, size)), size);
+        }
+        int rocketCode = NO_ROCKET;
+        if (query.rocketId() != null) {
+            Integer code = rocketDictionary.get(query.rocketId());
+            if (code == null) {
+                return new Selection(NO_ROWS, 0);
+            }
+            rocketCode = code;
+        }
+        String prefix = query.missionPrefix() == null ? null : missionKey(query.missionPrefix());
+
+        int[] candidates = null;
+        int filters = 0;
+        if (rocketCode != NO_ROCKET) {
+            candidates = rowsByRocket[rocketCode];
+            filters++;
+        }
+        if (query.active() != null) {
+            candidates = smallest(candidates, query.active() ? activeRows : inactiveRows);
+            filters++;
+        }
+        if (query.minCost() != null || query.maxCost() != null) {
+            int from = query.minCost() == null ? 0 : firstCostAtLeast(query.minCost());
+            int to = query.maxCost() == null || query.maxCost() == Long.MAX_VALUE ? sortedCosts.length
+                    : firstCostAtLeast(query.maxCost() + 1);
+            if (candidates == null || to - from < candidates.length) {
+                candidates = sortedRows(rowsByCost, from, to);
+            }
+            filters++;
+        }
+        if (prefix != null) {
+            int from = firstMissionAtLeast(prefix);
+            int to = firstMissionWithoutPrefix(prefix, from);
+            if (candidates == null || to - from < candidates.length) {
+                candidates = sortedRows(rowsByMission, from, to);
+            }
+            filters++;
+        }
+        if (filters == 1) {
+            // Un unico filtro queda resuelto por el indice: no hay nada que verificar.
+            int from = Math.min(query.offset(), candidates.length);
+            return new Selection(Arrays.copyOfRange(candidates, from, Math.max(from, Math.min(end, candidates.length))),
+                    candidates.length);
+        }
+
+        int[] page = new int[Math.max(0, Math.min(end, candidates.length) - query.offset())];
+        int found = 0;
+        int index = 0;
+        for (; index < candidates.length && found < end; index++) {
+            int row = candidates[index];
+            if (matches(row, query, rocketCode, prefix)) {
+                if (found >= query.offset()) {
+                    page[found - query.offset()] = row;
+                }
+                found++;
+            }
+        }
+        if (found < end) {
+            return new Selection(Arrays.copyOf(page, Math.max(0, found - query.offset())), found);
+        }
+        final int expectedRocket = rocketCode;
+        IntStream rest = Arrays.stream(candidates, index, candidates.length);
+        if (candidates.length - index >= parallelThreshold) {
+            rest = rest.parallel();
+        }
+        long remaining = rest.filter(row -> matches(row, query, expectedRocket, prefix)).count();
+        return new Selection(page, found + (int) remaining);
+    }
+
+    /**
+     * Resultado de {@link LaunchTable#select}.
+     *
+     * @param rows  las filas de la pagina, en el orden del snapshot
+     * @param total la cantidad de filas que cumplen los filtros, sin paginar
+     */
+    public record Selection(int[] rows, int total) {
+    }
+
+    /**
+     * Retorna el numero de vuelo de la fila indicada.
+     *
+     * @param row la fila
+     * @return el numero de vuelo
+     */
+    public int flightNumberAt(int row) {
+        return flightNumbers[row];
+    }
+
+    /**
+     * Retorna la cantidad de filas de la tabla.
+     *
+     * @return la cantidad de lanzamientos
+     */
+    public int size() {
+        return size;
+    }
+
+    private boolean matches(int row, LaunchQuery query, int expectedRocket, String prefix) {
+        int code = rocketCodes[row];
+        if (expectedRocket != NO_ROCKET && code != expectedRocket) {
+            return false;
+        }
+        boolean needsRocket = query.active() != null || query.minCost() != null || query.maxCost() != null;
+        if (needsRocket && code == NO_ROCKET) {
+            return false;
+        }
+        if (query.active() != null && active[row] != query.active()) {
+            return false;
+        }
+        if (query.minCost() != null && costs[row] < query.minCost()) {
+            return false;
+        }
+        if (query.maxCost() != null && costs[row] > query.maxCost()) {
+            return false;
+        }
+        return prefix == null || missionKeys[row].startsWith(prefix);
+    }
+
+    private int firstCostAtLeast(long cost) {
+        int low = 0;
+        int high = sortedCosts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedCosts[mid] < cost) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int firstMissionAtLeast(String prefix) {
+        int low = 0;
+        int high = sortedMissionKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedMissionKeys[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int firstMissionWithoutPrefix(String prefix, int from) {
+        int low = from;
+        int high = sortedMissionKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedMissionKeys[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int[] smallest(int[] current, int[] other) {
+        return current == null || other.length < current.length ? other : current;
+    }
+
+    private static int[] range(int from, int to) {
+        int[] rows = new int[to - from];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = from + i;
+        }
+        return rows;
+    }
+
+    /**
+     * Ordena las filas con un merge sort estable sobre enteros primitivos, sin
+     * boxing.
+     */
+    private static void sortRows(int[] rows, IntBinaryOperator comparator) {
+        int[] source = rows;
+        int[] target = new int[rows.length];
+        for (int width = 1; width < rows.length; width <<= 1) {
+            for (int low = 0; low < rows.length; low += width << 1) {
+                int mid = Math.min(low + width, rows.length);
+                int high = Math.min(low + (width << 1), rows.length);
+                int left = low;
+                int right = mid;
+                for (int out = low; out < high; out++) {
+                    if (right >= high || left < mid && comparator.applyAsInt(source[left], source[right]) <= 0) {
+                        target[out] = source[left++];
+                    } else {
+                        target[out] = source[right++];
+                    }
+                }
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != rows) {
+            System.arraycopy(source, 0, rows, 0, rows.length);
+        }
+    }
+
+    private static int[] sortedRows(int[] rows, int from, int to) {
+        int[] copy = Arrays.copyOfRange(rows, from, Math.max(from, to));
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    private static String missionKey(String missionName) {
+        return missionName == null ? "" : missionName.toLowerCase(Locale.ROOT);
+    }
+}
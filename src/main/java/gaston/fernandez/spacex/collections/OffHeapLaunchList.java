@@ -0,0 +1,240 @@
+package gaston.fernandez.spacex.collections;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import gaston.fernandez.spacex.dtos.Rocket;
+import gaston.fernandez.spacex.dtos.SpexLunches;
+
+/**
+ * Lista inmutable de lanzamientos guardada fuera del heap con la API de
+ * memoria de Java (FFM).
+ * <p>
+ * Cada lanzamiento ocupa un registro de ancho fijo en una region de memoria
+ * nativa y sus textos se guardan en UTF-8 en una segunda region. Los cohetes,
+ * que son pocos, quedan en el heap y se referencian por posicion. Cada
+ * {@link #get(int)} arma un SpexLunches de corta vida a partir del registro, por
+ * lo que el heap no crece con la cantidad de lanzamientos y el GC no tiene que
+ * recorrerlos. La memoria nativa se libera cuando la lista deja de ser
+ * alcanzable.
+ */
+public final class OffHeapLaunchList extends AbstractList<SpexLunches> implements RandomAccess {
+
+    /**
+     * Ancho de cada registro: numero de vuelo, codigo de cohete, posicion y largo
+     * de la mision, largo y posicion de los detalles.
+     */
+    private static final long RECORD_SIZE = 32;
+
+    private static final long FLIGHT_NUMBER = 0;
+
+    private static final long ROCKET = 4;
+
+    private static final long MISSION_OFFSET = 8;
+
+    private static final long MISSION_LENGTH = 16;
+
+    private static final long DETAILS_LENGTH = 20;
+
+    private static final long DETAILS_OFFSET = 24;
+
+    /**
+     * Largo y codigo que indican un valor <code>null</code>.
+     */
+    private static final int NULL = -1;
+
+    private final int size;
+
+    private final MemorySegment records;
+
+    private final MemorySegment strings;
+
+    private final Rocket[] rockets;
+
+    private OffHeapLaunchList(int size, MemorySegment records, MemorySegment strings, Rocket[] rockets) {
+        this.size = size;
+        this.records = records;
+        this.strings = strings;
+        this.rockets = rockets;
+    }
+
+    /**
+     * Copia los lanzamientos a memoria nativa.
+     *
+     * @param lunches los lanzamientos, sin elementos <code>null</code>
+     * @return la lista fuera del heap
+     */
+    public static OffHeapLaunchList of(SpexLunches[] lunches) {
+        Map<Rocket, Integer> codes = new HashMap<>();
+        List<Rocket> rockets = new ArrayList<>();
+        long stringBytes = 0;
+        for (SpexLunches spexLunches : lunches) {
+            stringBytes += utf8Length(spexLunches.missionName()) + utf8Length(spexLunches.details());
+            if (spexLunches.rocket() != null && codes.putIfAbsent(spexLunches.rocket(), rockets.size()) == null) {
+                rockets.add(spexLunches.rocket());
+            }
+        }
+
+        Arena arena = Arena.ofAuto();
+        MemorySegment records = arena.allocate(Math.max(1, RECORD_SIZE * lunches.length), Long.BYTES);
+        MemorySegment strings = arena.allocate(Math.max(1, stringBytes), 1);
+        long cursor = 0;
+        for (int i = 0; i < lunches.length; i++) {
+            SpexLunches spexLunches = lunches[i];
+            long base = i * RECORD_SIZE;
+            records.set(ValueLayout.JAVA_INT, base + FLIGHT_NUMBER, spexLunches.flightNumber());
+            records.set(ValueLayout.JAVA_INT, base + ROCKET,
+                    spexLunches.rocket() == null ? NULL : codes.get(spexLunches.rocket()));
+            records.set(ValueLayout.JAVA_LONG, base + MISSION_OFFSET, cursor);
+            cursor = writeString(strings, cursor, spexLunches.missionName(), records, base + MISSION_LENGTH);
+            records.set(ValueLayout.JAVA_LONG, base + DETAILS_OFFSET, cursor);
+            cursor = writeString(strings, cursor, spexLunches.details(), records, base + DETAILS_LENGTH);
+        }
+        return new OffHeapLaunchList(lunches.length, records, strings, rockets.toArray(new Rocket[0]));
+    }
+
+    @Override
+    public SpexLunches get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        long base = index * RECORD_SIZE;
+        int rocket = records.get(ValueLayout.JAVA_INT, base + ROCKET);
+        return new SpexLunches(records.get(ValueLayout.JAVA_INT, base + FLIGHT_NUMBER),
+                readString(records.get(ValueLayout.JAVA_LONG, base + MISSION_OFFSET),
+                        records.get(ValueLayout.JAVA_INT, base + MISSION_LENGTH)),
+                readString(records.get(ValueLayout.JAVA_LONG, base + DETAILS_OFFSET),
+                        records.get(ValueLayout.JAVA_INT, base + DETAILS_LENGTH)),
+                rocket == NULL ? null : rockets[rocket]);
+    }
+
+    /**
+     * Retorna el numero de vuelo del lanzamiento indicado sin armar el objeto.
+     *
+     * @param index la posicion del lanzamiento
+     * @return el numero de vuelo
+     */
+    public int flightNumberAt(int index) {
+        return records.get(ValueLayout.JAVA_INT, index * RECORD_SIZE + FLIGHT_NUMBER);
+    }
+
+    /**
+     * Indica si el lanzamiento indicado tiene los mismos datos que
+     * <code>spexLunches</code>, comparando directamente contra el registro
+     * nativo sin armar el objeto. Los textos con caracteres ASCII se comparan
+     * byte a byte sin copiarlos.
+     *
+     * @param index       la posicion del lanzamiento
+     * @param spexLunches el lanzamiento a comparar
+     * @return <code>true</code> si el numero de vuelo, la mision, los detalles y
+     *         el cohete son iguales
+     */
+    public boolean matches(int index, SpexLunches spexLunches) {
+        long base = index * RECORD_SIZE;
+        if (records.get(ValueLayout.JAVA_INT, base + FLIGHT_NUMBER) != spexLunches.flightNumber()) {
+            return false;
+        }
+        int rocket = records.get(ValueLayout.JAVA_INT, base + ROCKET);
+        if (rocket == NULL ? spexLunches.rocket() != null
+                : rockets[rocket] != spexLunches.rocket() && !rockets[rocket].equals(spexLunches.rocket())) {
+            return false;
+        }
+        return stringEquals(records.get(ValueLayout.JAVA_LONG, base + MISSION_OFFSET),
+                records.get(ValueLayout.JAVA_INT, base + MISSION_LENGTH), spexLunches.missionName())
+                && stringEquals(records.get(ValueLayout.JAVA_LONG, base + DETAILS_OFFSET),
+                        records.get(ValueLayout.JAVA_INT, base + DETAILS_LENGTH), spexLunches.details());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Retorna la cantidad de bytes nativos que ocupa la lista.
+     *
+     * @return los bytes de registros mas los bytes de textos
+     */
+    public long nativeBytes() {
+        return records.byteSize() + strings.byteSize();
+    }
+
+    private String readString(long offset, int length) {
+        if (length == NULL) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        MemorySegment.copy(strings, ValueLayout.JAVA_BYTE, offset, bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean stringEquals(long offset, int length, String value) {
+        if (value == null || length == NULL) {
+            return value == null && length == NULL;
+        }
+        // Cada caracter ocupa al menos un byte en UTF-8.
+        if (length < value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                return bytes.length == length && MemorySegment.mismatch(strings, offset, offset + length,
+                        MemorySegment.ofArray(bytes), 0, length) == -1;
+            }
+            if (strings.get(ValueLayout.JAVA_BYTE, offset + i) != (byte) c) {
+                return false;
+            }
+        }
+        return length == value.length();
+    }
+
+    private static long writeString(MemorySegment strings, long cursor, String value, MemorySegment records,
+            long lengthOffset) {
+        if (value == null) {
+            records.set(ValueLayout.JAVA_INT, lengthOffset, NULL);
+            return cursor;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        MemorySegment.copy(bytes, 0, strings, ValueLayout.JAVA_BYTE, cursor, bytes.length);
+        records.set(ValueLayout.JAVA_INT, lengthOffset, bytes.length);
+        return cursor + bytes.length;
+    }
+
+    /**
+     * Calcula el largo en UTF-8 de un texto sin codificarlo. Los pares sustitutos
+     * validos ocupan cuatro bytes y los sueltos se codifican como '?'.
+     */
+    private static long utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,65 @@
+package gaston.fernandez.spacex.collections;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import gaston.fernandez.spacex.dtos.Rocket;
+
+/**
+ * Diccionario de cohetes compartidos, indexado por rocket_id, que permite
+ * buscar un cohete directamente desde el buffer de caracteres del parser sin
+ * crear un String por cada busqueda.
+ * <p>
+ * La cantidad de cohetes es chica, por lo que la busqueda compara contra cada
+ * id en orden. El diccionario es inmutable.
+ */
+public final class RocketDictionary {
+
+    private final char[][] ids;
+
+    private final Rocket[] rockets;
+
+    private RocketDictionary(char[][] ids, Rocket[] rockets) {
+        this.ids = ids;
+        this.rockets = rockets;
+    }
+
+    /**
+     * Arma el diccionario a partir del mapa de cohetes por rocket_id.
+     *
+     * @param rockets los cohetes indexados por rocket_id
+     * @return el diccionario
+     */
+    public static RocketDictionary of(Map<String, Rocket> rockets) {
+        char[][] ids = new char[rockets.size()][];
+        Rocket[] values = new Rocket[rockets.size()];
+        int n = 0;
+        for (Map.Entry<String, Rocket> entry : rockets.entrySet()) {
+            if (entry.getKey() == null) {
+                continue;
+            }
+            ids[n] = entry.getKey().toCharArray();
+            values[n++] = entry.getValue();
+        }
+        return new RocketDictionary(Arrays.copyOf(ids, n), Arrays.copyOf(values, n));
+    }
+
+    /**
+     * Busca el cohete cuyo id coincide con el rango de caracteres indicado.
+     *
+     * @param text   el buffer de caracteres
+     * @param offset la posicion inicial del id en el buffer
+     * @param length el largo del id
+     * @return el cohete compartido, o <code>null</code> si no esta en el
+     *         diccionario
+     */
+    public Rocket find(char[] text, int offset, int length) {
+        for (int i = 0; i < ids.length; i++) {
+            char[] id = ids[i];
+            if (id.length == length && Arrays.equals(id, 0, length, text, offset, offset + length)) {
+                return rockets[i];
+            }
+        }
+        return null;
+    }
+}
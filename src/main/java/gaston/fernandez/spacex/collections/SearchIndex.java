@@ -0,0 +1,507 @@
+package gaston.fernandez.spacex.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+import gaston.fernandez.spacex.dtos.SpexLunches;
+
+/**
+ * Indice invertido en memoria sobre el nombre de mision y los detalles de los
+ * lanzamientos.
+ * <p>
+ * El texto se separa en terminos de letras y digitos en minusculas. Cada
+ * termino tiene una lista de apariciones con los numeros de vuelo ordenados y
+ * la frecuencia del termino en cada lanzamiento, ambos en arreglos primitivos.
+ * Las consultas exigen todos los terminos (AND); un termino terminado en
+ * <code>*</code> se busca como prefijo. Los resultados se ordenan por tf-idf.
+ * <p>
+ * El indice es inmutable. Al refrescar el snapshot se arma uno nuevo a partir
+ * del anterior y de la diferencia entre snapshots, re-tokenizando solo los
+ * lanzamientos cuyo texto cambio y compartiendo las listas de los terminos que
+ * no se vieron afectados.
+ */
+public final class SearchIndex {
+
+    /**
+     * Indice sin documentos.
+     */
+    public static final SearchIndex EMPTY = new SearchIndex(Map.of(), Map.of(), new String[0], 0, -1);
+
+    /**
+     * Terminos de un lanzamiento ya tokenizado.
+     *
+     * @param text  el texto del que se obtuvieron los terminos
+     * @param terms los terminos distintos del texto
+     * @param freqs la frecuencia de cada termino en el texto
+     */
+    private record Document(String text, String[] terms, int[] freqs) {
+    }
+
+    /**
+     * Lista de apariciones de un termino.
+     *
+     * @param flightNumbers los numeros de vuelo, ordenados
+     * @param freqs         la frecuencia del termino en cada lanzamiento
+     * @param weights       el peso de la frecuencia, <code>1 + ln(freq)</code>
+     */
+    private record Posting(int[] flightNumbers, int[] freqs, double[] weights) {
+    }
+
+    /**
+     * Resultado de una clausula de la consulta: numeros de vuelo ordenados y sus
+     * pesos. El puntaje de cada uno es su peso multiplicado por
+     * <code>factor</code>, para no recalcular los pesos de una lista completa.
+     */
+    private record Matches(int[] flightNumbers, double[] weights, double factor) {
+
+        double score(int index) {
+            return weights[index] * factor;
+        }
+    }
+
+    private static final Matches NO_MATCHES = new Matches(new int[0], new double[0], 1);
+
+    /**
+     * Resultado de una busqueda.
+     *
+     * @param flightNumbers los numeros de vuelo de mayor puntaje, en orden de
+     *                      relevancia
+     * @param total         la cantidad total de lanzamientos que cumplen la
+     *                      consulta
+     */
+    public record Result(int[] flightNumbers, int total) {
+    }
+
+    private final Map<Integer, Document> documents;
+
+    private final Map<String, Posting> postings;
+
+    private final String[] sortedTerms;
+
+    private final int minFlightNumber;
+
+    private final int maxFlightNumber;
+
+    private SearchIndex(Map<Integer, Document> documents, Map<String, Posting> postings, String[] sortedTerms,
+            int minFlightNumber, int maxFlightNumber) {
+        this.documents = documents;
+        this.postings = postings;
+        this.sortedTerms = sortedTerms;
+        this.minFlightNumber = minFlightNumber;
+        this.maxFlightNumber = maxFlightNumber;
+    }
+
+    /**
+     * Arma el indice a partir del anterior aplicando la diferencia entre
+     * snapshots. Solo se tokenizan los lanzamientos agregados o modificados cuyo
+     * texto cambio, y solo se rearman las listas de los terminos que aparecen en
+     * ellos o en los lanzamientos eliminados.
+     *
+     * @param previous el indice anterior, o <code>null</code> si no hay; en ese
+     *                 caso la diferencia debe listar todos los lanzamientos como
+     *                 agregados
+     * @param diff     la diferencia respecto del snapshot anterior
+     * @param lookup   la funcion que retorna el lanzamiento del nuevo snapshot
+     *                 con el numero de vuelo indicado
+     * @return el nuevo indice
+     */
+    public static SearchIndex update(SearchIndex previous, SnapshotDiff diff, IntFunction<SpexLunches> lookup) {
+        SearchIndex base = previous == null ? EMPTY : previous;
+        if (diff.isEmpty()) {
+            return base;
+        }
+        Map<Integer, Document> documents = new HashMap<>(base.documents);
+        Map<Integer, Document> dirty = new HashMap<>();
+        int min = base.minFlightNumber;
+        int max = base.maxFlightNumber;
+        for (int[] flightNumbers : new int[][] { diff.added(), diff.changed() }) {
+            for (int flightNumber : flightNumbers) {
+                String text = textOf(lookup.apply(flightNumber));
+                Document old = base.documents.get(flightNumber);
+                if (old != null && old.text().equals(text)) {
+                    continue;
+                }
+                Document document = tokenize(text);
+                documents.put(flightNumber, document);
+                dirty.put(flightNumber, document);
+                if (min > max) {
+                    min = flightNumber;
+                    max = flightNumber;
+                } else {
+                    min = Math.min(min, flightNumber);
+                    max = Math.max(max, flightNumber);
+                }
+            }
+        }
+        Set<Integer> removed = new HashSet<>();
+        boolean rangeShrank = false;
+        for (int flightNumber : diff.removed()) {
+            if (documents.remove(flightNumber) != null) {
+                removed.add(flightNumber);
+                rangeShrank |= flightNumber == min || flightNumber == max;
+            }
+        }
+        if (documents.isEmpty()) {
+            return EMPTY;
+        }
+        if (dirty.isEmpty() && removed.isEmpty()) {
+            return base;
+        }
+        if (rangeShrank) {
+            min = Integer.MAX_VALUE;
+            max = Integer.MIN_VALUE;
+            for (int flightNumber : documents.keySet()) {
+                min = Math.min(min, flightNumber);
+                max = Math.max(max, flightNumber);
+            }
+        }
+
+        Set<Integer> stale = new HashSet<>(removed);
+        Set<String> affected = new HashSet<>();
+        for (Integer flightNumber : dirty.keySet()) {
+            Document old = base.documents.get(flightNumber);
+            if (old != null) {
+                stale.add(flightNumber);
+                affected.addAll(Arrays.asList(old.terms()));
+            }
+        }
+        for (Integer flightNumber : removed) {
+            affected.addAll(Arrays.asList(base.documents.get(flightNumber).terms()));
+        }
+        Map<String, List<int[]>> additions = new HashMap<>();
+        for (Map.Entry<Integer, Document> entry : dirty.entrySet()) {
+            Document document = entry.getValue();
+            for (int i = 0; i < document.terms().length; i++) {
+                affected.add(document.terms()[i]);
+                additions.computeIfAbsent(document.terms()[i], term -> new ArrayList<>())
+                        .add(new int[] { entry.getKey(), document.freqs()[i] });
+            }
+        }
+
+        Map<String, Posting> postings = new HashMap<>(base.postings);
+        boolean termsChanged = false;
+        for (String term : affected) {
+            Posting posting = rebuild(base.postings.get(term), stale, additions.get(term));
+            if (posting == null) {
+                termsChanged |= postings.remove(term) != null;
+            } else {
+                termsChanged |= postings.put(term, posting) == null;
+            }
+        }
+        String[] sortedTerms = base.sortedTerms;
+        if (termsChanged) {
+            sortedTerms = postings.keySet().toArray(new String[0]);
+            Arrays.sort(sortedTerms);
+        }
+        return new SearchIndex(documents, postings, sortedTerms, min, max);
+    }
+
+    /**
+     * Busca los lanzamientos que contienen todos los terminos de la consulta y
+     * retorna los de mayor puntaje.
+     *
+     * @param query la consulta; los terminos terminados en <code>*</code> se
+     *              buscan como prefijo
+     * @param limit la cantidad maxima de resultados
+     * @return los numeros de vuelo de mayor puntaje y el total de coincidencias
+     * @throws IllegalArgumentException si la consulta no tiene terminos
+     */
+    public Result search(String query, int limit) {
+        List<Matches> clauses = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= query.length(); i++) {
+            boolean tokenChar = i < query.length() && Character.isLetterOrDigit(query.charAt(i));
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                String term = query.substring(start, i).toLowerCase(Locale.ROOT);
+                boolean prefix = i < query.length() && query.charAt(i) == '*';
+                clauses.add(prefix ? matchPrefix(term) : matchTerm(term));
+                start = -1;
+            }
+        }
+        if (clauses.isEmpty()) {
+            throw new IllegalArgumentException("La consulta no tiene terminos");
+        }
+        clauses.sort((a, b) -> Integer.compare(a.flightNumbers().length, b.flightNumbers().length));
+        Matches result = clauses.get(0);
+        for (int i = 1; i < clauses.size() && result.flightNumbers().length > 0; i++) {
+            result = intersect(result, clauses.get(i));
+        }
+        return new Result(topK(result, limit), result.flightNumbers().length);
+    }
+
+    /**
+     * Retorna la cantidad de lanzamientos indexados.
+     *
+     * @return la cantidad de documentos
+     */
+    public int size() {
+        return documents.size();
+    }
+
+    private Matches matchTerm(String term) {
+        Posting posting = postings.get(term);
+        if (posting == null) {
+            return NO_MATCHES;
+        }
+        return new Matches(posting.flightNumbers(), posting.weights(), idf(posting));
+    }
+
+    /**
+     * Une las listas de todos los terminos con el prefijo indicado sumando sus
+     * puntajes. Si los numeros de vuelo son densos se acumula en un arreglo
+     * indexado por numero de vuelo; si no, se ordenan las apariciones.
+     */
+    private Matches matchPrefix(String prefix) {
+        int from = Arrays.binarySearch(sortedTerms, prefix);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        int to = from;
+        int count = 0;
+        while (to < sortedTerms.length && sortedTerms[to].startsWith(prefix)) {
+            count += postings.get(sortedTerms[to++]).flightNumbers().length;
+        }
+        if (to - from <= 1) {
+            return to == from ? NO_MATCHES : matchTerm(sortedTerms[from]);
+        }
+        long range = (long) maxFlightNumber - minFlightNumber + 1;
+        if (range <= 4L * documents.size()) {
+            double[] accumulated = new double[(int) range];
+            boolean[] hit = new boolean[(int) range];
+            for (int t = from; t < to; t++) {
+                Posting posting = postings.get(sortedTerms[t]);
+                double idf = idf(posting);
+                for (int i = 0; i < posting.flightNumbers().length; i++) {
+                    int slot = posting.flightNumbers()[i] - minFlightNumber;
+                    accumulated[slot] += posting.weights()[i] * idf;
+                    hit[slot] = true;
+                }
+            }
+            int[] flightNumbers = new int[Math.min(count, (int) range)];
+            double[] scores = new double[flightNumbers.length];
+            int size = 0;
+            for (int slot = 0; slot < hit.length; slot++) {
+                if (hit[slot]) {
+                    flightNumbers[size] = slot + minFlightNumber;
+                    scores[size++] = accumulated[slot];
+                }
+            }
+            return new Matches(Arrays.copyOf(flightNumbers, size), Arrays.copyOf(scores, size), 1);
+        }
+
+        long[] packed = new long[count];
+        double[] termScores = new double[count];
+        int n = 0;
+        for (int t = from; t < to; t++) {
+            Posting posting = postings.get(sortedTerms[t]);
+            double idf = idf(posting);
+            for (int i = 0; i < posting.flightNumbers().length; i++) {
+                packed[n] = ((long) posting.flightNumbers()[i] << 32) | n;
+                termScores[n++] = posting.weights()[i] * idf;
+            }
+        }
+        Arrays.sort(packed);
+        int[] flightNumbers = new int[count];
+        double[] scores = new double[count];
+        int size = 0;
+        for (long entry : packed) {
+            int flightNumber = (int) (entry >> 32);
+            double score = termScores[(int) entry];
+            if (size > 0 && flightNumbers[size - 1] == flightNumber) {
+                scores[size - 1] += score;
+            } else {
+                flightNumbers[size] = flightNumber;
+                scores[size++] = score;
+            }
+        }
+        return new Matches(Arrays.copyOf(flightNumbers, size), Arrays.copyOf(scores, size), 1);
+    }
+
+    private double idf(Posting posting) {
+        return Math.log(1 + (double) documents.size() / posting.flightNumbers().length);
+    }
+
+    private static Matches intersect(Matches small, Matches large) {
+        int[] flightNumbers = new int[small.flightNumbers().length];
+        double[] scores = new double[flightNumbers.length];
+        int size = 0;
+        int j = 0;
+        int[] other = large.flightNumbers();
+        for (int i = 0; i < small.flightNumbers().length && j < other.length; i++) {
+            int flightNumber = small.flightNumbers()[i];
+            j = gallop(other, j, flightNumber);
+            if (j < other.length && other[j] == flightNumber) {
+                flightNumbers[size] = flightNumber;
+                scores[size++] = small.score(i) + large.score(j);
+            }
+        }
+        return new Matches(Arrays.copyOf(flightNumbers, size), Arrays.copyOf(scores, size), 1);
+    }
+
+    /**
+     * Retorna la primera posicion desde <code>from</code> cuyo valor es mayor o
+     * igual a <code>key</code>, avanzando en saltos exponenciales.
+     */
+    private static int gallop(int[] values, int from, int key) {
+        int step = 1;
+        int low = from;
+        int high = from;
+        while (high < values.length && values[high] < key) {
+            low = high + 1;
+            high = from + step;
+            step <<= 1;
+        }
+        high = Math.min(high, values.length);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Selecciona los <code>limit</code> resultados de mayor puntaje con un heap
+     * minimo de posiciones. A igual puntaje gana el menor numero de vuelo.
+     */
+    private static int[] topK(Matches matches, int limit) {
+        int k = Math.min(limit, matches.flightNumbers().length);
+        int[] heap = new int[k];
+        int size = 0;
+        for (int i = 0; i < matches.flightNumbers().length && k > 0; i++) {
+            if (size < k) {
+                heap[size] = i;
+                siftUp(heap, size++, matches);
+            } else if (better(i, heap[0], matches)) {
+                heap[0] = i;
+                siftDown(heap, size, matches);
+            }
+        }
+        int[] result = new int[size];
+        for (int n = size - 1; n >= 0; n--) {
+            result[n] = matches.flightNumbers()[heap[0]];
+            heap[0] = heap[n];
+            siftDown(heap, n, matches);
+        }
+        return result;
+    }
+
+    private static boolean better(int a, int b, Matches matches) {
+        double scoreA = matches.score(a);
+        double scoreB = matches.score(b);
+        return scoreA > scoreB || (scoreA == scoreB && matches.flightNumbers()[a] < matches.flightNumbers()[b]);
+    }
+
+    private static void siftUp(int[] heap, int index, Matches matches) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!better(heap[parent], heap[index], matches)) {
+                break;
+            }
+            swap(heap, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, Matches matches) {
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && better(heap[child], heap[child + 1], matches)) {
+                child++;
+            }
+            if (!better(heap[index], heap[child], matches)) {
+                break;
+            }
+            swap(heap, index, child);
+            index = child;
+        }
+    }
+
+    private static void swap(int[] heap, int a, int b) {
+        int tmp = heap[a];
+        heap[a] = heap[b];
+        heap[b] = tmp;
+    }
+
+    /**
+     * Rearma la lista de un termino quitando los lanzamientos viejos y agregando
+     * los nuevos.
+     *
+     * @return la nueva lista, o <code>null</code> si quedo vacia
+     */
+    private static Posting rebuild(Posting old, Set<Integer> stale, List<int[]> added) {
+        int oldSize = old == null ? 0 : old.flightNumbers().length;
+        int addedSize = added == null ? 0 : added.size();
+        long[] packed = new long[oldSize + addedSize];
+        int n = 0;
+        for (int i = 0; i < oldSize; i++) {
+            if (!stale.contains(old.flightNumbers()[i])) {
+                packed[n++] = pack(old.flightNumbers()[i], old.freqs()[i]);
+            }
+        }
+        for (int i = 0; i < addedSize; i++) {
+            packed[n++] = pack(added.get(i)[0], added.get(i)[1]);
+        }
+        if (n == 0) {
+            return null;
+        }
+        Arrays.sort(packed, 0, n);
+        int[] flightNumbers = new int[n];
+        int[] freqs = new int[n];
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            flightNumbers[i] = (int) (packed[i] >> 32);
+            freqs[i] = (int) packed[i];
+            weights[i] = 1 + Math.log(freqs[i]);
+        }
+        return new Posting(flightNumbers, freqs, weights);
+    }
+
+    private static long pack(int flightNumber, int freq) {
+        return ((long) flightNumber << 32) | (freq & 0xFFFFFFFFL);
+    }
+
+    private static String textOf(SpexLunches spexLunches) {
+        String mission = spexLunches.missionName() == null ? "" : spexLunches.missionName();
+        String details = spexLunches.details() == null ? "" : spexLunches.details();
+        return mission + '\n' + details;
+    }
+
+    private static Document tokenize(String text) {
+        Map<String, int[]> counts = new HashMap<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean tokenChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                counts.computeIfAbsent(text.substring(start, i).toLowerCase(Locale.ROOT), term -> new int[1])[0]++;
+                start = -1;
+            }
+        }
+        String[] terms = new String[counts.size()];
+        int[] freqs = new int[counts.size()];
+        int n = 0;
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            terms[n] = entry.getKey();
+            freqs[n++] = entry.getValue()[0];
+        }
+        return new Document(text, terms, freqs);
+    }
+}
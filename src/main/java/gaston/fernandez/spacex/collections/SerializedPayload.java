@@ -0,0 +1,200 @@
+package gaston.fernandez.spacex.collections;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.util.DigestUtils;
+
+/**
+ * Cuerpo de una respuesta ya serializado, en JSON UTF-8 y comprimido con gzip,
+ * junto con su ETag fuerte.
+ * <p>
+ * Se arma una sola vez por cada version de los datos y se escribe tal cual en
+ * cada respuesta. Los arreglos no deben modificarse. Las representaciones
+ * binarias (ver {@link WireFormat}) usan la misma clase: <code>json</code>
+ * guarda entonces los bytes en ese formato.
+ * <p>
+ * La version gzip y el ETag se calculan recien la primera vez que se piden,
+ * porque la mayoria de los cuerpos (paginas, busquedas, favoritos) se arman
+ * para una sola respuesta y no siempre para un cliente que acepta gzip. Si dos
+ * hilos los piden a la vez pueden calcularlos los dos; el resultado es el mismo.
+ * El cuerpo compartido del snapshot se crea con {@link #precomputed(byte[])}
+ * para no comprimirlo dentro de la primera peticion que lo use.
+ */
+public final class SerializedPayload {
+
+    private final byte[] json;
+
+    private volatile byte[] gzip;
+
+    private volatile String etag;
+
+    private SerializedPayload(byte[] json) {
+        this.json = json;
+    }
+
+    /**
+     * Crea el cuerpo serializado a partir de los bytes JSON. La version gzip y el
+     * ETag (a partir del hash MD5 del contenido) se calculan al pedirlos.
+     *
+     * @param json los bytes JSON en UTF-8
+     * @return el cuerpo serializado
+     */
+    public static SerializedPayload of(byte[] json) {
+        return new SerializedPayload(json);
+    }
+
+    /**
+     * Crea el cuerpo serializado calculando en el momento la version gzip y el
+     * ETag. Se usa para los cuerpos que se comparten entre muchas respuestas.
+     *
+     * @param json los bytes JSON en UTF-8
+     * @return el cuerpo serializado
+     */
+    public static SerializedPayload precomputed(byte[] json) {
+        SerializedPayload payload = new SerializedPayload(json);
+        payload.gzip();
+        payload.etag();
+        return payload;
+    }
+
+    /**
+     * Retorna los bytes sin comprimir.
+     *
+     * @return los bytes JSON en UTF-8, o en el formato binario del cuerpo
+     */
+    public byte[] json() {
+        return json;
+    }
+
+    /**
+     * Retorna los bytes comprimidos con gzip, comprimiendolos la primera vez.
+     *
+     * @return los mismos bytes comprimidos con gzip
+     */
+    public byte[] gzip() {
+        byte[] compressed = gzip;
+        if (compressed == null) {
+            compressed = compress(json);
+            gzip = compressed;
+        }
+        return compressed;
+    }
+
+    /**
+     * Retorna el ETag fuerte de la representacion sin comprimir, calculandolo la
+     * primera vez.
+     *
+     * @return el ETag entre comillas
+     */
+    public String etag() {
+        String tag = etag;
+        if (tag == null) {
+            tag = "\"" + DigestUtils.md5DigestAsHex(json) + "\"";
+            etag = tag;
+        }
+        return tag;
+    }
+
+    /**
+     * Retorna el ETag de la representacion indicada. La version gzip tiene un ETag
+     * propio porque es una representacion distinta del mismo recurso.
+     *
+     * @param gzipped <code>true</code> para la representacion gzip
+     * @return el ETag fuerte de la representacion
+     */
+    public String etag(boolean gzipped) {
+        String tag = etag();
+        return gzipped ? tag.substring(0, tag.length() - 1) + "-gzip\"" : tag;
+    }
+
+    /**
+     * Retorna los bytes de la representacion indicada.
+     *
+     * @param gzipped <code>true</code> para la representacion gzip
+     * @return los bytes del cuerpo
+     */
+    public byte[] body(boolean gzipped) {
+        return gzipped ? gzip() : json;
+    }
+
+    /**
+     * Indica si el valor de un header <code>If-None-Match</code> coincide con el
+     * ETag de la representacion indicada.
+     *
+     * @param ifNoneMatch el valor del header, puede ser <code>null</code>
+     * @param gzipped     <code>true</code> para la representacion gzip
+     * @return <code>true</code> si el cliente ya tiene esta version
+     */
+    public boolean matches(String ifNoneMatch, boolean gzipped) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String current = etag(gzipped);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indica si el header <code>Accept-Encoding</code> acepta gzip. Se respetan
+     * los pesos: <code>gzip;q=0</code> lo rechaza, y <code>*</code> solo cuenta
+     * si gzip no aparece en forma explicita. Un peso invalido se toma como
+     * rechazo.
+     *
+     * @param acceptEncoding el valor del header, puede ser <code>null</code>
+     * @return <code>true</code> si se puede responder comprimido con gzip
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        double gzipWeight = -1;
+        double anyWeight = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (!name.equals("gzip") && !name.equals("x-gzip") && !name.equals("*")) {
+                continue;
+            }
+            double weight = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.length() > 2 && (parameter.charAt(0) == 'q' || parameter.charAt(0) == 'Q')
+                        && parameter.charAt(1) == '=') {
+                    try {
+                        weight = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException ex) {
+                        weight = 0;
+                    }
+                }
+            }
+            if (name.equals("*")) {
+                anyWeight = Math.max(anyWeight, weight);
+            } else {
+                gzipWeight = Math.max(gzipWeight, weight);
+            }
+        }
+        return gzipWeight >= 0 ? gzipWeight > 0 : anyWeight > 0;
+    }
+
+    private static byte[] compress(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, json.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,35 @@
+package gaston.fernandez.spacex.collections;
+
+/**
+ * Diferencia entre dos snapshots de lanzamientos, por numero de vuelo.
+ *
+ * @param added   los numeros de vuelo que no estaban en el snapshot anterior
+ * @param changed los numeros de vuelo cuyo contenido cambio
+ * @param removed los numeros de vuelo que ya no estan en el snapshot
+ */
+public record SnapshotDiff(int[] added, int[] changed, int[] removed) {
+
+    /**
+     * Diferencia sin cambios.
+     */
+    public static final SnapshotDiff EMPTY = new SnapshotDiff(new int[0], new int[0], new int[0]);
+
+    /**
+     * Indica si no hubo cambios.
+     *
+     * @return <code>true</code> si no se agrego, modifico ni elimino ningun
+     *         lanzamiento
+     */
+    public boolean isEmpty() {
+        return added.length == 0 && changed.length == 0 && removed.length == 0;
+    }
+
+    /**
+     * Retorna la cantidad total de lanzamientos afectados.
+     *
+     * @return la suma de agregados, modificados y eliminados
+     */
+    public int size() {
+        return added.length + changed.length + removed.length;
+    }
+}
@@ -0,0 +1,59 @@
+package gaston.fernandez.spacex.collections;
+
+import java.util.Locale;
+
+/**
+ * Formatos en los que se pueden enviar las respuestas. Ademas de JSON se
+ * ofrecen Smile y CBOR, dos codificaciones binarias del mismo modelo de datos
+ * que ocupan menos y se parsean mas rapido.
+ */
+public enum WireFormat {
+
+    JSON("application/json", "application/json; charset=UTF-8"),
+
+    SMILE("application/x-jackson-smile", "application/x-jackson-smile"),
+
+    CBOR("application/cbor", "application/cbor");
+
+    private final String type;
+
+    private final String contentType;
+
+    WireFormat(String type, String contentType) {
+        this.type = type;
+        this.contentType = contentType;
+    }
+
+    /**
+     * Retorna el valor del header <code>Content-Type</code> de este formato.
+     *
+     * @return el content type
+     */
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * Elige el formato a partir del header <code>Accept</code>. Se toma el primer
+     * tipo de la lista que corresponda a un formato conocido; si no hay ninguno,
+     * o el header no viene, se usa JSON.
+     *
+     * @param accept el valor del header, puede ser <code>null</code>
+     * @return el formato de la respuesta
+     */
+    public static WireFormat fromAccept(String accept) {
+        if (accept == null) {
+            return JSON;
+        }
+        for (String range : accept.split(",")) {
+            int parameters = range.indexOf(';');
+            String type = (parameters < 0 ? range : range.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+            for (WireFormat format : values()) {
+                if (format.type.equals(type)) {
+                    return format;
+                }
+            }
+        }
+        return JSON;
+    }
+}
@@ -0,0 +1,30 @@
+package gaston.fernandez.spacex.configs;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+/**
+ * Configura el ObjectMapper compartido de la aplicacion.
+ * <p>
+ * Spring Boot registra automaticamente todos los beans de tipo Module en su
+ * ObjectMapper, que es el mismo que se usa para parsear las respuestas de SpaceX
+ * y para escribir las respuestas HTTP.
+ */
+@Configuration
+public class JacksonConfig {
+
+    /**
+     * Devuelve el modulo Blackbird, que reemplaza el acceso por reflexion a los
+     * getters, setters y constructores de los DTOs por accesores generados con
+     * LambdaMetafactory.
+     *
+     * @return el modulo Blackbird de Jackson
+     */
+    @Bean
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+}
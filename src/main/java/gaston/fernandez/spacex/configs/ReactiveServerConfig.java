@@ -0,0 +1,30 @@
+package gaston.fernandez.spacex.configs;
+
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Configura el servidor del perfil <code>reactive</code>.
+ * <p>
+ * Con el perfil activo la aplicacion arranca como aplicacion WebFlux (ver
+ * <code>application-reactive.properties</code>). Como Tomcat tambien esta en el
+ * classpath, se declara explicitamente el servidor Netty para que los requests
+ * se atiendan con unos pocos hilos de event loop.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveServerConfig {
+
+    /**
+     * Devuelve la fabrica del servidor Netty. El puerto y el resto de las
+     * propiedades <code>server.*</code> se aplican igual que con Tomcat.
+     *
+     * @return la fabrica del servidor Netty
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -1,34 +1,85 @@
 package gaston.fernandez.spacex.configs;
 
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.DefaultClientTlsStrategy;
+import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 import java.security.cert.X509Certificate;
 
 /**
- * Configura el objeto RestTemplate para que no verifique el certificado SSL de los
- * sitios web que se consultan. 
+ * Configura el objeto RestTemplate sobre un cliente Apache HttpClient 5 con pool
+ * de conexiones persistentes, descompresion gzip/deflate de las respuestas y sin
+ * verificar el certificado SSL de los sitios web que se consultan.
  */
 @Configuration
 public class RestTemplateConfig {
 
     /**
-     * Devuelve un objeto RestTemplate configurado para que no verifique el
-     * certificado SSL de los sitios web que se consultan. 
+     * Cantidad maxima de conexiones abiertas por host de destino.
+     */
+    @Value("${spacex.http.max-connections-per-route:10}")
+    private int maxConnectionsPerRoute;
+
+    /**
+     * Cantidad maxima de conexiones abiertas en total.
+     */
+    @Value("${spacex.http.max-connections:20}")
+    private int maxConnections;
+
+    /**
+     * Tiempo limite en milisegundos para establecer la conexion TCP y TLS.
+     */
+    @Value("${spacex.http.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    /**
+     * Tiempo limite en milisegundos de inactividad al leer la respuesta.
+     */
+    @Value("${spacex.http.read-timeout-ms:20000}")
+    private long readTimeoutMs;
+
+    /**
+     * Tiempo limite en milisegundos para obtener una conexion libre del pool.
+     */
+    @Value("${spacex.http.pool-timeout-ms:2000}")
+    private long poolTimeoutMs;
+
+    /**
+     * Tiempo en milisegundos tras el cual se cierran las conexiones ociosas del
+     * pool.
+     */
+    @Value("${spacex.http.idle-eviction-ms:60000}")
+    private long idleEvictionMs;
+
+    /**
+     * Devuelve un cliente HTTP con pool de conexiones configurado para que no
+     * verifique el certificado SSL de los sitios web que se consultan. Las
+     * conexiones se reutilizan entre refrescos, evitando repetir el handshake
+     * TLS, y las que quedan ociosas se cierran en segundo plano. La compresion
+     * de contenido queda habilitada, por lo que se envia
+     * <code>Accept-Encoding: gzip, deflate</code> y la respuesta se descomprime
+     * de forma transparente.
      * 
-     * @return un objeto RestTemplate configurado para no verificar el certificado
-     *         SSL
-     * @throws Exception si hay un error al configurar el objeto RestTemplate
+     * @return un cliente HTTP con pool de conexiones
+     * @throws Exception si hay un error al configurar el contexto SSL
      */
     @Bean
-    public RestTemplate restTemplate() throws Exception {
+    public CloseableHttpClient upstreamHttpClient() throws Exception {
         TrustManager[] trustAllCerts = new TrustManager[] {
                 new X509TrustManager() {
                     /**
@@ -67,15 +118,38 @@ public class RestTemplateConfig {
         SSLContext sslContext = SSLContext.getInstance("TLS");
         sslContext.init(null, trustAllCerts, new java.security.SecureRandom());
 
-        HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());
-
-        HostnameVerifier allHostsValid = (hostname, session) -> true;
-        HttpsURLConnection.setDefaultHostnameVerifier(allHostsValid);
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setTlsSocketStrategy(new DefaultClientTlsStrategy(sslContext, NoopHostnameVerifier.INSTANCE))
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setMaxConnTotal(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                        .build())
+                .build();
 
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(60000);
-        factory.setReadTimeout(60000);
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(idleEvictionMs))
+                .build();
+    }
 
-        return new RestTemplate(factory);
+    /**
+     * Devuelve un objeto RestTemplate que realiza las peticiones a traves del
+     * cliente HTTP con pool de conexiones.
+     * 
+     * @param upstreamHttpClient el cliente HTTP con pool de conexiones
+     * @return un objeto RestTemplate configurado para no verificar el certificado
+     *         SSL
+     */
+    @Bean
+    public RestTemplate restTemplate(CloseableHttpClient upstreamHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(upstreamHttpClient));
     }
-}
\ No newline at end of file
+}
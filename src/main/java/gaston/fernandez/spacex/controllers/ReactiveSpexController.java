@@ -0,0 +1,339 @@
+package gaston.fernandez.spacex.controllers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import gaston.fernandez.spacex.collections.FavoritesStore;
+import gaston.fernandez.spacex.collections.LaunchStream;
+import gaston.fernandez.spacex.collections.WireFormat;
+import gaston.fernandez.spacex.dtos.FavoriteOperation;
+import gaston.fernandez.spacex.services.LaunchChangeFeed;
+import gaston.fernandez.spacex.services.SpexService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Endpoints de lanzamientos y favoritos sobre WebFlux, activos con el perfil
+ * <code>reactive</code>.
+ * <p>
+ * Las rutas, los parametros, los headers y el JSON son los mismos que los de
+ * {@link SpexController}: ambos arman las respuestas con {@link SpexResponses}.
+ * En el hilo del event loop solo se responde la lista completa de lanzamientos
+ * cuando ya esta serializada en el formato pedido. Filtrar, proyectar,
+ * serializar y codificar en Smile o CBOR usa CPU y se ejecuta en el scheduler
+ * <code>parallel</code>. Lo que puede bloquear (la primera descarga a la API de
+ * SpaceX y el registro de cambios de favoritos en el WAL) se ejecuta en
+ * <code>boundedElastic</code>. Los lanzamientos se publican como
+ * <code>Flux&lt;DataBuffer&gt;</code>: en bloques del cuerpo ya serializado, o
+ * a medida que el cliente los pide en el caso de NDJSON y del stream de
+ * cambios.
+ * <p>
+ * Es un port parcial: las descargas a la API de SpaceX siguen usando el
+ * RestTemplate bloqueante de {@link SpexService}, compartido con el perfil
+ * servlet. Mientras haya un snapshot cargado los requests no esperan esas
+ * descargas, porque los refrescos corren en segundo plano.
+ */
+@Controller
+@Profile("reactive")
+public class ReactiveSpexController {
+
+    /**
+     * Tamano de cada bloque en que se publica un cuerpo ya serializado.
+     */
+    private static final int SLICE_BYTES = 64 * 1024;
+
+    private final SpexService spexService;
+
+    private final SpexResponses responses;
+
+    /**
+     * Constructor de la clase ReactiveSpexController.
+     *
+     * @param spexService el objeto SpexService con la logica de negocio
+     * @param responses   el objeto SpexResponses que arma las respuestas
+     */
+    public ReactiveSpexController(SpexService spexService, SpexResponses responses) {
+        this.spexService = spexService;
+        this.responses = responses;
+    }
+
+    /**
+     * Obtiene el listado de lanzamientos de SpaceX en formato JSON. Ver
+     * {@link SpexController#getLaunches}. Sin filtros ni proyeccion, y con la
+     * lista ya serializada en el formato pedido, se responde en el event loop;
+     * el resto se arma en <code>parallel</code>.
+     *
+     * @param offset         la cantidad de lanzamientos a saltear
+     * @param limit          la cantidad maxima de lanzamientos a retornar
+     * @param rocketId       el id del cohete
+     * @param active         si el cohete debe estar activo
+     * @param minCost        el costo minimo por lanzamiento
+     * @param maxCost        el costo maximo por lanzamiento
+     * @param mission        el prefijo del nombre de la mision
+     * @param fields         los campos a incluir separados por coma
+     * @param ifNoneMatch    el ETag que ya tiene el cliente
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param accept         los formatos que acepta el cliente
+     * @return el listado de lanzamientos de SpaceX en formato JSON
+     */
+    @GetMapping("lunches")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> getLaunches(
+            @RequestParam(required = false) Integer offset,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(value = "rocket_id", required = false) String rocketId,
+            @RequestParam(required = false) Boolean active,
+            @RequestParam(value = "min_cost", required = false) Long minCost,
+            @RequestParam(value = "max_cost", required = false) Long maxCost,
+            @RequestParam(required = false) String mission,
+            @RequestParam(required = false) String fields,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        Supplier<ResponseEntity<byte[]>> handler = () -> responses.launches(offset, limit, rocketId, active,
+                minCost, maxCost, mission, fields, ifNoneMatch, acceptEncoding, accept);
+        boolean unfiltered = offset == null && limit == null && rocketId == null && active == null
+                && minCost == null && maxCost == null && mission == null && fields == null;
+        Mono<ResponseEntity<byte[]>> response = unfiltered
+                && spexService.isPayloadEncoded(WireFormat.fromAccept(accept)) ? Mono.fromSupplier(handler)
+                        : read(handler);
+        return response.map(ReactiveSpexController::slices);
+    }
+
+    /**
+     * Obtiene el listado de lanzamientos de SpaceX en formato NDJSON. Ver
+     * {@link SpexController#streamLaunches}. Cada bloque de lanzamientos se
+     * serializa recien cuando el cliente lo pide, por lo que un cliente lento no
+     * hace crecer el buffer del servidor.
+     *
+     * @param offset   la cantidad de lanzamientos a saltear
+     * @param limit    la cantidad maxima de lanzamientos a retornar
+     * @param rocketId el id del cohete
+     * @param active   si el cohete debe estar activo
+     * @param minCost  el costo minimo por lanzamiento
+     * @param maxCost  el costo maximo por lanzamiento
+     * @param mission  el prefijo del nombre de la mision
+     * @param fields   los campos a incluir separados por coma
+     * @return el listado de lanzamientos de SpaceX en formato NDJSON
+     */
+    @GetMapping(value = "lunches", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Mono<ResponseEntity<Flux<DataBuffer>>> streamLaunches(
+            @RequestParam(required = false) Integer offset,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(value = "rocket_id", required = false) String rocketId,
+            @RequestParam(required = false) Boolean active,
+            @RequestParam(value = "min_cost", required = false) Long minCost,
+            @RequestParam(value = "max_cost", required = false) Long maxCost,
+            @RequestParam(required = false) String mission,
+            @RequestParam(required = false) String fields) {
+        return read(() -> responses.launchStream(offset, limit, rocketId, active, minCost, maxCost, mission,
+                fields)).map(response -> body(response, ReactiveSpexController::chunks));
+    }
+
+    /**
+     * Envia por Server-Sent Events los cambios de los lanzamientos. Ver
+     * {@link SpexController#streamChanges}.
+     *
+     * @param lastEventId el id del ultimo evento que recibio el cliente
+     * @return el stream de cambios
+     */
+    @GetMapping(value = "lunches/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Mono<ResponseEntity<Flux<DataBuffer>>> streamChanges(
+            @RequestHeader(value = SpexResponses.LAST_EVENT_ID_HEADER, required = false) String lastEventId) {
+        return Mono.fromSupplier(() -> body(responses.changes(lastEventId),
+                (LaunchChangeFeed.Subscription subscription) -> subscription.frames()
+                        .map(DefaultDataBufferFactory.sharedInstance::wrap)));
+    }
+
+    /**
+     * Busca lanzamientos de SpaceX por texto. Ver
+     * {@link SpexController#searchLaunches}.
+     *
+     * @param q              la consulta
+     * @param limit          la cantidad maxima de resultados
+     * @param ifNoneMatch    el ETag que ya tiene el cliente
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param accept         los formatos que acepta el cliente
+     * @return los lanzamientos encontrados en formato JSON
+     */
+    @GetMapping("lunches/search")
+    public Mono<ResponseEntity<byte[]>> searchLaunches(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return read(() -> responses.search(q, limit, ifNoneMatch, acceptEncoding, accept));
+    }
+
+    /**
+     * Retorna los lanzamientos favoritos del usuario. Ver
+     * {@link SpexController#getFavoritesLunches}.
+     *
+     * @param userId         el identificador del usuario, tomado del header
+     *                       X-User-Id
+     * @param ifNoneMatch    el ETag que ya tiene el cliente
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param accept         los formatos que acepta el cliente
+     * @return la lista de lanzamientos favoritos
+     */
+    @GetMapping("favorites")
+    public Mono<ResponseEntity<byte[]>> getFavoritesLunches(
+            @RequestHeader(value = SpexResponses.USER_HEADER, defaultValue = FavoritesStore.DEFAULT_USER) String userId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return read(() -> responses.favorites(userId, ifNoneMatch, acceptEncoding, accept));
+    }
+
+    /**
+     * Agrega un lanzamiento a los favoritos del usuario. Ver
+     * {@link SpexController#addFavoriteLaunch}.
+     *
+     * @param userId         el identificador del usuario, tomado del header
+     *                       X-User-Id
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param flightNumber   el numero de vuelo del lanzamiento
+     * @return la lista actualizada de lanzamientos favoritos
+     */
+    @PutMapping("favorites/{flightNumber}")
+    public Mono<ResponseEntity<byte[]>> addFavoriteLaunch(
+            @RequestHeader(value = SpexResponses.USER_HEADER, defaultValue = FavoritesStore.DEFAULT_USER) String userId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @PathVariable int flightNumber) {
+        return write(() -> responses.addFavorite(userId, acceptEncoding, flightNumber));
+    }
+
+    /**
+     * Borra un lanzamiento de los favoritos del usuario. Ver
+     * {@link SpexController#removeFavoriteLaunch}.
+     *
+     * @param userId         el identificador del usuario, tomado del header
+     *                       X-User-Id
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param flightNumber   el numero de vuelo del lanzamiento
+     * @return la lista actualizada de lanzamientos favoritos
+     */
+    @DeleteMapping("favorites/{flightNumber}")
+    public Mono<ResponseEntity<byte[]>> removeFavoriteLaunch(
+            @RequestHeader(value = SpexResponses.USER_HEADER, defaultValue = FavoritesStore.DEFAULT_USER) String userId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @PathVariable int flightNumber) {
+        return write(() -> responses.removeFavorite(userId, acceptEncoding, flightNumber));
+    }
+
+    /**
+     * Aplica un lote de altas y bajas sobre los favoritos del usuario. Ver
+     * {@link SpexController#applyFavoritesBatch}.
+     *
+     * @param userId         el identificador del usuario, tomado del header
+     *                       X-User-Id
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param operations     las operaciones a aplicar
+     * @return el resultado de cada operacion y la version de la lista
+     */
+    @PostMapping("favorites/batch")
+    public Mono<ResponseEntity<byte[]>> applyFavoritesBatch(
+            @RequestHeader(value = SpexResponses.USER_HEADER, defaultValue = FavoritesStore.DEFAULT_USER) String userId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestBody List<FavoriteOperation> operations) {
+        return write(() -> responses.favoritesBatch(userId, acceptEncoding, operations));
+    }
+
+    /**
+     * Arma una respuesta de lectura fuera del event loop. Si el snapshot ya esta
+     * cargado se resuelve en <code>parallel</code>, porque solo usa CPU; si no,
+     * en <code>boundedElastic</code> porque la primera descarga bloquea.
+     */
+    private <T> Mono<ResponseEntity<T>> read(Supplier<ResponseEntity<T>> handler) {
+        return Mono.fromSupplier(handler)
+                .subscribeOn(spexService.isSnapshotLoaded() ? Schedulers.parallel() : Schedulers.boundedElastic());
+    }
+
+    /**
+     * Publica el cuerpo ya serializado de una respuesta en bloques de
+     * {@link #SLICE_BYTES}, sin copiarlo, para que Netty empiece a escribir sin
+     * esperar a tener todo el cuerpo en un solo buffer de salida.
+     */
+    private static ResponseEntity<Flux<DataBuffer>> slices(ResponseEntity<byte[]> response) {
+        byte[] body = response.getBody();
+        if (body == null) {
+            return new ResponseEntity<>(response.getHeaders(), response.getStatusCode());
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        headers.setContentLength(body.length);
+        Flux<DataBuffer> slices = Flux.range(0, (body.length + SLICE_BYTES - 1) / SLICE_BYTES)
+                .map(slice -> DefaultDataBufferFactory.sharedInstance.wrap(ByteBuffer.wrap(body,
+                        slice * SLICE_BYTES, Math.min(SLICE_BYTES, body.length - slice * SLICE_BYTES))));
+        return new ResponseEntity<>(slices, headers, response.getStatusCode());
+    }
+
+    /**
+     * Reemplaza el cuerpo de una respuesta por el Flux que lo publica. Las
+     * respuestas de error no tienen cuerpo y se retornan con sus headers y su
+     * status.
+     */
+    private static <T> ResponseEntity<Flux<DataBuffer>> body(ResponseEntity<T> response,
+            Function<T, Flux<DataBuffer>> publisher) {
+        T body = response.getBody();
+        if (body == null) {
+            return new ResponseEntity<>(response.getHeaders(), response.getStatusCode());
+        }
+        return new ResponseEntity<>(publisher.apply(body), response.getHeaders(), response.getStatusCode());
+    }
+
+    /**
+     * Publica los lanzamientos de un {@link LaunchStream} de a un bloque por
+     * pedido del cliente, cada uno en su propio buffer. Los bloques se
+     * serializan en <code>parallel</code>, fuera del event loop.
+     */
+    private static Flux<DataBuffer> chunks(LaunchStream stream) {
+        LaunchStream.Chunks chunks = stream.chunks();
+        return Flux.<DataBuffer>generate(sink -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+            boolean more;
+            try {
+                more = chunks.writeNext(out);
+            } catch (IOException ex) {
+                sink.error(new UncheckedIOException(ex));
+                return;
+            }
+            if (out.size() > 0) {
+                sink.next(DefaultDataBufferFactory.sharedInstance.wrap(out.toByteArray()));
+            }
+            if (!more) {
+                sink.complete();
+            }
+        }).subscribeOn(Schedulers.parallel());
+    }
+
+    /**
+     * Arma una respuesta que modifica favoritos en <code>boundedElastic</code>,
+     * porque encolar la operacion en el WAL puede bloquear si la cola esta llena.
+     */
+    private static Mono<ResponseEntity<byte[]>> write(Supplier<ResponseEntity<byte[]>> handler) {
+        return Mono.fromSupplier(handler).subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -1,45 +1,50 @@
 package gaston.fernandez.spacex.controllers;
 
-import java.io.IOException;
 import java.util.List;
 
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
-import gaston.fernandez.spacex.dtos.SpexLunches;
-import gaston.fernandez.spacex.exceptions.NoContentException;
-import gaston.fernandez.spacex.exceptions.SSLConfigurationException;
-import gaston.fernandez.spacex.services.SpexService;
+import gaston.fernandez.spacex.collections.FavoritesStore;
+import gaston.fernandez.spacex.collections.LaunchStream;
+import gaston.fernandez.spacex.dtos.FavoriteOperation;
+import gaston.fernandez.spacex.services.LaunchChangeFeed;
 
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+/**
+ * Endpoints de lanzamientos y favoritos sobre el stack servlet. Con el perfil
+ * <code>reactive</code> los mismos endpoints los atiende
+ * {@link ReactiveSpexController}. Las respuestas las arma
+ * {@link SpexResponses}; aca solo se escriben como stream los cuerpos de NDJSON
+ * y del stream de cambios.
+ */
 @Controller
+@Profile("!reactive")
 public class SpexController {
-    SpexService spexService;
-    private final HttpHeaders headers = new HttpHeaders();
 
-    /**
-     * Inicializo el header de la respuesta HTTP.
-     */
-    {
-        headers.add("Content-Type", "application/json; charset=UTF-8");
-    }
+    SpexResponses responses;
 
     /**
      * Constructor de la clase SpexController.
      * 
-     * @param spexService el objeto SpexService que se va a injectar para
-     *                    utilizarlo al hacer las peticiones HTTP a la API de
-     *                    SpaceX.
+     * @param responses el objeto SpexResponses que arma las respuestas a partir
+     *                  de las peticiones a la API de SpaceX.
      */
-    public SpexController(SpexService spexService) {
-        this.spexService = spexService;
+    public SpexController(SpexResponses responses) {
+        this.responses = responses;
     }
 
     /**
@@ -51,9 +56,7 @@ public class SpexController {
      */
     @ExceptionHandler(Exception.class)
     public ResponseEntity<String> handleException(Exception e) {
-        e.printStackTrace();
-        headers.add("error", "Error general: " + e.toString());
-        return new ResponseEntity<>("Error general: " + e.getMessage(), headers, HttpStatus.INTERNAL_SERVER_ERROR);
+        return responses.error(e);
     }
 
     /**
@@ -70,37 +73,159 @@ public class SpexController {
      * Si falla por cualquier otro motivo, lanza una Exception con el http status
      * 500 (INTERNAL_SERVER_ERROR).
      *
+     * Los parametros opcionales permiten paginar, filtrar y proyectar el
+     * resultado; la cantidad total de lanzamientos que cumplen los filtros se
+     * informa en el header X-Total-Count. Si algun parametro es invalido responde
+     * 400 (BAD_REQUEST).
+     *
+     * Con <code>Accept: application/x-jackson-smile</code> o
+     * <code>Accept: application/cbor</code> la respuesta se envia en ese formato
+     * binario en lugar de JSON.
+     *
+     * La antiguedad de los datos se informa en el header X-Snapshot-Age. Si la API
+     * de SpaceX no esta disponible se responde con el ultimo snapshot valido; si
+     * todavia no hay ninguno responde 503 (SERVICE_UNAVAILABLE).
+     *
+     * La version del snapshot se informa en el header X-Snapshot-Version; usada
+     * como <code>Last-Event-ID</code> en {@link #streamChanges} el cliente recibe
+     * solo los cambios posteriores a este listado.
+     *
+     * @param offset         la cantidad de lanzamientos a saltear
+     * @param limit          la cantidad maxima de lanzamientos a retornar
+     * @param rocketId       el id del cohete
+     * @param active         si el cohete debe estar activo
+     * @param minCost        el costo minimo por lanzamiento
+     * @param maxCost        el costo maximo por lanzamiento
+     * @param mission        el prefijo del nombre de la mision
+     * @param fields         los campos a incluir separados por coma
+     *                       (flight_number, mission_name, details, rocket)
+     * @param ifNoneMatch    el ETag que ya tiene el cliente
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param accept         los formatos que acepta el cliente
      * @return el listado de lanzamientos de SpaceX en formato JSON.
      */
     @GetMapping("lunches")
-    public ResponseEntity<List<SpexLunches>> getLaunches() {
-        try {
-            return new ResponseEntity<>(spexService.getSpexLunches(), headers, HttpStatus.OK);
-        } catch (SSLConfigurationException e) {
-            e.printStackTrace();
-            headers.add("error", "SSL Configuration Error " + e.getMessage());
-            return new ResponseEntity<>(null, headers, HttpStatus.INTERNAL_SERVER_ERROR);
-        } catch (NoContentException e) {
-            e.printStackTrace();
-            headers.add("error", "No content available: " + e.getMessage());
-            return new ResponseEntity<>(null, headers,
-                    HttpStatus.NO_CONTENT);
-        } catch (IOException e) {
-            e.printStackTrace();
-            headers.add("error", "IO Error: " + e.getMessage());
-            return new ResponseEntity<>(null, headers,
-                    HttpStatus.INTERNAL_SERVER_ERROR);
-        } catch (Exception e) {
-            e.printStackTrace();
-            headers.add("error", "Error general: " + e.toString());
-            return new ResponseEntity<>(null, headers,
-                    HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+    public ResponseEntity<byte[]> getLaunches(
+            @RequestParam(required = false) Integer offset,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(value = "rocket_id", required = false) String rocketId,
+            @RequestParam(required = false) Boolean active,
+            @RequestParam(value = "min_cost", required = false) Long minCost,
+            @RequestParam(value = "max_cost", required = false) Long maxCost,
+            @RequestParam(required = false) String mission,
+            @RequestParam(required = false) String fields,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return responses.launches(offset, limit, rocketId, active, minCost, maxCost, mission, fields, ifNoneMatch,
+                acceptEncoding, accept);
+    }
+
+    /**
+     * Obtiene el listado de lanzamientos de SpaceX en formato NDJSON, un
+     * lanzamiento por linea. Se usa cuando el cliente envia
+     * <code>Accept: application/x-ndjson</code> y acepta los mismos parametros
+     * que {@link #getLaunches}. Los lanzamientos se escriben a medida que se
+     * recorren, por lo que el cliente recibe los primeros sin esperar al resto y
+     * la respuesta no se arma completa en memoria.
+     * 
+     * Si algun parametro es invalido responde 400 (BAD_REQUEST).
+     * Si todavia no hay datos y la API de SpaceX no esta disponible responde 503
+     * (SERVICE_UNAVAILABLE).
+     * Si falla por cualquier otro motivo, responde 500 (INTERNAL_SERVER_ERROR).
+     *
+     * @param offset   la cantidad de lanzamientos a saltear
+     * @param limit    la cantidad maxima de lanzamientos a retornar
+     * @param rocketId el id del cohete
+     * @param active   si el cohete debe estar activo
+     * @param minCost  el costo minimo por lanzamiento
+     * @param maxCost  el costo maximo por lanzamiento
+     * @param mission  el prefijo del nombre de la mision
+     * @param fields   los campos a incluir separados por coma
+     * @return el listado de lanzamientos de SpaceX en formato NDJSON
+     */
+    @GetMapping(value = "lunches", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamLaunches(
+            @RequestParam(required = false) Integer offset,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(value = "rocket_id", required = false) String rocketId,
+            @RequestParam(required = false) Boolean active,
+            @RequestParam(value = "min_cost", required = false) Long minCost,
+            @RequestParam(value = "max_cost", required = false) Long maxCost,
+            @RequestParam(required = false) String mission,
+            @RequestParam(required = false) String fields) {
+        ResponseEntity<LaunchStream> response = responses.launchStream(offset, limit, rocketId, active, minCost,
+                maxCost, mission, fields);
+        LaunchStream stream = response.getBody();
+        return new ResponseEntity<>(stream == null ? null : stream.body()::writeTo, response.getHeaders(),
+                response.getStatusCode());
+    }
+
+    /**
+     * Envia por Server-Sent Events los cambios de los lanzamientos a medida que
+     * se refresca el snapshot. Cada evento <code>delta</code> trae los
+     * lanzamientos agregados y modificados completos y los numeros de vuelo de
+     * los eliminados; el cliente debe pedir antes <code>GET /lunches</code> y
+     * aplicar los cambios sobre ese listado, suscribiendose con el header
+     * <code>Last-Event-ID</code> igual al X-Snapshot-Version de ese listado. Al
+     * reconectarse con el header <code>Last-Event-ID</code> recibe los eventos
+     * que se perdio, o un evento <code>reset</code> si ya no estan disponibles y
+     * tiene que volver a pedir el listado completo.
+     * 
+     * Si se alcanzo la cantidad maxima de suscriptores responde 503
+     * (SERVICE_UNAVAILABLE).
+     *
+     * @param lastEventId el id del ultimo evento que recibio el cliente, o la
+     *                    version del listado que ya tiene
+     * @return el stream de cambios
+     */
+    @GetMapping(value = "lunches/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamChanges(
+            @RequestHeader(value = SpexResponses.LAST_EVENT_ID_HEADER, required = false) String lastEventId) {
+        ResponseEntity<LaunchChangeFeed.Subscription> response = responses.changes(lastEventId);
+        LaunchChangeFeed.Subscription subscription = response.getBody();
+        return new ResponseEntity<>(subscription == null ? null : subscription::writeTo, response.getHeaders(),
+                response.getStatusCode());
+    }
+
+    /**
+     * Busca lanzamientos de SpaceX por texto en el nombre de mision y los
+     * detalles, ordenados por relevancia. Se exigen todos los terminos de la
+     * consulta; un termino terminado en <code>*</code> se busca como prefijo. La
+     * cantidad total de coincidencias se informa en el header X-Total-Count.
+     * 
+     * Si la consulta no tiene terminos o el limite no es positivo responde 400
+     * (BAD_REQUEST).
+     * Si todavia no hay datos y la API de SpaceX no esta disponible responde 503
+     * (SERVICE_UNAVAILABLE).
+     * Si falla por cualquier otro motivo, responde 500 (INTERNAL_SERVER_ERROR).
+     * 
+     * @param q              la consulta
+     * @param limit          la cantidad maxima de resultados
+     * @param ifNoneMatch    el ETag que ya tiene el cliente
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param accept         los formatos que acepta el cliente
+     * @return los lanzamientos encontrados en formato JSON
+     */
+    @GetMapping("lunches/search")
+    public ResponseEntity<byte[]> searchLaunches(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return responses.search(q, limit, ifNoneMatch, acceptEncoding, accept);
     }
 
     /**
      * Retorna la lista de lanzamientos de SpaceX que se encuentran en la lista de
-     * favoritos.
+     * favoritos del usuario.
+     * 
+     * @param userId el identificador del usuario, tomado del header X-User-Id
+     * @param ifNoneMatch    el ETag que ya tiene el cliente
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param accept         los formatos que acepta el cliente; tambien admite
+     *                       Smile y CBOR
      * 
      * Si la lista esta vacia, lanza una NoContentException con el http
      * status 204 (NO_CONTENT).
@@ -110,51 +235,41 @@ public class SpexController {
      * @return la lista de lanzamientos favoritos
      */
     @GetMapping("favorites")
-    public ResponseEntity<List<SpexLunches>> getFavoritesLunches() {
-        try {
-            return new ResponseEntity<>(spexService.getFavoritesLunches(), headers, HttpStatus.OK);
-        } catch (NoContentException e) {
-            e.printStackTrace();
-            headers.add("error", "No content available: " + e.getMessage());
-            return new ResponseEntity<>(null, headers, HttpStatus.NO_CONTENT);
-        } catch (Exception e) {
-            e.printStackTrace();
-            headers.add("error", "Error general: " + e.toString());
-            return new ResponseEntity<>(null, headers, HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+    public ResponseEntity<byte[]> getFavoritesLunches(
+            @RequestHeader(value = SpexResponses.USER_HEADER, defaultValue = FavoritesStore.DEFAULT_USER) String userId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return responses.favorites(userId, ifNoneMatch, acceptEncoding, accept);
     }
 
     /**
-     * Agrega un lanzamiento de SpaceX a la lista de favoritos.
+     * Agrega un lanzamiento de SpaceX a la lista de favoritos del usuario.
      * 
+     * @param userId el identificador del usuario, tomado del header X-User-Id
      * @param flightNumber el numero de vuelo del lanzamiento que se desea agregar a la lista de favoritos
      * 
      * Si el despegue a insertar no se encuentra, lanza una NoContentException con el http
      * status 204 (NO_CONTENT).
+     * Si no se puede registrar el cambio en disco responde 503 (SERVICE_UNAVAILABLE).
      * Si falla por cualquier otro motivo, lanza una Exception con el http status
      * 500 (INTERNAL_SERVER_ERROR).
      * 
      * @return la lista actualizada de lanzamientos favoritos
      */
     @PutMapping("favorites/{flightNumber}")
-    public ResponseEntity<List<SpexLunches>> addFavoriteLaunch(@PathVariable int flightNumber) {
-        try {
-            return new ResponseEntity<>(spexService.addFavoriteLaunch(flightNumber), headers, HttpStatus.OK);
-        } catch (NoContentException e) {
-            e.printStackTrace();
-            headers.add("error", "No content available: " + e.getMessage());
-            return new ResponseEntity<>(null, headers,
-                    HttpStatus.NO_CONTENT);
-        } catch (Exception e) {
-            e.printStackTrace();
-            headers.add("error", "Error general: " + e.toString());
-            return new ResponseEntity<>(null, headers, HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+    public ResponseEntity<byte[]> addFavoriteLaunch(
+            @RequestHeader(value = SpexResponses.USER_HEADER, defaultValue = FavoritesStore.DEFAULT_USER) String userId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @PathVariable int flightNumber) {
+        return responses.addFavorite(userId, acceptEncoding, flightNumber);
     }
 
     /**
-     * Borra un lanzamiento de SpaceX de la lista de favoritos.
+     * Borra un lanzamiento de SpaceX de la lista de favoritos del usuario.
      * 
+     * @param userId       el identificador del usuario, tomado del header
+     *                     X-User-Id
      * @param flightNumber el numero de vuelo del lanzamiento que se desea borrar
      *                     de la lista de favoritos
      * 
@@ -162,23 +277,43 @@ public class SpexController {
      * 
      * Si el despegue a eliminar no esta en los favoritos, lanza una NoContentException con el http
      * status 204 (NO_CONTENT).
+     * Si no se puede registrar el cambio en disco responde 503 (SERVICE_UNAVAILABLE).
      * Si falla por cualquier otro motivo, lanza una Exception con el http status
      * 500 (INTERNAL_SERVER_ERROR).
      * @return la lista actualizada de lanzamientos favoritos
      */
     @DeleteMapping("favorites/{flightNumber}")
-    public ResponseEntity<List<SpexLunches>> removeFavoriteLaunch(@PathVariable int flightNumber) {
-        try {
-            return new ResponseEntity<>(spexService.removeFavoriteLaunch(flightNumber), headers, HttpStatus.OK);
-        } catch (NoContentException e) {
-            e.printStackTrace();
-            headers.add("error", "No content available: " + e.getMessage());
-            return new ResponseEntity<>(null, headers,
-                    HttpStatus.NO_CONTENT);
-        } catch (Exception e) {
-            e.printStackTrace();
-            headers.add("error", "Error general: " + e.toString());
-            return new ResponseEntity<>(null, headers, HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+    public ResponseEntity<byte[]> removeFavoriteLaunch(
+            @RequestHeader(value = SpexResponses.USER_HEADER, defaultValue = FavoritesStore.DEFAULT_USER) String userId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @PathVariable int flightNumber) {
+        return responses.removeFavorite(userId, acceptEncoding, flightNumber);
+    }
+
+    /**
+     * Aplica en un solo request un lote de altas y bajas sobre los favoritos del
+     * usuario. El cuerpo es un arreglo JSON de operaciones
+     * <code>{"op": "add" | "remove", "flight_number": n}</code> que se aplican en
+     * orden y de forma atomica, con una unica version nueva de la lista. Responde
+     * el resultado de cada operacion y la version resultante, sin la lista
+     * completa.
+     * 
+     * Si alguna operacion es invalida o el lote es demasiado grande responde 400
+     * (BAD_REQUEST) sin aplicar ninguna operacion.
+     * Si no se puede registrar el cambio en disco responde 503 (SERVICE_UNAVAILABLE).
+     * Si falla por cualquier otro motivo, responde 500 (INTERNAL_SERVER_ERROR).
+     *
+     * @param userId         el identificador del usuario, tomado del header
+     *                       X-User-Id
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param operations     las operaciones a aplicar
+     * @return el resultado de cada operacion y la version de la lista
+     */
+    @PostMapping("favorites/batch")
+    public ResponseEntity<byte[]> applyFavoritesBatch(
+            @RequestHeader(value = SpexResponses.USER_HEADER, defaultValue = FavoritesStore.DEFAULT_USER) String userId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestBody List<FavoriteOperation> operations) {
+        return responses.favoritesBatch(userId, acceptEncoding, operations);
     }
 }
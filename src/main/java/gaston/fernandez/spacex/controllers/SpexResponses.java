@@ -0,0 +1,424 @@
+package gaston.fernandez.spacex.controllers;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import gaston.fernandez.spacex.collections.LaunchPage;
+import gaston.fernandez.spacex.collections.LaunchQuery;
+import gaston.fernandez.spacex.collections.LaunchStream;
+import gaston.fernandez.spacex.collections.SerializedPayload;
+import gaston.fernandez.spacex.collections.WireFormat;
+import gaston.fernandez.spacex.dtos.FavoriteOperation;
+import gaston.fernandez.spacex.exceptions.NoContentException;
+import gaston.fernandez.spacex.exceptions.PersistenceUnavailableException;
+import gaston.fernandez.spacex.exceptions.SSLConfigurationException;
+import gaston.fernandez.spacex.exceptions.UpstreamUnavailableException;
+import gaston.fernandez.spacex.services.LaunchChangeFeed;
+import gaston.fernandez.spacex.services.SpexService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Arma las respuestas de los endpoints de lanzamientos y favoritos. La usan
+ * tanto {@link SpexController} (servlet) como {@link ReactiveSpexController}
+ * (WebFlux), que solo se ocupan del mapeo de las rutas y de como se escribe el
+ * cuerpo en cada stack.
+ * <p>
+ * Cada metodo resuelve la peticion con {@link SpexService}, arma los headers de
+ * esa respuesta y traduce las excepciones a su status HTTP y al header
+ * <code>error</code>. Los cuerpos que se escriben como stream (NDJSON y el
+ * stream de cambios) se retornan sin adaptar para que cada controlador los
+ * escriba a su manera.
+ */
+@Slf4j
+@Component
+public class SpexResponses {
+
+    /**
+     * Header con el identificador del usuario (o API key) propietario de los favoritos.
+     */
+    public static final String USER_HEADER = "X-User-Id";
+
+    /**
+     * Header con la cantidad total de resultados de una consulta paginada.
+     */
+    public static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+    /**
+     * Header con la antiguedad en segundos de los datos con los que se responde.
+     */
+    public static final String SNAPSHOT_AGE_HEADER = "X-Snapshot-Age";
+
+    /**
+     * Header con la version del snapshot con el que se responde, que sirve como
+     * <code>Last-Event-ID</code> para suscribirse al stream de cambios desde ese
+     * punto.
+     */
+    public static final String SNAPSHOT_VERSION_HEADER = "X-Snapshot-Version";
+
+    /**
+     * Header con el id del ultimo evento que recibio un cliente del stream de
+     * cambios, o la version de un snapshot.
+     */
+    public static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+    private final SpexService spexService;
+
+    /**
+     * Constructor de la clase SpexResponses.
+     *
+     * @param spexService el objeto SpexService con la logica de negocio
+     */
+    public SpexResponses(SpexService spexService) {
+        this.spexService = spexService;
+    }
+
+    /**
+     * Responde una excepcion no manejada con 500 (INTERNAL_SERVER_ERROR).
+     *
+     * @param e la excepcion
+     * @return la respuesta HTTP
+     */
+    public ResponseEntity<String> error(Exception e) {
+        log.error("Error general", e);
+        return new ResponseEntity<>("Error general: " + e.getMessage(), errorHeaders("Error general: " + e.toString()),
+                HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    /**
+     * Listado de lanzamientos, paginado y filtrado. Ver
+     * {@link SpexController#getLaunches}.
+     *
+     * @param offset         la cantidad de lanzamientos a saltear
+     * @param limit          la cantidad maxima de lanzamientos a retornar
+     * @param rocketId       el id del cohete
+     * @param active         si el cohete debe estar activo
+     * @param minCost        el costo minimo por lanzamiento
+     * @param maxCost        el costo maximo por lanzamiento
+     * @param mission        el prefijo del nombre de la mision
+     * @param fields         los campos a incluir separados por coma
+     * @param ifNoneMatch    el ETag que ya tiene el cliente
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param accept         los formatos que acepta el cliente
+     * @return la respuesta HTTP
+     */
+    public ResponseEntity<byte[]> launches(Integer offset, Integer limit, String rocketId, Boolean active,
+            Long minCost, Long maxCost, String mission, String fields, String ifNoneMatch, String acceptEncoding,
+            String accept) {
+        try {
+            WireFormat format = WireFormat.fromAccept(accept);
+            HttpHeaders pageHeaders = snapshotHeaders();
+            if (offset == null && limit == null && rocketId == null && active == null && minCost == null
+                    && maxCost == null && mission == null && fields == null) {
+                return payloadResponse(spexService.encode(spexService.getSpexLunchesPayload(), format), format,
+                        ifNoneMatch, acceptEncoding, pageHeaders);
+            }
+            LaunchQuery query = new LaunchQuery(rocketId, active, minCost, maxCost, mission,
+                    offset == null ? 0 : offset, limit == null ? Integer.MAX_VALUE : limit);
+            LaunchPage page = spexService.queryLunches(query, fields);
+            pageHeaders.add(TOTAL_COUNT_HEADER, Integer.toString(page.total()));
+            return payloadResponse(spexService.encode(page.payload(), format), format, ifNoneMatch, acceptEncoding,
+                    pageHeaders);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, errorHeaders("Bad request: " + e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (UpstreamUnavailableException e) {
+            return new ResponseEntity<>(null, errorHeaders("Service unavailable: " + e.getMessage()),
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (SSLConfigurationException e) {
+            log.error("SSL Configuration Error", e);
+            return new ResponseEntity<>(null, errorHeaders("SSL Configuration Error " + e.getMessage()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (NoContentException e) {
+            log.warn("No content available: {}", e.getMessage());
+            return new ResponseEntity<>(null, errorHeaders("No content available: " + e.getMessage()),
+                    HttpStatus.NO_CONTENT);
+        } catch (IOException e) {
+            log.error("IO Error", e);
+            return new ResponseEntity<>(null, errorHeaders("IO Error: " + e.getMessage()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (Exception e) {
+            log.error("Error general", e);
+            return new ResponseEntity<>(null, errorHeaders("Error general: " + e.toString()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Listado de lanzamientos en NDJSON. Ver {@link SpexController#streamLaunches}.
+     * Los errores se resuelven aca, antes de empezar a escribir el cuerpo.
+     *
+     * @param offset   la cantidad de lanzamientos a saltear
+     * @param limit    la cantidad maxima de lanzamientos a retornar
+     * @param rocketId el id del cohete
+     * @param active   si el cohete debe estar activo
+     * @param minCost  el costo minimo por lanzamiento
+     * @param maxCost  el costo maximo por lanzamiento
+     * @param mission  el prefijo del nombre de la mision
+     * @param fields   los campos a incluir separados por coma
+     * @return la respuesta HTTP con el cuerpo todavia sin escribir
+     */
+    public ResponseEntity<LaunchStream> launchStream(Integer offset, Integer limit, String rocketId,
+            Boolean active, Long minCost, Long maxCost, String mission, String fields) {
+        try {
+            LaunchQuery query = new LaunchQuery(rocketId, active, minCost, maxCost, mission,
+                    offset == null ? 0 : offset, limit == null ? Integer.MAX_VALUE : limit);
+            HttpHeaders streamHeaders = snapshotHeaders();
+            LaunchStream stream = spexService.streamLunches(query, fields);
+            streamHeaders.add(TOTAL_COUNT_HEADER, Integer.toString(stream.total()));
+            streamHeaders.setContentType(MediaType.APPLICATION_NDJSON);
+            return new ResponseEntity<>(stream, streamHeaders, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, errorHeaders("Bad request: " + e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (UpstreamUnavailableException e) {
+            return new ResponseEntity<>(null, errorHeaders("Service unavailable: " + e.getMessage()),
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (Exception e) {
+            log.error("Error general", e);
+            return new ResponseEntity<>(null, errorHeaders("Error general: " + e.toString()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Suscripcion al stream de cambios. Ver {@link SpexController#streamChanges}.
+     *
+     * @param lastEventId el id del ultimo evento que recibio el cliente
+     * @return la respuesta HTTP con la suscripcion como cuerpo
+     */
+    public ResponseEntity<LaunchChangeFeed.Subscription> changes(String lastEventId) {
+        LaunchChangeFeed.Subscription subscription = spexService.streamChanges(lastEventId);
+        if (subscription == null) {
+            return new ResponseEntity<>(null, errorHeaders("Service unavailable: too many subscribers"),
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        HttpHeaders streamHeaders = new HttpHeaders();
+        streamHeaders.setContentType(MediaType.TEXT_EVENT_STREAM);
+        streamHeaders.setCacheControl("no-cache");
+        // Evita que un proxy como nginx acumule los eventos antes de enviarlos.
+        streamHeaders.add("X-Accel-Buffering", "no");
+        return new ResponseEntity<>(subscription, streamHeaders, HttpStatus.OK);
+    }
+
+    /**
+     * Busqueda de lanzamientos por texto. Ver {@link SpexController#searchLaunches}.
+     *
+     * @param q              la consulta
+     * @param limit          la cantidad maxima de resultados
+     * @param ifNoneMatch    el ETag que ya tiene el cliente
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param accept         los formatos que acepta el cliente
+     * @return la respuesta HTTP
+     */
+    public ResponseEntity<byte[]> search(String q, int limit, String ifNoneMatch, String acceptEncoding,
+            String accept) {
+        try {
+            WireFormat format = WireFormat.fromAccept(accept);
+            HttpHeaders pageHeaders = snapshotHeaders();
+            LaunchPage page = spexService.searchLunches(q, limit);
+            pageHeaders.add(TOTAL_COUNT_HEADER, Integer.toString(page.total()));
+            return payloadResponse(spexService.encode(page.payload(), format), format, ifNoneMatch, acceptEncoding,
+                    pageHeaders);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, errorHeaders("Bad request: " + e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (UpstreamUnavailableException e) {
+            return new ResponseEntity<>(null, errorHeaders("Service unavailable: " + e.getMessage()),
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (Exception e) {
+            log.error("Error general", e);
+            return new ResponseEntity<>(null, errorHeaders("Error general: " + e.toString()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Lanzamientos favoritos del usuario. Ver
+     * {@link SpexController#getFavoritesLunches}.
+     *
+     * @param userId         el identificador del usuario
+     * @param ifNoneMatch    el ETag que ya tiene el cliente
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param accept         los formatos que acepta el cliente
+     * @return la respuesta HTTP
+     */
+    public ResponseEntity<byte[]> favorites(String userId, String ifNoneMatch, String acceptEncoding,
+            String accept) {
+        try {
+            WireFormat format = WireFormat.fromAccept(accept);
+            return payloadResponse(spexService.encode(spexService.getFavoritesPayload(userId), format), format,
+                    ifNoneMatch, acceptEncoding, new HttpHeaders());
+        } catch (NoContentException e) {
+            log.warn("No content available: {}", e.getMessage());
+            return new ResponseEntity<>(null, errorHeaders("No content available: " + e.getMessage()),
+                    HttpStatus.NO_CONTENT);
+        } catch (Exception e) {
+            log.error("Error general", e);
+            return new ResponseEntity<>(null, errorHeaders("Error general: " + e.toString()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Alta de un favorito. Ver {@link SpexController#addFavoriteLaunch}.
+     *
+     * @param userId         el identificador del usuario
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param flightNumber   el numero de vuelo del lanzamiento
+     * @return la respuesta HTTP
+     */
+    public ResponseEntity<byte[]> addFavorite(String userId, String acceptEncoding, int flightNumber) {
+        try {
+            return payloadResponse(spexService.addFavoriteLaunch(userId, flightNumber), null, acceptEncoding);
+        } catch (PersistenceUnavailableException e) {
+            return new ResponseEntity<>(null, errorHeaders("Service unavailable: " + e.getMessage()),
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (NoContentException e) {
+            log.warn("No content available: {}", e.getMessage());
+            return new ResponseEntity<>(null, errorHeaders("No content available: " + e.getMessage()),
+                    HttpStatus.NO_CONTENT);
+        } catch (Exception e) {
+            log.error("Error general", e);
+            return new ResponseEntity<>(null, errorHeaders("Error general: " + e.toString()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Baja de un favorito. Ver {@link SpexController#removeFavoriteLaunch}.
+     *
+     * @param userId         el identificador del usuario
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param flightNumber   el numero de vuelo del lanzamiento
+     * @return la respuesta HTTP
+     */
+    public ResponseEntity<byte[]> removeFavorite(String userId, String acceptEncoding, int flightNumber) {
+        try {
+            return payloadResponse(spexService.removeFavoriteLaunch(userId, flightNumber), null, acceptEncoding);
+        } catch (PersistenceUnavailableException e) {
+            return new ResponseEntity<>(null, errorHeaders("Service unavailable: " + e.getMessage()),
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (NoContentException e) {
+            log.warn("No content available: {}", e.getMessage());
+            return new ResponseEntity<>(null, errorHeaders("No content available: " + e.getMessage()),
+                    HttpStatus.NO_CONTENT);
+        } catch (Exception e) {
+            log.error("Error general", e);
+            return new ResponseEntity<>(null, errorHeaders("Error general: " + e.toString()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Lote de altas y bajas de favoritos. Ver
+     * {@link SpexController#applyFavoritesBatch}.
+     *
+     * @param userId         el identificador del usuario
+     * @param acceptEncoding las codificaciones que acepta el cliente
+     * @param operations     las operaciones a aplicar
+     * @return la respuesta HTTP
+     */
+    public ResponseEntity<byte[]> favoritesBatch(String userId, String acceptEncoding,
+            List<FavoriteOperation> operations) {
+        try {
+            return payloadResponse(spexService.applyFavoritesBatch(userId, operations), null, acceptEncoding);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, errorHeaders("Bad request: " + e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (PersistenceUnavailableException e) {
+            return new ResponseEntity<>(null, errorHeaders("Service unavailable: " + e.getMessage()),
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (Exception e) {
+            log.error("Error general", e);
+            return new ResponseEntity<>(null, errorHeaders("Error general: " + e.toString()),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Crea los headers de una respuesta de error. Cada respuesta arma los suyos
+     * porque se atienden peticiones concurrentes.
+     *
+     * @param error el mensaje de error que se informa en el header
+     *              <code>error</code>
+     * @return los headers de la respuesta
+     */
+    private static HttpHeaders errorHeaders(String error) {
+        HttpHeaders errorHeaders = new HttpHeaders();
+        errorHeaders.add(HttpHeaders.CONTENT_TYPE, "application/json; charset=UTF-8");
+        errorHeaders.add("error", error.replace('\r', ' ').replace('\n', ' '));
+        return errorHeaders;
+    }
+
+    /**
+     * Crea los headers de una respuesta armada a partir del snapshot de
+     * lanzamientos, con su version y su antiguedad en segundos. Se llama antes de
+     * leer los lanzamientos: si entre tanto se publica otro snapshot, la version
+     * informada es la anterior y al suscribirse con ella el cliente recibe de
+     * nuevo cambios que ya tiene, pero nunca se saltea uno.
+     *
+     * @return los headers de la respuesta
+     * @throws Exception si falla la carga del primer snapshot
+     */
+    private HttpHeaders snapshotHeaders() throws Exception {
+        HttpHeaders snapshotHeaders = new HttpHeaders();
+        snapshotHeaders.add(SNAPSHOT_VERSION_HEADER, Long.toString(spexService.getSnapshotVersion()));
+        Duration age = spexService.getSnapshotAge();
+        if (age != null) {
+            snapshotHeaders.add(SNAPSHOT_AGE_HEADER, Long.toString(Math.max(0, age.toSeconds())));
+        }
+        return snapshotHeaders;
+    }
+
+    /**
+     * Arma la respuesta a partir de un cuerpo ya serializado, sin pasar por
+     * Jackson. Si el cliente ya tiene la version actual (segun
+     * <code>If-None-Match</code>) responde 304 sin cuerpo; si acepta gzip envia
+     * los bytes comprimidos.
+     *
+     * @param payload        el cuerpo serializado
+     * @param ifNoneMatch    el header If-None-Match del cliente, puede ser
+     *                       <code>null</code>
+     * @param acceptEncoding el header Accept-Encoding del cliente, puede ser
+     *                       <code>null</code>
+     * @return la respuesta HTTP
+     */
+    private static ResponseEntity<byte[]> payloadResponse(SerializedPayload payload, String ifNoneMatch,
+            String acceptEncoding) {
+        return payloadResponse(payload, WireFormat.JSON, ifNoneMatch, acceptEncoding, new HttpHeaders());
+    }
+
+    /**
+     * Igual que {@link #payloadResponse(SerializedPayload, String, String)} pero
+     * en el formato indicado y agregando los headers indicados a la respuesta.
+     * Como el formato depende del header <code>Accept</code>, la respuesta
+     * declara <code>Vary: Accept</code>.
+     *
+     * @param payload         el cuerpo serializado en el formato indicado
+     * @param format          el formato del cuerpo
+     * @param ifNoneMatch     el header If-None-Match del cliente, puede ser
+     *                        <code>null</code>
+     * @param acceptEncoding  el header Accept-Encoding del cliente, puede ser
+     *                        <code>null</code>
+     * @param responseHeaders los headers propios de la respuesta
+     * @return la respuesta HTTP
+     */
+    private static ResponseEntity<byte[]> payloadResponse(SerializedPayload payload, WireFormat format,
+            String ifNoneMatch, String acceptEncoding, HttpHeaders responseHeaders) {
+        boolean gzipped = SerializedPayload.acceptsGzip(acceptEncoding);
+        responseHeaders.setETag(payload.etag(gzipped));
+        responseHeaders.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        responseHeaders.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        if (payload.matches(ifNoneMatch, gzipped)) {
+            return new ResponseEntity<>(responseHeaders, HttpStatus.NOT_MODIFIED);
+        }
+        responseHeaders.add(HttpHeaders.CONTENT_TYPE, format.contentType());
+        if (gzipped) {
+            responseHeaders.add(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return new ResponseEntity<>(payload.body(gzipped), responseHeaders, HttpStatus.OK);
+    }
+}
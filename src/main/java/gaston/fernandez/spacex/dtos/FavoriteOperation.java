@@ -0,0 +1,26 @@
+package gaston.fernandez.spacex.dtos;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Registro inmutable que representa una operacion de un lote de favoritos.
+ *
+ * @param op           la operacion: <code>add</code> o <code>remove</code>
+ * @param flightNumber el numero de vuelo del lanzamiento
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record FavoriteOperation(
+        @JsonProperty("op") String op,
+        @JsonProperty("flight_number") int flightNumber) {
+
+    /**
+     * Operacion de alta de un favorito.
+     */
+    public static final String ADD = "add";
+
+    /**
+     * Operacion de baja de un favorito.
+     */
+    public static final String REMOVE = "remove";
+}
@@ -0,0 +1,58 @@
+package gaston.fernandez.spacex.dtos;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Registro inmutable con el resultado de aplicar un lote de operaciones de
+ * favoritos.
+ *
+ * @param version la version de la lista de favoritos despues del lote
+ * @param size    la cantidad de favoritos despues del lote
+ * @param results el resultado de cada operacion, en el orden del lote
+ */
+public record FavoritesBatchResult(
+        @JsonProperty("version") long version,
+        @JsonProperty("size") int size,
+        @JsonProperty("results") List<Item> results) {
+
+    /**
+     * El lanzamiento se agrego a los favoritos.
+     */
+    public static final String ADDED = "added";
+
+    /**
+     * El lanzamiento se quito de los favoritos.
+     */
+    public static final String REMOVED = "removed";
+
+    /**
+     * El lanzamiento ya estaba en los favoritos.
+     */
+    public static final String ALREADY_FAVORITE = "already_favorite";
+
+    /**
+     * El lanzamiento no estaba en los favoritos.
+     */
+    public static final String NOT_FAVORITE = "not_favorite";
+
+    /**
+     * No existe un lanzamiento con ese numero de vuelo; la operacion no se
+     * aplico.
+     */
+    public static final String NOT_FOUND = "not_found";
+
+    /**
+     * Resultado de una operacion del lote.
+     *
+     * @param flightNumber el numero de vuelo de la operacion
+     * @param op           la operacion
+     * @param status       el resultado de la operacion
+     */
+    public record Item(
+            @JsonProperty("flight_number") int flightNumber,
+            @JsonProperty("op") String op,
+            @JsonProperty("status") String status) {
+    }
+}
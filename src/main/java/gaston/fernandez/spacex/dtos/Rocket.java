@@ -1,34 +1,27 @@
 package gaston.fernandez.spacex.dtos;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
- * Clase que representa un Cohete
+ * Registro inmutable que representa un Cohete
  * <ul>
  *      <li> Se utiliza la anotacion @JsonProperty para mapear los atributos de la respuesta de la API</li>
  *      <li> Se utiliza la anotacion @JsonIgnoreProperties para ignorar los atributos que no se encuentren en la clase</li>
- *      <li> Se utiliza la anotacion @Data de Lombok para generar los metodos getter, setter, equals, hashcode y toString</li>
- *      <li> Se utiliza la anotacion @AllArgsConstructor de Lombok para generar un constructor con todos los atributos de la clase</li>
- *      <li> Se utiliza la anotacion @NoArgsConstructor de Lombok para generar un constructor vacio</li>
+ *      <li> Al ser inmutable, una misma instancia se comparte entre todos los lanzamientos que usan el cohete</li>
  * </ul>
+ *
+ * @param rocketId      el id del cohete
+ * @param rocketName    el nombre del cohete
+ * @param active        si el cohete esta activo
+ * @param costPerLaunch el costo por lanzamiento
+ * @param company       la empresa que fabrica el cohete
  */
-@AllArgsConstructor
-@NoArgsConstructor
-@Data
 @JsonIgnoreProperties(ignoreUnknown = true)
-public class Rocket {
-    @JsonProperty("rocket_id")
-    private String rocketId;
-    @JsonProperty("rocket_name")
-    private String rocketName;
-    @JsonProperty("active")
-    private boolean active;
-    @JsonProperty("cost_per_launch")
-    private long costPerLaunch;
-    @JsonProperty("company")
-    private String company;
+public record Rocket(
+        @JsonProperty("rocket_id") String rocketId,
+        @JsonProperty("rocket_name") String rocketName,
+        @JsonProperty("active") boolean active,
+        @JsonProperty("cost_per_launch") long costPerLaunch,
+        @JsonProperty("company") String company) {
 }
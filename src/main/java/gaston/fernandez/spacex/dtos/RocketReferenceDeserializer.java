@@ -0,0 +1,66 @@
+package gaston.fernandez.spacex.dtos;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import gaston.fernandez.spacex.collections.RocketDictionary;
+
+/**
+ * Deserializa el cohete de un lanzamiento como una referencia al diccionario de
+ * cohetes compartidos.
+ * <p>
+ * Si el ObjectReader tiene el atributo {@link #DICTIONARY_ATTRIBUTE} con un
+ * {@link RocketDictionary}, solo se lee el campo rocket_id, se saltean los demas
+ * y se retorna la instancia compartida, sin crear un Rocket por lanzamiento. Si
+ * el id no esta en el diccionario se retorna un Rocket que solo tiene el id, para
+ * que el servicio pueda contarlo; el servicio no lo publica y deja el
+ * lanzamiento sin cohete. Sin el atributo se deserializa el Rocket completo.
+ */
+public class RocketReferenceDeserializer extends StdDeserializer<Rocket> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Clave del atributo del ObjectReader con el diccionario de cohetes.
+     */
+    public static final Class<RocketDictionary> DICTIONARY_ATTRIBUTE = RocketDictionary.class;
+
+    /**
+     * Constructor de la clase RocketReferenceDeserializer.
+     */
+    public RocketReferenceDeserializer() {
+        super(Rocket.class);
+    }
+
+    @Override
+    public Rocket deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (!(context.getAttribute(DICTIONARY_ATTRIBUTE) instanceof RocketDictionary dictionary)) {
+            return context.readValue(parser, Rocket.class);
+        }
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = parser.nextToken();
+        }
+        Rocket resolved = null;
+        String unknownId = null;
+        for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("rocket_id".equals(name) && value == JsonToken.VALUE_STRING) {
+                resolved = dictionary.find(parser.getTextCharacters(), parser.getTextOffset(),
+                        parser.getTextLength());
+                unknownId = resolved == null ? parser.getText() : null;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (resolved != null) {
+            return resolved;
+        }
+        return unknownId == null ? null : new Rocket(unknownId, null, false, 0, null);
+    }
+}
@@ -2,33 +2,26 @@ package gaston.fernandez.spacex.dtos;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
-
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 /**
- * Clase que representa un lanzamiento de SpaceX.
+ * Registro inmutable que representa un lanzamiento de SpaceX.
  * <ul>
  *      <li> Se utiliza la anotacion @JsonProperty para mapear los atributos de la respuesta de la API</li>
  *      <li> Se utiliza la anotacion @JsonIgnoreProperties para ignorar los atributos que no se encuentren en la clase</li>
- *      <li> Se utiliza la anotacion @Data de Lombok para generar los metodos getter, setter, equals, hashcode y toString</li>
- *      <li> Se utiliza la anotacion @AllArgsConstructor de Lombok para generar un constructor con todos los atributos de la clase</li>
- *      <li> Se utiliza la anotacion @NoArgsConstructor de Lombok para generar un constructor vacio</li>
+ *      <li> El cohete se deserializa con RocketReferenceDeserializer, que lo resuelve contra el diccionario de cohetes compartidos</li>
+ *      <li> Al ser inmutable, los lanzamientos sin cambios se comparten entre snapshots sin copiarlos</li>
  * </ul>
+ *
+ * @param flightNumber el numero de vuelo
+ * @param missionName  el nombre de la mision
+ * @param details      los detalles del lanzamiento
+ * @param rocket       el cohete del lanzamiento
  */
-@AllArgsConstructor
-@NoArgsConstructor
-@Data
 @JsonIgnoreProperties(ignoreUnknown = true)
-public class SpexLunches {
-
-    @JsonProperty("flight_number")
-    private int flightNumber;
-    @JsonProperty("mission_name")
-    private String missionName;
-    @JsonProperty("details")
-    private String details;
-    @JsonProperty("rocket")
-    private Rocket rocket;
+public record SpexLunches(
+        @JsonProperty("flight_number") int flightNumber,
+        @JsonProperty("mission_name") String missionName,
+        @JsonProperty("details") String details,
+        @JsonProperty("rocket") @JsonDeserialize(using = RocketReferenceDeserializer.class) Rocket rocket) {
 }
@@ -59,6 +59,18 @@ public class GlobalExceptionHandler {
 		return new ResponseEntity<>("SSL Configuration Error: " + ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
 	}
 
+	/**
+	 * Manejo global de la excepcion UpstreamUnavailableException
+	 * 
+	 * @param ex la excepcion lanzada
+	 * @return una respuesta con un mensaje de error y un estado HTTP 503
+	 */
+	@ExceptionHandler(UpstreamUnavailableException.class)
+	public ResponseEntity<String> handleUpstreamUnavailableException(UpstreamUnavailableException ex) {
+		log.error("API de SpaceX no disponible: {}", ex.toString());
+		return new ResponseEntity<>("Service unavailable: " + ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
 	/**
 	 * Manejo global de la excepcion NoResourceFoundException
 	 * 
@@ -0,0 +1,31 @@
+package gaston.fernandez.spacex.exceptions;
+
+/**
+ * Excepcion lanzada cuando no se puede registrar un cambio de favoritos en el
+ * WAL, porque la escritura en disco fallo o no da abasto. El cambio no se
+ * aplica y se responde con 503.
+ */
+public class PersistenceUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor de la clase PersistenceUnavailableException con un mensaje.
+     *
+     * @param message el mensaje de la excepcion
+     */
+    public PersistenceUnavailableException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructor de la clase PersistenceUnavailableException con un mensaje y
+     * una causa.
+     *
+     * @param message el mensaje de la excepcion
+     * @param cause   la causa de la excepcion
+     */
+    public PersistenceUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
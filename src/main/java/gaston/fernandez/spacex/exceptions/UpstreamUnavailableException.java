@@ -0,0 +1,31 @@
+package gaston.fernandez.spacex.exceptions;
+
+/**
+ * Excepcion lanzada cuando la API de SpaceX no esta disponible y todavia no hay
+ * un snapshot de lanzamientos para responder. Se responde con 503 desde
+ * {@link GlobalExceptionHandler}.
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor de la clase UpstreamUnavailableException con un mensaje.
+     *
+     * @param message el mensaje de la excepcion
+     */
+    public UpstreamUnavailableException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructor de la clase UpstreamUnavailableException con un mensaje y una
+     * causa.
+     *
+     * @param message el mensaje de la excepcion
+     * @param cause   la causa de la excepcion
+     */
+    public UpstreamUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
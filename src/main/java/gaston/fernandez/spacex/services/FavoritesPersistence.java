@@ -0,0 +1,688 @@
+package gaston.fernandez.spacex.services;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import gaston.fernandez.spacex.collections.FavoritesList;
+import gaston.fernandez.spacex.collections.FavoritesStore;
+import gaston.fernandez.spacex.exceptions.PersistenceUnavailableException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persiste en disco local los favoritos de todos los usuarios.
+ * <p>
+ * Cada alta o baja se agrega a un log de escritura anticipada (WAL) de solo
+ * agregado. Un unico hilo escritor agrupa las operaciones pendientes en lotes y
+ * hace un solo fsync por lote, por lo que el fsync no queda en el camino de
+ * latencia de los PUT/DELETE. Periodicamente el estado completo se compacta en
+ * un snapshot binario y se descartan los WAL ya cubiertos.
+ * <p>
+ * Al iniciar, el snapshot se lee con un archivo mapeado en memoria y luego se
+ * reproducen los WAL posteriores. Los WAL se numeran por generacion
+ * (<code>favorites-&lt;generacion&gt;.wal</code>) y el snapshot guarda la primera
+ * generacion que falta reproducir, de modo que una caida durante la compactacion
+ * no reaplica operaciones viejas.
+ * <p>
+ * Las operaciones se registran con una {@link Reservation} tomada antes de
+ * modificar la lista del usuario: la espera por lugar en la cola ocurre fuera
+ * del bloqueo de la entrada, y el registro dentro de la actualizacion es
+ * inmediato. Antes de escribir un snapshot se espera a que terminen las
+ * actualizaciones de los usuarios cuyas operaciones estan en los WAL que se van
+ * a borrar, para que el snapshot las incluya.
+ * <p>
+ * Si un lote no se puede escribir se reintenta; si sigue fallando el hilo
+ * escritor se detiene, el componente se informa como caido en
+ * <code>/actuator/health</code> y los nuevos cambios de favoritos se rechazan
+ * con {@link PersistenceUnavailableException}.
+ */
+@Component
+@Slf4j
+public class FavoritesPersistence implements HealthIndicator {
+
+    private static final int SNAPSHOT_MAGIC = 0x53505846;
+
+    private static final int SNAPSHOT_FORMAT = 1;
+
+    private static final String SNAPSHOT_FILE = "favorites.snapshot";
+
+    private static final String WAL_PREFIX = "favorites-";
+
+    private static final String WAL_SUFFIX = ".wal";
+
+    private static final byte OP_ADD = 1;
+
+    private static final byte OP_REMOVE = 2;
+
+    /**
+     * Largo fijo de un registro del WAL sin contar el usuario: crc, tipo, numero
+     * de vuelo y largo del usuario.
+     */
+    private static final int WAL_RECORD_HEADER = Integer.BYTES + Byte.BYTES + Integer.BYTES + Short.BYTES;
+
+    /**
+     * Cantidad maxima de operaciones pendientes de escribirse en el WAL.
+     */
+    private static final int QUEUE_CAPACITY = 65_536;
+
+    /**
+     * Espera base entre reintentos de escritura de un lote, que se duplica en
+     * cada intento.
+     */
+    private static final long WRITE_RETRY_BACKOFF_MS = 100;
+
+    /**
+     * Operacion de alta o baja de un favorito pendiente de escribirse en el WAL.
+     *
+     * @param userId       el identificador del usuario
+     * @param flightNumber el numero de vuelo
+     * @param type         {@link #OP_ADD} o {@link #OP_REMOVE}
+     */
+    private record Operation(String userId, int flightNumber, byte type) {
+    }
+
+    /**
+     * Indica si la persistencia esta habilitada.
+     */
+    @Value("${spacex.favorites.persistence.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Directorio donde se guardan el snapshot y los WAL.
+     */
+    @Value("${spacex.favorites.persistence.dir:data}")
+    private String directory;
+
+    /**
+     * Cantidad maxima de operaciones que se escriben con un mismo fsync.
+     */
+    @Value("${spacex.favorites.persistence.batch-size:1024}")
+    private int batchSize;
+
+    /**
+     * Cada cuantos milisegundos se compacta el WAL en un nuevo snapshot.
+     */
+    @Value("${spacex.favorites.persistence.compact-interval-ms:600000}")
+    private long compactIntervalMs;
+
+    /**
+     * Cantidad de reintentos de escritura de un lote antes de detener el hilo
+     * escritor.
+     */
+    @Value("${spacex.favorites.persistence.write-retries:3}")
+    private int writeRetries;
+
+    /**
+     * Cuantos milisegundos espera un cambio de favoritos por lugar en la cola del
+     * WAL antes de rechazarse.
+     */
+    @Value("${spacex.favorites.persistence.reserve-timeout-ms:5000}")
+    private long reserveTimeoutMs;
+
+    private final FavoritesStore favoritesStore;
+
+    private final BlockingQueue<Operation> pending = new LinkedBlockingQueue<>();
+
+    /**
+     * Lugares libres en la cola de operaciones pendientes. Se toman con
+     * {@link #reserve(int)} y el hilo escritor los devuelve al sacar las
+     * operaciones de la cola.
+     */
+    private final Semaphore capacity = new Semaphore(QUEUE_CAPACITY);
+
+    /**
+     * Usuarios con operaciones escritas en el WAL actual. Solo lo usa el hilo
+     * escritor.
+     */
+    private final Set<String> walUsers = new HashSet<>();
+
+    private final Timer flushTimer;
+
+    private final DistributionSummary batchSummary;
+
+    private final Timer recoveryTimer;
+
+    private Path dataDirectory;
+
+    private FileChannel wal;
+
+    private long walGeneration;
+
+    private volatile boolean running;
+
+    private volatile IOException failure;
+
+    private Thread writer;
+
+    /**
+     * Constructor de la clase FavoritesPersistence.
+     *
+     * @param favoritesStore el almacen de favoritos que se persiste y recupera
+     * @param meterRegistry  el registro de metricas donde se publican la duracion
+     *                       de la recuperacion y de cada fsync del WAL
+     */
+    public FavoritesPersistence(FavoritesStore favoritesStore, MeterRegistry meterRegistry) {
+        this.favoritesStore = favoritesStore;
+        this.flushTimer = Timer.builder("spacex.favorites.wal.flush")
+                .description("Duracion de la escritura y fsync de cada lote del WAL de favoritos")
+                .register(meterRegistry);
+        this.batchSummary = DistributionSummary.builder("spacex.favorites.wal.batch")
+                .description("Cantidad de operaciones escritas por fsync en el WAL de favoritos")
+                .register(meterRegistry);
+        this.recoveryTimer = Timer.builder("spacex.favorites.recovery")
+                .description("Duracion de la recuperacion de favoritos al iniciar")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Recupera los favoritos persistidos, compacta el estado recuperado en un
+     * snapshot nuevo e inicia el hilo escritor del WAL.
+     *
+     * @throws IOException si falla la lectura o escritura de los archivos
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            log.info("Persistencia de favoritos deshabilitada");
+            return;
+        }
+        dataDirectory = Path.of(directory);
+        Files.createDirectories(dataDirectory);
+
+        long started = System.nanoTime();
+        long nextGeneration = recover();
+        long elapsed = System.nanoTime() - started;
+        recoveryTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Favoritos recuperados de {} en {} ms", dataDirectory.toAbsolutePath(),
+                TimeUnit.NANOSECONDS.toMillis(elapsed));
+
+        compact(nextGeneration);
+        running = true;
+        writer = Thread.ofPlatform().daemon().name("favorites-wal-writer").start(this::writeLoop);
+    }
+
+    /**
+     * Detiene el hilo escritor despues de escribir las operaciones pendientes y
+     * cierra el WAL.
+     *
+     * @throws IOException si falla al cerrar el WAL
+     */
+    @PreDestroy
+    public void stop() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        wal.close();
+    }
+
+    /**
+     * Reserva lugar en la cola del WAL para las operaciones de un cambio de
+     * favoritos. Se llama antes de modificar la lista del usuario, porque puede
+     * bloquear; las operaciones se registran con la reserva dentro de la
+     * modificacion. Al cerrarla se liberan los lugares que no se usaron.
+     *
+     * @param operations la cantidad maxima de operaciones a registrar
+     * @return la reserva
+     * @throws PersistenceUnavailableException si el WAL fallo o la cola sigue
+     *                                         llena despues de
+     *                                         <code>spacex.favorites.persistence.reserve-timeout-ms</code>
+     */
+    public Reservation reserve(int operations) {
+        if (!enabled || operations == 0) {
+            return new Reservation(0);
+        }
+        checkHealthy();
+        boolean acquired;
+        try {
+            acquired = capacity.tryAcquire(operations, reserveTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new PersistenceUnavailableException("Interrumpido esperando lugar en el WAL de favoritos", ex);
+        }
+        if (!acquired) {
+            throw new PersistenceUnavailableException("El WAL de favoritos no da abasto");
+        }
+        return new Reservation(operations);
+    }
+
+    /**
+     * Lugar reservado en la cola del WAL para las operaciones de un cambio de
+     * favoritos. Ver {@link FavoritesPersistence#reserve(int)}.
+     */
+    public final class Reservation implements AutoCloseable {
+
+        private final int reserved;
+
+        private int used;
+
+        private Reservation(int reserved) {
+            this.reserved = reserved;
+        }
+
+        /**
+         * Registra el alta de un favorito. La operacion se escribe en el WAL en
+         * el proximo lote.
+         *
+         * @param userId       el identificador del usuario
+         * @param flightNumber el numero de vuelo agregado
+         */
+        public void logAdd(String userId, int flightNumber) {
+            append(new Operation(userId, flightNumber, OP_ADD));
+        }
+
+        /**
+         * Registra la baja de un favorito. La operacion se escribe en el WAL en
+         * el proximo lote.
+         *
+         * @param userId       el identificador del usuario
+         * @param flightNumber el numero de vuelo eliminado
+         */
+        public void logRemove(String userId, int flightNumber) {
+            append(new Operation(userId, flightNumber, OP_REMOVE));
+        }
+
+        private void append(Operation operation) {
+            if (!enabled) {
+                return;
+            }
+            if (used == reserved) {
+                throw new IllegalStateException("Se registraron mas operaciones que las reservadas");
+            }
+            used++;
+            pending.add(operation);
+        }
+
+        /**
+         * Libera los lugares reservados que no se usaron.
+         */
+        @Override
+        public void close() {
+            capacity.release(reserved - used);
+        }
+    }
+
+    /**
+     * Informa el estado del WAL de favoritos: caido si el hilo escritor se detuvo
+     * por un error de escritura.
+     *
+     * @return el estado del WAL
+     */
+    @Override
+    public Health health() {
+        IOException current = failure;
+        if (current != null) {
+            return Health.down(current).build();
+        }
+        return Health.up().withDetail("enabled", enabled).withDetail("pending", pending.size()).build();
+    }
+
+    private void checkHealthy() {
+        IOException current = failure;
+        if (current != null) {
+            throw new PersistenceUnavailableException("El WAL de favoritos no esta disponible", current);
+        }
+    }
+
+    /**
+     * Bucle del hilo escritor: toma las operaciones pendientes en lotes, las
+     * escribe con un unico fsync por lote y compacta cuando corresponde. Si un
+     * lote no se puede escribir despues de los reintentos, el hilo se detiene y
+     * el componente queda caido.
+     */
+    private void writeLoop() {
+        List<Operation> batch = new ArrayList<>(batchSize);
+        long nextCompaction = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(compactIntervalMs);
+        try {
+            while (running || !pending.isEmpty()) {
+                Operation first = pending.poll(200, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    pending.drainTo(batch, batchSize - 1);
+                    capacity.release(batch.size());
+                    for (Operation operation : batch) {
+                        walUsers.add(operation.userId());
+                    }
+                    writeWithRetries(batch);
+                    batch.clear();
+                }
+                if (System.nanoTime() - nextCompaction >= 0) {
+                    try {
+                        compact(walGeneration + 1);
+                    } catch (IOException ex) {
+                        log.error("Error compactando los favoritos, se reintenta en la proxima compactacion: {}",
+                                ex.toString());
+                    }
+                    nextCompaction = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(compactIntervalMs);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            log.warn("Hilo escritor del WAL de favoritos interrumpido");
+        } catch (IOException ex) {
+            failure = ex;
+            log.error("No se pudieron escribir {} operaciones en el WAL de favoritos, se rechazan nuevos cambios: {}",
+                    batch.size(), ex.toString());
+        }
+    }
+
+    /**
+     * Escribe un lote en el WAL. Si falla, descarta lo que se haya llegado a
+     * escribir del lote y lo vuelve a intentar hasta
+     * <code>spacex.favorites.persistence.write-retries</code> veces.
+     *
+     * @param batch las operaciones a escribir
+     * @throws IOException          si el lote no se pudo escribir en ningun intento
+     * @throws InterruptedException si se interrumpe la espera entre intentos
+     */
+    private void writeWithRetries(List<Operation> batch) throws IOException, InterruptedException {
+        long start = wal.size();
+        for (int attempt = 0;; attempt++) {
+            try {
+                if (attempt > 0) {
+                    wal.truncate(start);
+                }
+                writeBatch(batch);
+                return;
+            } catch (IOException ex) {
+                if (attempt >= writeRetries) {
+                    throw ex;
+                }
+                long delay = WRITE_RETRY_BACKOFF_MS << attempt;
+                log.warn("Error escribiendo el WAL de favoritos (intento {}), se reintenta en {} ms: {}",
+                        attempt + 1, delay, ex.toString());
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    private void writeBatch(List<Operation> batch) throws IOException {
+        long started = System.nanoTime();
+        ByteBuffer buffer = encode(batch);
+        while (buffer.hasRemaining()) {
+            wal.write(buffer);
+        }
+        wal.force(false);
+        flushTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        batchSummary.record(batch.size());
+    }
+
+    /**
+     * Codifica un lote de operaciones con el formato del WAL:
+     * <code>crc32 (int), tipo (byte), numero de vuelo (int), largo del usuario
+     * (short sin signo), usuario (UTF-8)</code>. El crc cubre todo el registro
+     * salvo el propio crc.
+     *
+     * @param batch las operaciones a codificar
+     * @return el buffer listo para escribirse
+     */
+    private static ByteBuffer encode(List<Operation> batch) {
+        List<byte[]> users = new ArrayList<>(batch.size());
+        int size = 0;
+        for (Operation operation : batch) {
+            byte[] user = operation.userId().getBytes(StandardCharsets.UTF_8);
+            users.add(user);
+            size += WAL_RECORD_HEADER + user.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < batch.size(); i++) {
+            Operation operation = batch.get(i);
+            byte[] user = users.get(i);
+            int start = buffer.position();
+            buffer.putInt(0)
+                    .put(operation.type())
+                    .putInt(operation.flightNumber())
+                    .putShort((short) user.length)
+                    .put(user);
+            crc.reset();
+            crc.update(buffer.array(), start + Integer.BYTES, buffer.position() - start - Integer.BYTES);
+            buffer.putInt(start, (int) crc.getValue());
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Carga el snapshot, si existe, y reproduce los WAL que no cubre.
+     *
+     * @return la generacion del proximo WAL a crear
+     * @throws IOException si falla la lectura de los archivos
+     */
+    private long recover() throws IOException {
+        long firstGeneration = 0;
+        Path snapshotFile = dataDirectory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshotFile)) {
+            firstGeneration = loadSnapshot(snapshotFile);
+        }
+        long nextGeneration = firstGeneration;
+        for (long generation : walGenerations()) {
+            if (generation >= firstGeneration) {
+                replayWal(walPath(generation));
+                nextGeneration = generation + 1;
+            }
+        }
+        return nextGeneration;
+    }
+
+    /**
+     * Lee el snapshot mapeandolo en memoria y restaura los favoritos de cada
+     * usuario.
+     *
+     * @param snapshotFile el archivo del snapshot
+     * @return la primera generacion de WAL que falta reproducir
+     * @throws IOException si el archivo no se puede leer o esta corrupto
+     */
+    private long loadSnapshot(Path snapshotFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int contentLength = buffer.limit() - Integer.BYTES;
+            if (contentLength < 0) {
+                throw new IOException("Snapshot de favoritos truncado: " + snapshotFile);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().limit(contentLength));
+            if ((int) crc.getValue() != buffer.getInt(contentLength)) {
+                throw new IOException("Snapshot de favoritos corrupto: " + snapshotFile);
+            }
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_FORMAT) {
+                throw new IOException("Formato de snapshot de favoritos desconocido: " + snapshotFile);
+            }
+            long firstGeneration = buffer.getLong();
+            int users = buffer.getInt();
+            for (int i = 0; i < users; i++) {
+                byte[] user = new byte[Short.toUnsignedInt(buffer.getShort())];
+                buffer.get(user);
+                int[] flightNumbers = new int[buffer.getInt()];
+                buffer.asIntBuffer().get(flightNumbers);
+                buffer.position(buffer.position() + flightNumbers.length * Integer.BYTES);
+                favoritesStore.restore(new String(user, StandardCharsets.UTF_8), flightNumbers);
+            }
+            return firstGeneration;
+        }
+    }
+
+    /**
+     * Reproduce las operaciones de un WAL sobre el almacen de favoritos. Se
+     * detiene en el primer registro incompleto o con crc invalido, que
+     * corresponde a una escritura interrumpida.
+     *
+     * @param walFile el archivo del WAL
+     * @throws IOException si el archivo no se puede leer
+     */
+    private void replayWal(Path walFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(walFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32 crc = new CRC32();
+            int replayed = 0;
+            while (buffer.remaining() >= WAL_RECORD_HEADER) {
+                int start = buffer.position();
+                int expectedCrc = buffer.getInt();
+                byte type = buffer.get();
+                int flightNumber = buffer.getInt();
+                int userLength = Short.toUnsignedInt(buffer.getShort());
+                if (buffer.remaining() < userLength) {
+                    log.warn("Registro incompleto al final de {}, se descarta", walFile);
+                    break;
+                }
+                byte[] user = new byte[userLength];
+                buffer.get(user);
+                crc.reset();
+                crc.update(buffer.duplicate().position(start + Integer.BYTES).limit(buffer.position()));
+                if ((int) crc.getValue() != expectedCrc) {
+                    log.warn("Registro con crc invalido en {} (posicion {}), se descarta el resto", walFile, start);
+                    break;
+                }
+                String userId = new String(user, StandardCharsets.UTF_8);
+                if (type == OP_ADD) {
+                    favoritesStore.add(userId, flightNumber);
+                } else if (type == OP_REMOVE) {
+                    favoritesStore.remove(userId, flightNumber);
+                }
+                replayed++;
+            }
+            log.info("Reproducidas {} operaciones de {}", replayed, walFile);
+        }
+    }
+
+    /**
+     * Abre un WAL nuevo con la generacion indicada, escribe un snapshot con el
+     * estado actual del almacen y elimina los WAL anteriores, que quedan
+     * cubiertos por el snapshot. Las operaciones que llegan mientras tanto se
+     * escriben en el WAL nuevo; como altas y bajas son idempotentes, reproducirlas
+     * sobre un snapshot que ya las incluye no cambia el resultado.
+     * <p>
+     * Cada operacion se registra antes de que la lista nueva de su usuario sea
+     * visible, por lo que una operacion ya escrita en el WAL anterior puede no
+     * verse todavia en el almacen. Antes de leerlo se espera, con
+     * {@link FavoritesStore#settle(String)}, a que terminen las actualizaciones
+     * de los usuarios con operaciones en ese WAL.
+     *
+     * @param nextGeneration la generacion del WAL nuevo
+     * @throws IOException si falla la escritura de los archivos
+     */
+    private void compact(long nextGeneration) throws IOException {
+        FileChannel next = FileChannel.open(walPath(nextGeneration), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (wal != null) {
+            wal.close();
+        }
+        wal = next;
+        walGeneration = nextGeneration;
+
+        for (String user : walUsers) {
+            favoritesStore.settle(user);
+        }
+        walUsers.clear();
+        writeSnapshot(nextGeneration);
+        for (long generation : walGenerations()) {
+            if (generation < nextGeneration) {
+                Files.deleteIfExists(walPath(generation));
+            }
+        }
+    }
+
+    /**
+     * Escribe el snapshot en un archivo temporal y lo mueve atomicamente sobre el
+     * anterior. Formato: <code>magic, formato, primera generacion de WAL,
+     * cantidad de usuarios</code> y por cada usuario <code>largo, usuario
+     * (UTF-8), cantidad, numeros de vuelo</code>, seguido de un crc32 de todo lo
+     * anterior.
+     *
+     * @param firstGeneration la primera generacion de WAL que no cubre el snapshot
+     * @throws IOException si falla la escritura del archivo
+     */
+    private void writeSnapshot(long firstGeneration) throws IOException {
+        List<String> users = new ArrayList<>();
+        List<FavoritesList> lists = new ArrayList<>();
+        favoritesStore.forEach((user, favorites) -> {
+            users.add(user);
+            lists.add(favorites);
+        });
+
+        Path temporary = dataDirectory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), crc), 64 * 1024));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_FORMAT);
+            out.writeLong(firstGeneration);
+            out.writeInt(users.size());
+            for (int i = 0; i < users.size(); i++) {
+                byte[] user = users.get(i).getBytes(StandardCharsets.UTF_8);
+                FavoritesList favorites = lists.get(i);
+                out.writeShort(user.length);
+                out.write(user);
+                out.writeInt(favorites.size());
+                for (int j = 0; j < favorites.size(); j++) {
+                    out.writeInt(favorites.flightNumberAt(j));
+                }
+            }
+            out.flush();
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, dataDirectory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path walPath(long generation) {
+        return dataDirectory.resolve(WAL_PREFIX + generation + WAL_SUFFIX);
+    }
+
+    /**
+     * Retorna las generaciones de los WAL presentes en el directorio, ordenadas de
+     * menor a mayor.
+     *
+     * @return las generaciones de WAL existentes
+     * @throws IOException si falla la lectura del directorio
+     */
+    private List<Long> walGenerations() throws IOException {
+        try (Stream<Path> files = Files.list(dataDirectory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(WAL_PREFIX) && name.endsWith(WAL_SUFFIX))
+                    .map(name -> name.substring(WAL_PREFIX.length(), name.length() - WAL_SUFFIX.length()))
+                    .filter(generation -> !generation.isEmpty() && generation.chars().allMatch(Character::isDigit))
+                    .map(Long::parseLong)
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package gaston.fernandez.spacex.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import gaston.fernandez.spacex.collections.ChangeEventLog;
+import gaston.fernandez.spacex.collections.ChangeEventLog.ChangeEvent;
+import gaston.fernandez.spacex.collections.FlightNumberIndex;
+import gaston.fernandez.spacex.collections.LaunchSnapshot;
+import gaston.fernandez.spacex.collections.SnapshotDiff;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Difunde por Server-Sent Events los cambios de los lanzamientos cada vez que
+ * se publica un snapshot con diferencias.
+ * <p>
+ * Cada cambio se serializa una sola vez como frame SSE (evento
+ * <code>delta</code> con los lanzamientos agregados, modificados y eliminados) y
+ * los mismos bytes se encolan a todos los suscriptores. Los lanzamientos se
+ * copian del JSON ya serializado del snapshot. Los ultimos eventos quedan en un
+ * {@link ChangeEventLog} para reanudar con <code>Last-Event-ID</code>; si el
+ * cliente se perdio eventos que ya no estan, recibe un evento
+ * <code>reset</code> y debe volver a pedir <code>GET /lunches</code>. El id del
+ * ultimo evento es tambien la version de cada snapshot, que
+ * <code>GET /lunches</code> informa para suscribirse desde ese punto.
+ * <p>
+ * Cada suscriptor tiene una cola acotada. Con el stack servlet la vacia su
+ * propio hilo, que bloquea esperando eventos; con el stack reactivo se vacia a
+ * medida que el cliente pide mas datos, sin ocupar ningun hilo mientras espera.
+ * Si un suscriptor no consume a tiempo y su cola se llena, se lo desconecta en
+ * lugar de demorar a los demas; al reconectarse con <code>Last-Event-ID</code>
+ * recupera lo que se perdio desde el buffer.
+ */
+@Component
+@Slf4j
+public class LaunchChangeFeed {
+
+    private static final byte[] HEARTBEAT = ": keepalive\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] RESET = "event: reset\ndata: {}\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Marca que se encola para despertar a un suscriptor desconectado.
+     */
+    private static final byte[] DROPPED = new byte[0];
+
+    /**
+     * Cantidad de eventos que se conservan para reanudar.
+     */
+    @Value("${spacex.stream.buffer-size:256}")
+    private int bufferSize;
+
+    /**
+     * Cantidad maxima de eventos pendientes por suscriptor antes de
+     * desconectarlo.
+     */
+    @Value("${spacex.stream.subscriber-queue-size:64}")
+    private int subscriberQueueSize;
+
+    /**
+     * Cantidad maxima de suscriptores conectados a la vez.
+     */
+    @Value("${spacex.stream.max-subscribers:10000}")
+    private int maxSubscribers;
+
+    /**
+     * Cada cuantos milisegundos se envia un comentario a los suscriptores sin
+     * eventos, para mantener viva la conexion y detectar los clientes caidos.
+     */
+    @Value("${spacex.stream.heartbeat-ms:15000}")
+    private long heartbeatMs;
+
+    private final Set<Subscription> subscribers = ConcurrentHashMap.newKeySet();
+
+    private final Counter droppedSubscribers;
+
+    private ChangeEventLog eventLog;
+
+    /**
+     * Suscripcion de un cliente al stream de cambios.
+     */
+    public static final class Subscription {
+
+        private final LaunchChangeFeed feed;
+
+        private final List<ChangeEvent> backlog;
+
+        private final boolean reset;
+
+        private final BlockingQueue<byte[]> queue;
+
+        private volatile boolean dropped;
+
+        /**
+         * Se ejecuta cada vez que se encola un evento, para despertar al
+         * consumidor reactivo.
+         */
+        private volatile Runnable listener;
+
+        private Subscription(LaunchChangeFeed feed, List<ChangeEvent> backlog, boolean reset, int queueSize) {
+            this.feed = feed;
+            this.backlog = backlog;
+            this.reset = reset;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        /**
+         * Escribe los eventos en el stream de salida. Ver
+         * {@link LaunchChangeFeed#stream(Subscription, OutputStream)}.
+         *
+         * @param out el stream de salida de la respuesta
+         */
+        public void writeTo(OutputStream out) {
+            feed.stream(this, out);
+        }
+
+        /**
+         * Publica los eventos sin bloquear. Ver
+         * {@link LaunchChangeFeed#frames(Subscription)}.
+         *
+         * @return los frames SSE de la suscripcion
+         */
+        public Flux<byte[]> frames() {
+            return feed.frames(this);
+        }
+
+        private void signal() {
+            Runnable current = listener;
+            if (current != null) {
+                current.run();
+            }
+        }
+    }
+
+    /**
+     * Constructor de la clase LaunchChangeFeed.
+     *
+     * @param meterRegistry el registro de metricas donde se publican la cantidad
+     *                      de suscriptores y los desconectados por lentos
+     */
+    public LaunchChangeFeed(MeterRegistry meterRegistry) {
+        this.droppedSubscribers = Counter.builder("spacex.stream.dropped")
+                .description("Suscriptores del stream de cambios desconectados por no consumir a tiempo")
+                .register(meterRegistry);
+        Gauge.builder("spacex.stream.subscribers", subscribers, Set::size)
+                .description("Suscriptores conectados al stream de cambios")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Crea el buffer de eventos. Los ids empiezan en la hora actual en
+     * milisegundos, de modo que un <code>Last-Event-ID</code> de una ejecucion
+     * anterior nunca coincide con uno de esta y provoca un <code>reset</code>.
+     */
+    @PostConstruct
+    public void start() {
+        eventLog = new ChangeEventLog(bufferSize, System.currentTimeMillis());
+    }
+
+    /**
+     * Retorna el id del ultimo evento publicado. Antes del primer evento es un id
+     * valido para <code>Last-Event-ID</code> que no tiene eventos anteriores.
+     *
+     * @return el id del ultimo evento
+     */
+    public synchronized long lastEventId() {
+        return eventLog.nextId() - 1;
+    }
+
+    /**
+     * Publica los cambios de un snapshot como un nuevo evento y lo encola a todos
+     * los suscriptores. Los suscriptores con la cola llena se desconectan.
+     * <p>
+     * El id retornado es la version del snapshot: un cliente que obtuvo los
+     * lanzamientos de este snapshot y se suscribe con ese id como
+     * <code>Last-Event-ID</code> recibe solo los cambios posteriores.
+     *
+     * @param snapshot el snapshot a publicar, con su diferencia respecto del
+     *                 anterior
+     * @return el id del evento publicado, o el del ultimo evento si el snapshot
+     *         no tiene cambios
+     */
+    public synchronized long publish(LaunchSnapshot snapshot) {
+        SnapshotDiff diff = snapshot.diff();
+        if (diff.isEmpty()) {
+            return lastEventId();
+        }
+        ChangeEvent event = eventLog.append(frame(eventLog.nextId(), snapshot));
+        for (Subscription subscription : subscribers) {
+            if (subscription.queue.offer(event.frame())) {
+                subscription.signal();
+            } else {
+                drop(subscription);
+            }
+        }
+        return event.id();
+    }
+
+    /**
+     * Registra un nuevo suscriptor. Si indica el ultimo evento que recibio, se le
+     * preparan los eventos posteriores que sigan en el buffer, o un
+     * <code>reset</code> si ya no estan.
+     *
+     * @param lastEventId el valor del header <code>Last-Event-ID</code>, puede
+     *                    ser <code>null</code>
+     * @return la suscripcion, o <code>null</code> si se alcanzo la cantidad
+     *         maxima de suscriptores
+     */
+    public synchronized Subscription subscribe(String lastEventId) {
+        if (subscribers.size() >= maxSubscribers) {
+            return null;
+        }
+        List<ChangeEvent> backlog = List.of();
+        boolean reset = false;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            try {
+                backlog = eventLog.since(Long.parseLong(lastEventId.trim()));
+            } catch (NumberFormatException ex) {
+                backlog = null;
+            }
+            if (backlog == null) {
+                backlog = List.of();
+                reset = true;
+            }
+        }
+        Subscription subscription = new Subscription(this, backlog, reset, Math.max(1, subscriberQueueSize));
+        subscribers.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Escribe los eventos de la suscripcion en el stream de salida hasta que el
+     * cliente se desconecta o se lo descarta por lento. Bloquea el hilo que lo
+     * llama mientras espera eventos. Que el cliente se desconecte es el final
+     * normal del stream, por lo que los errores de escritura no se propagan.
+     *
+     * @param subscription la suscripcion
+     * @param out          el stream de salida de la respuesta
+     */
+    public void stream(Subscription subscription, OutputStream out) {
+        try {
+            out.write(HEARTBEAT);
+            if (subscription.reset) {
+                out.write(RESET);
+            }
+            for (ChangeEvent event : subscription.backlog) {
+                out.write(event.frame());
+            }
+            out.flush();
+            while (!subscription.dropped) {
+                byte[] frame = subscription.queue.poll(heartbeatMs, TimeUnit.MILLISECONDS);
+                while (frame != null && frame != DROPPED) {
+                    out.write(frame);
+                    frame = subscription.queue.poll();
+                }
+                if (frame == null && !subscription.dropped) {
+                    out.write(HEARTBEAT);
+                }
+                out.flush();
+            }
+        } catch (IOException ex) {
+            log.debug("Suscriptor del stream de cambios desconectado: {}", ex.toString());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            subscribers.remove(subscription);
+        }
+    }
+
+    /**
+     * Publica los eventos de la suscripcion como un Flux de frames SSE, para el
+     * stack reactivo. Primero se emiten el comentario inicial, el
+     * <code>reset</code> si corresponde y los eventos pendientes; despues cada
+     * evento nuevo a medida que el cliente pide mas, y un comentario cada
+     * <code>spacex.stream.heartbeat-ms</code> si no hay eventos. Ningun hilo queda
+     * bloqueado esperando: el que publica un evento despierta al suscriptor. El
+     * Flux termina si se descarta al suscriptor por lento, y al cancelarlo se da
+     * de baja la suscripcion.
+     *
+     * @param subscription la suscripcion
+     * @return los frames SSE
+     */
+    public Flux<byte[]> frames(Subscription subscription) {
+        List<byte[]> initial = new ArrayList<>(subscription.backlog.size() + 2);
+        initial.add(HEARTBEAT);
+        if (subscription.reset) {
+            initial.add(RESET);
+        }
+        for (ChangeEvent event : subscription.backlog) {
+            initial.add(event.frame());
+        }
+        Flux<byte[]> events = Flux.create(sink -> {
+            AtomicInteger pending = new AtomicInteger();
+            AtomicBoolean heartbeatDue = new AtomicBoolean();
+            // Solo un hilo a la vez vacia la cola, para no reordenar los eventos; si
+            // otro lo pide mientras tanto, el que esta vaciando da una vuelta mas.
+            Runnable drain = () -> {
+                if (pending.getAndIncrement() != 0) {
+                    return;
+                }
+                int missed = 1;
+                do {
+                    while (!sink.isCancelled() && sink.requestedFromDownstream() > 0) {
+                        byte[] frame = subscription.queue.poll();
+                        if (frame == DROPPED) {
+                            sink.complete();
+                            return;
+                        }
+                        if (frame == null) {
+                            if (!heartbeatDue.getAndSet(false)) {
+                                break;
+                            }
+                            frame = HEARTBEAT;
+                        }
+                        sink.next(frame);
+                    }
+                    missed = pending.addAndGet(-missed);
+                } while (missed != 0);
+            };
+            Disposable heartbeat = Schedulers.parallel().schedulePeriodically(() -> {
+                heartbeatDue.set(true);
+                drain.run();
+            }, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+            subscription.listener = drain;
+            sink.onRequest(requested -> drain.run());
+            sink.onDispose(() -> {
+                heartbeat.dispose();
+                subscription.listener = null;
+                subscribers.remove(subscription);
+            });
+        });
+        return Flux.concat(Flux.fromIterable(initial), events);
+    }
+
+    private void drop(Subscription subscription) {
+        subscription.dropped = true;
+        subscribers.remove(subscription);
+        subscription.queue.clear();
+        subscription.queue.offer(DROPPED);
+        subscription.signal();
+        droppedSubscribers.increment();
+        log.debug("Suscriptor del stream de cambios desconectado por no consumir a tiempo");
+    }
+
+    /**
+     * Serializa el evento <code>delta</code> de un snapshot. Los lanzamientos
+     * agregados y modificados se copian del JSON del snapshot; de los eliminados
+     * solo se envia el numero de vuelo.
+     */
+    private static byte[] frame(long id, LaunchSnapshot snapshot) {
+        SnapshotDiff diff = snapshot.diff();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try {
+            out.write(("id: " + id + "\nevent: delta\ndata: {\"added\":[").getBytes(StandardCharsets.UTF_8));
+            writeLaunches(out, diff.added(), snapshot);
+            out.write("],\"changed\":[".getBytes(StandardCharsets.UTF_8));
+            writeLaunches(out, diff.changed(), snapshot);
+            out.write("],\"removed\":[".getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < diff.removed().length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write(Integer.toString(diff.removed()[i]).getBytes(StandardCharsets.UTF_8));
+            }
+            out.write("]}\n\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeLaunches(OutputStream out, int[] flightNumbers, LaunchSnapshot snapshot)
+            throws IOException {
+        boolean first = true;
+        for (int flightNumber : flightNumbers) {
+            int row = snapshot.flightIndex().get(flightNumber);
+            if (row == FlightNumberIndex.NOT_FOUND) {
+                continue;
+            }
+            if (!first) {
+                out.write(',');
+            }
+            snapshot.writeRow(row, out);
+            first = false;
+        }
+    }
+}
@@ -1,24 +1,85 @@
 package gaston.fernandez.spacex.services;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.ArrayList;
+import java.util.Objects;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
 
+import gaston.fernandez.spacex.collections.CachedResponse;
 import gaston.fernandez.spacex.collections.FavoritesList;
+import gaston.fernandez.spacex.collections.FavoritesStore;
+import gaston.fernandez.spacex.collections.LaunchPage;
+import gaston.fernandez.spacex.collections.LaunchQuery;
+import gaston.fernandez.spacex.collections.LaunchSnapshot;
+import gaston.fernandez.spacex.collections.LaunchTable;
+import gaston.fernandez.spacex.collections.LaunchStream;
+import gaston.fernandez.spacex.collections.OffHeapLaunchList;
+import gaston.fernandez.spacex.collections.RocketDictionary;
+import gaston.fernandez.spacex.collections.SearchIndex;
+import gaston.fernandez.spacex.collections.SerializedPayload;
+import gaston.fernandez.spacex.collections.WireFormat;
+import gaston.fernandez.spacex.dtos.FavoriteOperation;
+import gaston.fernandez.spacex.dtos.FavoritesBatchResult;
 import gaston.fernandez.spacex.dtos.Rocket;
+import gaston.fernandez.spacex.dtos.RocketReferenceDeserializer;
 import gaston.fernandez.spacex.dtos.SpexLunches;
 import gaston.fernandez.spacex.exceptions.NoContentException;
 import gaston.fernandez.spacex.exceptions.SSLConfigurationException;
+import gaston.fernandez.spacex.exceptions.UpstreamUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -35,177 +96,1199 @@ public class SpexService {
     @Value("${ROCKETS_URL}")
     private String rocketsUrl;
 
-    private FavoritesList favoritesList = new FavoritesList();
+    /**
+     * Tiempo limite en milisegundos para descargar lanzamientos y cohetes en
+     * conjunto.
+     */
+    @Value("${spacex.upstream.timeout-ms:30000}")
+    private long upstreamTimeoutMs;
+
+    /**
+     * Tiempo maximo en milisegundos que espera un request cuando todavia no hay
+     * snapshot. Los requests hacen un solo intento con este tiempo limite; los
+     * reintentos quedan para el refresco en segundo plano.
+     */
+    @Value("${spacex.upstream.foreground-timeout-ms:10000}")
+    private long upstreamForegroundTimeoutMs;
+
+    /**
+     * Ejecutor de hilos virtuales para las descargas concurrentes a la API de
+     * SpaceX. Al ser hilos virtuales, cancelar una tarea interrumpe tambien la
+     * lectura bloqueante del socket.
+     */
+    private final ExecutorService upstreamExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Cantidad maxima de peticiones simultaneas a la API de SpaceX.
+     */
+    @Value("${spacex.upstream.max-concurrent-requests:4}")
+    private int upstreamMaxConcurrentRequests;
+
+    /**
+     * Tiempo limite en milisegundos para esperar un turno de acceso a la API de
+     * SpaceX.
+     */
+    @Value("${spacex.upstream.permit-timeout-ms:2000}")
+    private long upstreamPermitTimeoutMs;
+
+    /**
+     * Limita las peticiones simultaneas a la API de SpaceX. Con hilos virtuales
+     * no hay un pool que acote cuantos requests esperan al upstream, por lo que
+     * el limite se aplica aca: si la API se pone lenta, las peticiones de mas
+     * fallan rapido en lugar de acumularse.
+     */
+    private Semaphore upstreamPermits;
+
+    /**
+     * Cantidad de reintentos de un refresco fallido antes de darlo por perdido.
+     */
+    @Value("${spacex.upstream.retries:2}")
+    private int upstreamRetries;
+
+    /**
+     * Espera base en milisegundos entre reintentos; se duplica en cada reintento
+     * y se le aplica una variacion aleatoria.
+     */
+    @Value("${spacex.upstream.retry-backoff-ms:200}")
+    private long upstreamRetryBackoffMs;
+
+    /**
+     * Tiempo en milisegundos tras el cual, si una descarga no termino, se lanza
+     * una segunda en paralelo y se usa la que termine primero. Con 0 no se
+     * lanzan descargas duplicadas.
+     */
+    @Value("${spacex.upstream.hedge-delay-ms:0}")
+    private long upstreamHedgeDelayMs;
+
+    private final UpstreamCircuitBreaker circuitBreaker;
+
+    private final LaunchChangeFeed changeFeed;
+
+    private final FavoritesStore favoritesStore;
+
+    private final FavoritesPersistence favoritesPersistence;
+
+    /**
+     * Ultima foto valida de los lanzamientos. Es <code>null</code> hasta que se
+     * completa el primer refresco.
+     */
+    private volatile LaunchSnapshot snapshot;
+
+    /**
+     * Refresco del snapshot en curso, o <code>null</code> si no hay ninguno. Los
+     * que necesitan un snapshot mientras hay un refresco en curso esperan su
+     * resultado en lugar de volver a descargar los datos.
+     */
+    private final AtomicReference<CompletableFuture<LaunchSnapshot>> inflightRefresh = new AtomicReference<>();
+
+    /**
+     * Respuesta parseada del endpoint de lanzamientos, con sus validadores, usada
+     * para armar el ultimo snapshot. Con el snapshot fuera del heap solo se
+     * guardan los validadores: la lista descargada no se conserva y los cambios
+     * se detectan comparando contra los registros nativos del snapshot.
+     */
+    private volatile CachedResponse<List<SpexLunches>> cachedLaunches;
 
-    private List<SpexLunches> lunches = new ArrayList<>();
+    /**
+     * Respuesta parseada del endpoint de cohetes, con sus validadores, usada para
+     * armar el ultimo snapshot.
+     */
+    private volatile CachedResponse<Map<String, Rocket>> cachedRockets;
 
     private final RestTemplate restTemplate;
 
+    /**
+     * Lector precalentado para deserializar lanzamientos.
+     */
+    private final ObjectReader launchReader;
+
+    /**
+     * Lector precalentado para deserializar cohetes.
+     */
+    private final ObjectReader rocketReader;
+
+    /**
+     * Escritor precalentado para serializar listas de lanzamientos.
+     */
+    private final ObjectWriter listWriter;
+
+    /**
+     * Escritor precalentado para serializar un lanzamiento suelto, usado al armar
+     * el snapshot solo con los lanzamientos que cambiaron.
+     */
+    private final ObjectWriter launchWriter;
+
+    /**
+     * Escritor precalentado para los cohetes de las respuestas con proyeccion.
+     */
+    private final ObjectWriter rocketWriter;
+
+    /**
+     * Escritor precalentado para los resultados de los lotes de favoritos.
+     */
+    private final ObjectWriter batchWriter;
+
+    private final JsonFactory jsonFactory;
+
+    /**
+     * Fabrica de Smile. Los textos cortos repetidos, como los nombres de cohete y
+     * de empresa, se escriben una vez y luego se referencian.
+     */
+    private final SmileFactory smileFactory = SmileFactory.builder()
+            .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+            .build();
+
+    private final CBORFactory cborFactory = new CBORFactory();
+
+    /**
+     * Lista de lanzamientos del snapshot ya codificada en cada formato binario.
+     * Cada entrada es valida mientras el snapshot siga teniendo el mismo cuerpo
+     * JSON.
+     */
+    private final Map<WireFormat, EncodedPayload> encodedPayloads = new ConcurrentHashMap<>();
+
+    /**
+     * Cuerpo codificado en un formato binario y el cuerpo JSON del que se obtuvo.
+     *
+     * @param source  el cuerpo JSON
+     * @param payload el cuerpo codificado
+     */
+    private record EncodedPayload(SerializedPayload source, SerializedPayload payload) {
+    }
+
+    /**
+     * Valor de <code>spacex.snapshot.storage</code> que guarda los lanzamientos
+     * del snapshot fuera del heap.
+     */
+    private static final String OFF_HEAP = "off-heap";
+
+    @Value("${spacex.snapshot.storage:heap}")
+    private String snapshotStorage;
+
+    @Value("${spacex.lunches.parallel-scan-threshold:4096}")
+    private int parallelScanThreshold;
+
+    @Value("${spacex.search.max-results:100}")
+    private int searchMaxResults;
+
+    /**
+     * Cantidad de lanzamientos de cada bloque al responder en NDJSON; el buffer
+     * de salida se vacia despues de cada bloque.
+     */
+    @Value("${spacex.lunches.stream-flush-rows:256}")
+    private int streamFlushRows;
+
+    /**
+     * Campos de un lanzamiento que se pueden pedir en una proyeccion, en el orden
+     * en que se escriben.
+     */
+    private static final String[] PROJECTABLE_FIELDS = { "flight_number", "mission_name", "details", "rocket" };
+
+    private static final int ALL_FIELDS = (1 << PROJECTABLE_FIELDS.length) - 1;
+
+    /**
+     * Favoritos ya serializados por usuario. Cada entrada es valida mientras no
+     * cambien la version de la lista de favoritos ni el snapshot de lanzamientos.
+     * Guarda como mucho <code>spacex.favorites.response-cache-size</code>
+     * usuarios; al superarlos descarta el usado hace mas tiempo.
+     */
+    private Map<String, FavoritesPayload> favoritesPayloads;
+
+    @Value("${spacex.favorites.response-cache-size:10000}")
+    private int favoritesPayloadsMax;
+
+    /**
+     * Cantidad maxima de operaciones de un lote de favoritos.
+     */
+    @Value("${spacex.favorites.batch-max-operations:1000}")
+    private int favoritesBatchMax;
+
+    /**
+     * Favoritos serializados de un usuario y los datos con los que se armaron.
+     *
+     * @param version  la version de la lista de favoritos
+     * @param snapshot el snapshot contra el que se resolvieron los favoritos
+     * @param payload  los favoritos serializados
+     */
+    private record FavoritesPayload(long version, LaunchSnapshot snapshot, SerializedPayload payload) {
+    }
+
+    private final Counter refreshSuccess;
+
+    private final Counter refreshFailure;
+
+    private final Counter unknownRockets;
+
+    private final MeterRegistry meterRegistry;
+
     /**
      * Constructor de la clase SpexService.
      * 
-     * @param restTemplate el objeto RestTemplate que se va a injectar para
-     * utilizarlo al hacer las peticiones HTTP
+     * @param restTemplate  el objeto RestTemplate que se va a injectar para
+     *                      utilizarlo al hacer las peticiones HTTP
+     * @param objectMapper         el ObjectMapper compartido de la aplicacion, el
+     *                             mismo que usa Spring para escribir las
+     *                             respuestas
+     * @param favoritesStore       el almacen de favoritos por usuario
+     * @param favoritesPersistence el componente que persiste en disco los cambios
+     *                             de favoritos
+     * @param circuitBreaker       el circuit breaker de las descargas a la API de
+     *                             SpaceX
+     * @param changeFeed           el stream donde se publican los cambios de
+     *                             cada snapshot
+     * @param meterRegistry        el registro de metricas donde se publican la
+     *                             antiguedad y el resultado de los refrescos
      */
 
-    public SpexService(RestTemplate restTemplate) {
+    public SpexService(RestTemplate restTemplate, ObjectMapper objectMapper, FavoritesStore favoritesStore,
+            FavoritesPersistence favoritesPersistence, UpstreamCircuitBreaker circuitBreaker,
+            LaunchChangeFeed changeFeed, MeterRegistry meterRegistry) {
         this.restTemplate = restTemplate;
+        this.favoritesStore = favoritesStore;
+        this.favoritesPersistence = favoritesPersistence;
+        this.circuitBreaker = circuitBreaker;
+        this.changeFeed = changeFeed;
+        // Crear los lectores y el escritor resuelve y cachea los deserializadores y
+        // serializadores de los DTOs una sola vez, en lugar de hacerlo en cada request.
+        this.launchReader = objectMapper.readerFor(SpexLunches.class);
+        this.rocketReader = objectMapper.readerFor(Rocket.class);
+        this.listWriter = objectMapper.writerFor(new TypeReference<List<SpexLunches>>() {
+        });
+        this.launchWriter = objectMapper.writerFor(SpexLunches.class);
+        this.rocketWriter = objectMapper.writerFor(Rocket.class);
+        this.batchWriter = objectMapper.writerFor(FavoritesBatchResult.class);
+        this.jsonFactory = objectMapper.getFactory();
+        this.refreshSuccess = Counter.builder("spacex.snapshot.refresh")
+                .description("Refrescos del snapshot de lanzamientos")
+                .tag("outcome", "success")
+                .register(meterRegistry);
+        this.refreshFailure = Counter.builder("spacex.snapshot.refresh")
+                .description("Refrescos del snapshot de lanzamientos")
+                .tag("outcome", "failure")
+                .register(meterRegistry);
+        this.unknownRockets = Counter.builder("spacex.snapshot.unknown-rockets")
+                .description("Lanzamientos cuyo cohete no esta en la lista de cohetes")
+                .register(meterRegistry);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Crea el limitador de peticiones a la API de SpaceX con la cantidad
+     * configurada de permisos. Se reservan al menos dos, para que lanzamientos y
+     * cohetes se descarguen en paralelo. Tambien crea la cache de favoritos
+     * serializados, en orden de acceso, y publica la antiguedad del snapshot, que
+     * lee el servicio ya construido.
+     */
+    @PostConstruct
+    public void start() {
+        upstreamPermits = new Semaphore(Math.max(2, upstreamMaxConcurrentRequests), true);
+        favoritesPayloads = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FavoritesPayload> eldest) {
+                return size() > favoritesPayloadsMax;
+            }
+        });
+        Gauge.builder("spacex.snapshot.age", this, SpexService::getSnapshotAgeSeconds)
+                .description("Antiguedad del snapshot de lanzamientos")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Cancela las descargas en curso al detener la aplicacion.
+     */
+    @PreDestroy
+    public void shutdown() {
+        upstreamExecutor.shutdownNow();
     }
 
     /**
-     * Retorna el contenido del endpoint de lanzamientos de SpaceX. Si falla en
-     * configurar SSL, lanza una SSLConfigurationException. Si falla al obtener el
-     * contenido, lanza una IOException. Si falla por cualquier otro motivo, lanza
-     * una Exception.
+     * Descarga el arreglo JSON de la url indicada y lo deserializa elemento a
+     * elemento directamente desde el InputStream de la respuesta, sin armar un
+     * String intermedio ni un arbol JSON. Los atributos que no estan mapeados en
+     * la clase destino se saltean con el parser. Cada elemento leido se entrega al
+     * consumidor <code>sink</code>.
+     * <p>
+     * Si <code>previous</code> tiene validadores, la peticion se envia con
+     * <code>If-None-Match</code> e <code>If-Modified-Since</code>; si el servidor
+     * responde 304 no se lee el cuerpo y se retorna <code>null</code>. El envio
+     * de la peticion y la lectura del cuerpo ocupan uno de los permisos de
+     * <code>upstreamPermits</code>, pero la espera de <code>reader</code> no; si
+     * no se obtiene un permiso a tiempo, falla. Si falla en
+     * configurar SSL, lanza una SSLConfigurationException. Si la respuesta viene
+     * vacia, lanza una NoContentException. Si falla por cualquier otro motivo,
+     * lanza una Exception.
      * 
-     * @return el contenido del endpoint de lanzamientos de SpaceX
-     * @throws NoContentException        si falla al obtener el contenido
+     * @param <T>      el tipo de cada elemento del arreglo
+     * @param url      la url del endpoint de SpaceX
+     * @param previous la respuesta obtenida en la descarga anterior, o
+     *                 <code>null</code> si no hubo ninguna
+     * @param reader   retorna el ObjectReader configurado para el tipo de cada
+     *                 elemento; se invoca recien cuando hay un cuerpo para leer
+     * @param sink     el consumidor que recibe cada elemento deserializado
+     * @param source   el nombre del recurso, usado en los mensajes de error
+     * @return los headers de la respuesta, o <code>null</code> si el contenido no
+     *         cambio desde <code>previous</code>
+     * @throws NoContentException        si la respuesta viene vacia
      * @throws SSLConfigurationException si falla en configurar SSL
      * @throws Exception                 si falla por cualquier otro motivo
      */
-    private String getLaunches() throws NoContentException, SSLConfigurationException, Exception {
-
+    private <T> HttpHeaders readArray(String url, CachedResponse<?> previous, Callable<ObjectReader> reader,
+            Consumer<? super T> sink, String source)
+            throws NoContentException, SSLConfigurationException, Exception {
         try {
-            String url = UriComponentsBuilder.fromUriString(launchesUrl).toUriString();
-            String response = restTemplate.getForObject(url, String.class);
-            if (response != null) {
-                return response;
-            } else {
-                throw new NoContentException("Response body is null");
+            String uri = UriComponentsBuilder.fromUriString(url).toUriString();
+            RequestCallback conditional = request -> {
+                if (previous == null) {
+                    return;
+                }
+                if (previous.etag() != null) {
+                    request.getHeaders().setIfNoneMatch(previous.etag());
+                }
+                if (previous.lastModified() != null) {
+                    request.getHeaders().set(HttpHeaders.IF_MODIFIED_SINCE, previous.lastModified());
+                }
+            };
+            acquireUpstreamPermit();
+            boolean[] holdsPermit = { true };
+            try {
+                return restTemplate.execute(uri, HttpMethod.GET, conditional, response -> {
+                    if (previous != null && response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+                        return null;
+                    }
+                    // Preparar el lector puede esperar a otra descarga (los lanzamientos esperan a
+                    // los cohetes): el permiso se devuelve mientras tanto y se pide de nuevo para
+                    // leer el cuerpo.
+                    upstreamPermits.release();
+                    holdsPermit[0] = false;
+                    ObjectReader elementReader;
+                    try {
+                        elementReader = reader.call();
+                    } catch (IOException | RuntimeException ex) {
+                        throw ex;
+                    } catch (Exception ex) {
+                        throw new IOException("No se pudo preparar la lectura de " + uri, ex);
+                    }
+                    acquireUpstreamPermit();
+                    holdsPermit[0] = true;
+                    try (JsonParser parser = elementReader.createParser(response.getBody())) {
+                        if (parser.nextToken() == null) {
+                            throw new NoContentException("Response body is null");
+                        }
+                        if (!parser.isExpectedStartArrayToken()) {
+                            throw new IOException("Se esperaba un arreglo JSON en " + uri);
+                        }
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            T value = elementReader.readValue(parser);
+                            sink.accept(value);
+                        }
+                    }
+                    return response.getHeaders();
+                });
+            } finally {
+                if (holdsPermit[0]) {
+                    upstreamPermits.release();
+                }
             }
         } catch (SSLConfigurationException sslEx) {
-            log.error("SSL Configuration Error: {}", sslEx.toString());
-            sslEx.printStackTrace();
+            log.error("SSL Configuration Error", sslEx);
             throw sslEx;
         } catch (NoContentException ioEx) {
             log.error("NoContentException Error: {}", ioEx.toString());
-            ioEx.printStackTrace();
             throw ioEx;
         } catch (Exception ex) {
-            log.error("Error fetching data from Lunches: {}", ex.toString());
-            ex.printStackTrace();
-            throw new Exception("Error fetching data from Lunches: " + ex.toString(), ex);
+            log.error("Error fetching data from {}", source, ex);
+            throw new Exception("Error fetching data from " + source + ": " + ex.toString(), ex);
         }
     }
 
     /**
-     * Retorna el contenido del endpoint de cohetes de SpaceX. Si falla en
-     * configurar SSL, lanza una SSLConfigurationException. Si falla al obtener el
-     * contenido, lanza una IOException. Si falla por cualquier otro motivo, lanza
-     * una Exception.
+     * Toma uno de los permisos de <code>upstreamPermits</code>, esperando como
+     * mucho <code>spacex.upstream.permit-timeout-ms</code>.
      * 
-     * @return el contenido del endpoint de cohetes de SpaceX
-     * @throws NoContentException        si falla al obtener el contenido
-     * @throws SSLConfigurationException si falla en configurar SSL
-     * @throws Exception                 si falla por cualquier otro motivo
+     * @throws IOException si no se obtiene el permiso a tiempo o se interrumpe la
+     *                     espera
      */
-    private String getRockets() throws NoContentException, SSLConfigurationException, Exception {
-        String url = UriComponentsBuilder.fromUriString(rocketsUrl).toUriString();
+    private void acquireUpstreamPermit() throws IOException {
         try {
-            String response = restTemplate.getForObject(url, String.class);
-            if (response != null) {
-                return response;
-            } else {
-                throw new NoContentException("Response body is null");
+            if (!upstreamPermits.tryAcquire(upstreamPermitTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Demasiadas peticiones simultaneas a la API de SpaceX");
             }
-        } catch (SSLConfigurationException sslEx) {
-            log.error("SSL Configuration Error: {}", sslEx.toString());
-            sslEx.printStackTrace();
-            throw sslEx;
-        } catch (NoContentException ioEx) {
-            log.error("NoContentException Error: {}", ioEx.toString());
-            ioEx.printStackTrace();
-            throw ioEx;
-        } catch (Exception ex) {
-            log.error("Error fetching data from Lunches: {}", ex.toString());
-            ex.printStackTrace();
-            throw new Exception("Error fetching data from Lunches: " + ex.toString(), ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Se interrumpio la espera de un permiso para la API de SpaceX");
         }
     }
 
     /**
      * Retorna un mapa de objetos Rocket que contienen la informacion de los cohetes
-     * de SpaceX. El mapa se indexa por el campo rocket_id de cada cohete. Si falla
-     * en configurar SSL, lanza una SSLConfigurationException. Si falla al obtener
-     * el contenido, lanza una IOException. Si falla por cualquier otro motivo,
-     * lanza una Exception.
+     * de SpaceX junto con sus validadores HTTP. El mapa se indexa por el campo
+     * rocket_id de cada cohete y se completa a medida que se leen los cohetes de la
+     * respuesta. Los cohetes iguales a los de la respuesta anterior se reemplazan
+     * por la instancia anterior, para que los lanzamientos sin cambios sigan
+     * apuntando al mismo objeto. Si el servidor responde 304 se retorna la
+     * respuesta anterior sin cambios. Si falla en configurar SSL, lanza una SSLConfigurationException. Si
+     * falla al obtener el contenido, lanza una NoContentException. Si falla por
+     * cualquier otro motivo, lanza una Exception.
      * 
-     * @param objectMapper el objeto ObjectMapper que se utiliza para deserializar
-     *                     el contenido del endpoint de rockets de SpaceX
+     * @param previous la respuesta usada en el ultimo snapshot, o
+     *                 <code>null</code> si no hubo ninguna
      * @return un mapa de objetos Rocket que contienen la informacion de los cohetes
      *         de SpaceX
-     * @throws IOException               si falla al obtener el contenido
+     * @throws NoContentException        si falla al obtener el contenido
      * @throws SSLConfigurationException si falla en configurar SSL
      * @throws Exception                 si falla por cualquier otro motivo
      */
-    private Map<String, Rocket> getRockets(ObjectMapper objectMapper)
-            throws SSLConfigurationException, IOException, Exception {
-        List<Rocket> rockets = objectMapper.readValue(getRockets(), new TypeReference<List<Rocket>>() {
-        });
+    private CachedResponse<Map<String, Rocket>> getRockets(CachedResponse<Map<String, Rocket>> previous)
+            throws SSLConfigurationException, NoContentException, Exception {
         Map<String, Rocket> rocketMap = new HashMap<>();
-        for (Rocket rocket : rockets) {
-            rocketMap.put(rocket.getRocketId(), rocket);
+        Map<String, Rocket> known = previous == null ? Map.of() : previous.value();
+        HttpHeaders headers = this.<Rocket>readArray(rocketsUrl, previous, () -> rocketReader, rocket -> {
+            Rocket old = rocket.rocketId() == null ? null : known.get(rocket.rocketId());
+            rocketMap.put(rocket.rocketId(), rocket.equals(old) ? old : rocket);
+        }, "Rockets");
+        if (headers == null) {
+            return previous;
         }
-        return rocketMap;
+        return new CachedResponse<>(headers.getETag(), headers.getFirst(HttpHeaders.LAST_MODIFIED), rocketMap);
     }
 
     /**
      * Retorna una lista de objetos SpexLunches que contienen la informacion de los
-     * lanzamientos de SpaceX. Si falla en configurar SSL, lanza una
-     * SSLConfigurationException. Si falla al obtener el contenido, lanza una
-     * IOException. Si falla por cualquier otro motivo, lanza una Exception.
+     * lanzamientos de SpaceX, deserializados de a uno desde la respuesta, junto con
+     * sus validadores HTTP. Si el servidor responde 304 se retorna la respuesta
+     * anterior sin cambios.
+     * <p>
+     * La peticion se envia enseguida, pero el cuerpo se empieza a leer recien
+     * cuando terminan de descargarse los cohetes: el cohete de cada lanzamiento se
+     * resuelve durante el parseo contra el diccionario de cohetes compartidos, sin
+     * crear un Rocket intermedio por lanzamiento. Si falla en configurar SSL, lanza
+     * una SSLConfigurationException. Si falla al obtener el contenido, lanza una
+     * NoContentException. Si falla por cualquier otro motivo, lanza una Exception.
      * 
-     * @param objectMapper el objeto ObjectMapper para parsear el JSON
+     * <p>
+     * Si la respuesta anterior no conserva la lista (snapshot fuera del heap) y
+     * el endpoint responde 304, los lanzamientos solo se vuelven a descargar, sin
+     * validadores, cuando hay que volver a asociarlos: si cambiaron los cohetes o
+     * todavia no hay snapshot.
+     * 
+     * @param previous        la respuesta usada en el ultimo snapshot, o
+     *                        <code>null</code> si no hubo ninguna
+     * @param rockets         la descarga de cohetes en curso
+     * @param previousRockets la respuesta de cohetes usada en el ultimo snapshot
+     * @param current         el snapshot actual, o <code>null</code>
      * @return una lista de objetos SpexLunches
-     * @throws IOException               si falla al obtener el contenido
+     * @throws NoContentException        si falla al obtener el contenido
      * @throws SSLConfigurationException si falla en configurar SSL
      * @throws Exception                 si falla por cualquier otro motivo
      */
-    private List<SpexLunches> getLaunches(ObjectMapper objectMapper)
-            throws SSLConfigurationException, IOException, Exception {
-        return objectMapper.readValue(getLaunches(), new TypeReference<List<SpexLunches>>() {
-        });
+    @SuppressWarnings("unchecked")
+    private CachedResponse<List<SpexLunches>> getLaunches(CachedResponse<List<SpexLunches>> previous,
+            Future<Object> rockets, CachedResponse<Map<String, Rocket>> previousRockets, LaunchSnapshot current)
+            throws SSLConfigurationException, NoContentException, Exception {
+        List<SpexLunches> launches = new ArrayList<>();
+        Callable<ObjectReader> reader = () -> launchReader.withAttribute(
+                RocketReferenceDeserializer.DICTIONARY_ATTRIBUTE,
+                RocketDictionary.of(((CachedResponse<Map<String, Rocket>>) rockets.get()).value()));
+        HttpHeaders headers = this.<SpexLunches>readArray(launchesUrl, previous, reader, launches::add, "Lunches");
+        if (headers == null && previous.value() == null && (current == null || rockets.get() != previousRockets)) {
+            log.debug("Lanzamientos sin cambios (304) pero sin lista guardada, se descargan de nuevo");
+            headers = this.<SpexLunches>readArray(launchesUrl, null, reader, launches::add, "Lunches");
+        }
+        if (headers == null) {
+            return previous;
+        }
+        return new CachedResponse<>(headers.getETag(), headers.getFirst(HttpHeaders.LAST_MODIFIED), launches);
     }
 
     /**
      * Serializa los lanzamientos de SpaceX asociandolos con sus respectivos cohetes.
      * <p>
-     * Obtiene la lista de lanzamientos y el mapa de cohetes utilizando un ObjectMapper.
+     * Obtiene la lista de lanzamientos y el mapa de cohetes en paralelo, cada uno en
+     * un hilo virtual, con un unico tiempo limite para ambas descargas. Si una de las
+     * dos falla o se agota el tiempo, se cancela la otra. Cada descarga puede
+     * duplicarse si tarda mas de <code>spacex.upstream.hedge-delay-ms</code>.
+     * Si ninguno de los dos endpoints cambio desde el ultimo snapshot, se retorna la
+     * lista del snapshot sin volver a asociarla.
      * Para cada lanzamiento, establece el cohete correspondiente basado en el rocketId.
+     * Los lanzamientos descargados no se modifican: si el lanzamiento del snapshot
+     * actual tiene los mismos datos y el mismo cohete se reutiliza esa instancia, y
+     * si no se crea una nueva.
      * Si falla en configurar SSL, lanza una SSLConfigurationException. 
-     * Si falla al obtener el contenido, lanza una IOException.
+     * Si falla al obtener el contenido, lanza una NoContentException o una IOException.
      * Si falla por cualquier otro motivo, lanza una Exception.
      * 
+     * @param timeoutMs el tiempo limite en milisegundos para ambas descargas
      * @return una lista de objetos SpexLunches con la informacion actualizada de los cohetes
      * @throws IOException si falla al obtener el contenido
      * @throws SSLConfigurationException si falla en configurar SSL
      * @throws Exception si falla por cualquier otro motivo
      */
 
-    private List<SpexLunches> serializeSpexLunches() throws SSLConfigurationException, IOException, Exception {
+    @SuppressWarnings("unchecked")
+    private List<SpexLunches> serializeSpexLunches(long timeoutMs)
+            throws SSLConfigurationException, IOException, Exception {
 
-        ObjectMapper objectMapper = new ObjectMapper();
+        LaunchSnapshot current = snapshot;
+        CachedResponse<List<SpexLunches>> previousLaunches = cachedLaunches;
+        CachedResponse<Map<String, Rocket>> previousRockets = cachedRockets;
 
-        List<SpexLunches> response = getLaunches(objectMapper);
-        Map<String, Rocket> rocket = getRockets(objectMapper);
-        response.forEach(launches -> launches.setRocket(rocket.get(launches.getRocket().getRocketId())));
-        return response;
+        CompletionService<Object> completion = new ExecutorCompletionService<>(upstreamExecutor);
+        Future<Object> rocketsTask = completion.submit(() -> hedged(() -> getRockets(previousRockets)));
+        Future<Object> launchesTask = completion.submit(
+                () -> hedged(() -> getLaunches(previousLaunches, rocketsTask, previousRockets, current)));
+        try {
+            awaitAll(completion, 2, timeoutMs);
+            CachedResponse<List<SpexLunches>> launches = (CachedResponse<List<SpexLunches>>) launchesTask.resultNow();
+            CachedResponse<Map<String, Rocket>> rockets = (CachedResponse<Map<String, Rocket>>) rocketsTask.resultNow();
+            if (current != null && launches == previousLaunches && rockets == previousRockets) {
+                log.debug("Lanzamientos y cohetes sin cambios (304), se conserva el snapshot actual");
+                return current.lunches();
+            }
+            List<SpexLunches> response = join(launches.value(), rockets.value(), current);
+            // Los validadores solo se guardan cuando el snapshot se arma con exito, para
+            // que un 304 posterior no oculte cambios que nunca llegaron al snapshot.
+            cachedLaunches = OFF_HEAP.equals(snapshotStorage)
+                    ? new CachedResponse<>(launches.etag(), launches.lastModified(), null)
+                    : launches;
+            cachedRockets = rockets;
+            return response;
+        } finally {
+            launchesTask.cancel(true);
+            rocketsTask.cancel(true);
+        }
     }
 
     /**
-     * Retorna una lista de objetos SpexLunches que contienen la informacion de los
-     * lanzamientos de SpaceX. Si falla en configurar SSL, lanza una
-     * SSLConfigurationException. Si falla al obtener el contenido, lanza una
-     * IOException. Si falla por cualquier otro motivo, lanza una Exception.
+     * Asocia cada lanzamiento descargado con su cohete sin modificar los objetos
+     * descargados, que pueden volver a usarse si el endpoint responde 304. Si el
+     * snapshot actual tiene un lanzamiento con el mismo numero de vuelo, los
+     * mismos datos y la misma instancia de cohete, se reutiliza ese lanzamiento;
+     * si el lanzamiento descargado ya apunta al cohete compartido se usa tal cual.
+     * Con el snapshot fuera del heap no se busca el lanzamiento anterior, porque
+     * leerlo arma un objeto nuevo; los que no cambiaron se detectan al armar la
+     * foto, comparando contra los registros nativos. Los cohetes que no estan en
+     * el mapa se cuentan en la metrica <code>spacex.snapshot.unknown-rockets</code>
+     * y el lanzamiento queda sin cohete, igual que si no tuviera uno.
      * 
-     * @return una lista de objetos SpexLunches
+     * @param launches los lanzamientos descargados
+     * @param rockets  los cohetes indexados por rocket_id
+     * @param current  el snapshot actual, o <code>null</code>
+     * @return la lista de lanzamientos asociados con sus cohetes
+     */
+    private List<SpexLunches> join(List<SpexLunches> launches, Map<String, Rocket> rockets,
+            LaunchSnapshot current) {
+        List<SpexLunches> joined = new ArrayList<>(launches.size());
+        for (SpexLunches launch : launches) {
+            Rocket parsed = launch.rocket();
+            Rocket rocket = parsed == null ? null : rockets.get(parsed.rocketId());
+            if (parsed != null && rocket == null) {
+                unknownRockets.increment();
+                log.debug("Lanzamiento {} con cohete desconocido: {}", launch.flightNumber(), parsed.rocketId());
+            }
+            SpexLunches old = current == null || current.lunches() instanceof OffHeapLaunchList ? null
+                    : current.findByFlightNumber(launch.flightNumber());
+            if (old != null && old.rocket() == rocket && Objects.equals(old.missionName(), launch.missionName())
+                    && Objects.equals(old.details(), launch.details())) {
+                joined.add(old);
+            } else if (parsed == rocket) {
+                joined.add(launch);
+            } else {
+                joined.add(new SpexLunches(launch.flightNumber(), launch.missionName(), launch.details(),
+                        rocket));
+            }
+        }
+        return joined;
+    }
+
+    /**
+     * Ejecuta una descarga y, si no termino despues de
+     * <code>spacex.upstream.hedge-delay-ms</code>, lanza una segunda identica en
+     * paralelo. Retorna el resultado de la primera que termine bien y cancela la
+     * otra; si fallan las dos, relanza la excepcion de la ultima. Asi una conexion
+     * lenta o colgada no define la latencia del refresco.
+     * 
+     * @param <T>  el tipo del resultado
+     * @param call la descarga; debe poder ejecutarse mas de una vez en paralelo
+     * @return el resultado de la descarga
+     * @throws Exception la excepcion de la descarga si fallan todos los intentos
+     */
+    private <T> T hedged(Callable<T> call) throws Exception {
+        if (upstreamHedgeDelayMs <= 0) {
+            return call.call();
+        }
+        CompletionService<T> completion = new ExecutorCompletionService<>(upstreamExecutor);
+        List<Future<T>> attempts = new ArrayList<>(2);
+        try {
+            attempts.add(completion.submit(call));
+            Future<T> done = completion.poll(upstreamHedgeDelayMs, TimeUnit.MILLISECONDS);
+            if (done == null) {
+                log.debug("Descarga sin respuesta tras {} ms, se lanza un segundo intento", upstreamHedgeDelayMs);
+                attempts.add(completion.submit(call));
+            }
+            Exception failure = null;
+            for (int pending = attempts.size(); pending > 0; pending--) {
+                if (done == null) {
+                    done = completion.take();
+                }
+                try {
+                    return done.get();
+                } catch (ExecutionException ex) {
+                    failure = ex.getCause() instanceof Exception cause ? cause
+                            : new Exception("Error fetching data from SpaceX: " + ex.getCause(), ex.getCause());
+                }
+                done = null;
+            }
+            throw failure;
+        } finally {
+            for (Future<T> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Espera a que terminen las tareas enviadas al CompletionService dentro del
+     * tiempo limite indicado. Si alguna falla, relanza su excepcion original sin
+     * esperar al resto, de modo que se conservan los tipos
+     * SSLConfigurationException y NoContentException.
+     * 
+     * @param completion el CompletionService donde se enviaron las tareas
+     * @param tasks      la cantidad de tareas a esperar
+     * @param timeoutMs  el tiempo limite total en milisegundos
+     * @throws Exception la excepcion de la primera tarea que falle, o una
+     *                   Exception si se agota el tiempo limite
+     */
+    private void awaitAll(CompletionService<Object> completion, int tasks, long timeoutMs) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        for (int i = 0; i < tasks; i++) {
+            Future<Object> done = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (done == null) {
+                log.error("Timeout fetching data from SpaceX after {} ms", timeoutMs);
+                throw new Exception("Timeout fetching data from SpaceX after " + timeoutMs + " ms");
+            }
+            try {
+                done.get();
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw new Exception("Error fetching data from SpaceX: " + ex.getCause(), ex.getCause());
+            }
+        }
+    }
+
+    /**
+     * Retorna una lista de objetos SpexLunches que contienen la informacion de los
+     * lanzamientos de SpaceX desde el ultimo snapshot valido. Solo se consulta la
+     * API de SpaceX si todavia no se cargo ningun snapshot. Si falla en configurar
+     * SSL, lanza una SSLConfigurationException. Si falla al obtener el contenido,
+     * lanza una IOException. Si falla por cualquier otro motivo, lanza una
+     * Exception.
+     *
+     * @return una lista inmutable de objetos SpexLunches
      * @throws IOException               si falla al obtener el contenido
      * @throws SSLConfigurationException si falla en configurar SSL
      * @throws Exception                 si falla por cualquier otro motivo
      */
     public List<SpexLunches> getSpexLunches() throws IOException, SSLConfigurationException, Exception {
-        lunches = serializeSpexLunches();
-        return lunches;
+        LaunchSnapshot current = snapshot;
+        if (current == null) {
+            current = loadSnapshot(false);
+        }
+        return current.lunches();
+    }
+
+    /**
+     * Retorna la version del ultimo snapshot valido: el id del ultimo evento del
+     * stream de cambios que ya esta incluido en sus lanzamientos. Suscribirse a
+     * {@link #streamChanges(String)} con esa version envia solo los cambios
+     * posteriores. Solo se consulta la API de SpaceX si todavia no se cargo
+     * ningun snapshot.
+     * 
+     * @return la version del snapshot
+     * @throws IOException               si falla al obtener el contenido
+     * @throws SSLConfigurationException si falla en configurar SSL
+     * @throws Exception                 si falla por cualquier otro motivo
+     */
+    public long getSnapshotVersion() throws IOException, SSLConfigurationException, Exception {
+        LaunchSnapshot current = snapshot;
+        if (current == null) {
+            current = loadSnapshot(false);
+        }
+        return current.version();
+    }
+
+    /**
+     * Retorna los lanzamientos del ultimo snapshot valido ya serializados en JSON
+     * y gzip, con su ETag. Solo se consulta la API de SpaceX si todavia no se
+     * cargo ningun snapshot.
+     * 
+     * @return los lanzamientos serializados
+     * @throws IOException               si falla al obtener el contenido
+     * @throws SSLConfigurationException si falla en configurar SSL
+     * @throws Exception                 si falla por cualquier otro motivo
+     */
+    public SerializedPayload getSpexLunchesPayload() throws IOException, SSLConfigurationException, Exception {
+        LaunchSnapshot current = snapshot;
+        if (current == null) {
+            current = loadSnapshot(false);
+        }
+        return current.payload();
+    }
+
+    /**
+     * Resuelve una consulta con filtros, paginado y proyeccion sobre el ultimo
+     * snapshot valido. Los filtros se evaluan sobre la tabla columnar del
+     * snapshot y solo se serializan los lanzamientos de la pagina pedida.
+     * 
+     * @param query  los filtros y el paginado
+     * @param fields los campos a incluir separados por coma, o <code>null</code>
+     *               para incluir todos
+     * @return la pagina serializada y la cantidad total de resultados
+     * @throws IllegalArgumentException  si algun campo de la proyeccion no existe
+     * @throws IOException               si falla al obtener el contenido
+     * @throws SSLConfigurationException si falla en configurar SSL
+     * @throws Exception                 si falla por cualquier otro motivo
+     */
+    public LaunchPage queryLunches(LaunchQuery query, String fields)
+            throws IOException, SSLConfigurationException, Exception {
+        int projection = parseProjection(fields);
+        LaunchSnapshot current = snapshot;
+        if (current == null) {
+            current = loadSnapshot(false);
+        }
+        LaunchTable.Selection selection = current.table().select(query, parallelScanThreshold);
+        int[] rows = selection.rows();
+        if (rows.length == current.lunches().size() && projection == ALL_FIELDS) {
+            return new LaunchPage(current.payload(), selection.total());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, rows.length * 256));
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.writeStartArray();
+            for (int row : rows) {
+                writeProjected(generator, current.lunches().get(row), projection);
+            }
+            generator.writeEndArray();
+        }
+        return new LaunchPage(SerializedPayload.of(out.toByteArray()), selection.total());
+    }
+
+    /**
+     * Igual que {@link #queryLunches(LaunchQuery, String)} pero en formato NDJSON
+     * (un lanzamiento por linea) y sin armar la respuesta en memoria. El snapshot
+     * y las filas se resuelven al llamar a este metodo, de modo que los errores se
+     * informan antes de empezar a responder; el cuerpo luego escribe los
+     * lanzamientos directamente en el stream de salida, en bloques de
+     * <code>spacex.lunches.stream-flush-rows</code> lanzamientos. Sin proyeccion
+     * se copian los bytes ya serializados del snapshot.
+     * 
+     * @param query  la consulta con filtros y paginado
+     * @param fields los campos a incluir separados por coma, o <code>null</code>
+     *               para todos
+     * @return la cantidad total de resultados y el cuerpo a escribir
+     * @throws IllegalArgumentException  si algun campo no existe
+     * @throws IOException               si falla al obtener el contenido
+     * @throws SSLConfigurationException si falla en configurar SSL
+     * @throws Exception                 si falla por cualquier otro motivo
+     */
+    public LaunchStream streamLunches(LaunchQuery query, String fields)
+            throws IOException, SSLConfigurationException, Exception {
+        int projection = parseProjection(fields);
+        LaunchSnapshot current = snapshot;
+        if (current == null) {
+            current = loadSnapshot(false);
+        }
+        LaunchSnapshot streamed = current;
+        LaunchTable.Selection selection = current.table().select(query, parallelScanThreshold);
+        int[] rows = selection.rows();
+        int to = rows.length;
+        int flushRows = Math.max(1, streamFlushRows);
+        int[] next = { 0 };
+        return new LaunchStream(selection.total(), out -> {
+            int start = next[0];
+            int end = Math.min(to, start + flushRows);
+            if (projection == ALL_FIELDS) {
+                for (int i = start; i < end; i++) {
+                    streamed.writeRow(rows[i], out);
+                    out.write('\n');
+                }
+            } else {
+                try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+                    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                    generator.setRootValueSeparator(null);
+                    for (int i = start; i < end; i++) {
+                        writeProjected(generator, streamed.lunches().get(rows[i]), projection);
+                        generator.writeRaw('\n');
+                    }
+                }
+            }
+            next[0] = end;
+            return end < to;
+        });
+    }
+
+    /**
+     * Suscribe al cliente a los cambios de los lanzamientos. Ver
+     * {@link LaunchChangeFeed}. La suscripcion se registra al llamar a este
+     * metodo, de modo que no se pierden los cambios publicados antes de empezar a
+     * escribir la respuesta; luego se escriben los eventos hasta que el cliente
+     * se desconecta, con {@link LaunchChangeFeed.Subscription#writeTo} en el stack
+     * servlet o {@link LaunchChangeFeed.Subscription#frames} en el reactivo.
+     * 
+     * @param lastEventId el valor del header <code>Last-Event-ID</code>, puede ser
+     *                    <code>null</code>; tambien admite la version de un
+     *                    snapshot ({@link #getSnapshotVersion()})
+     * @return la suscripcion, o <code>null</code> si se alcanzo la cantidad
+     *         maxima de suscriptores
+     */
+    public LaunchChangeFeed.Subscription streamChanges(String lastEventId) {
+        return changeFeed.subscribe(lastEventId);
+    }
+
+    /**
+     * Retorna el cuerpo indicado en el formato pedido. Los formatos binarios se
+     * obtienen recorriendo el JSON con un parser y copiando cada token al
+     * generador del formato, sin armar objetos intermedios. La lista completa de
+     * lanzamientos del snapshot se codifica una sola vez por formato y por
+     * snapshot; el resto de los cuerpos se codifican en cada llamada.
+     * 
+     * @param payload el cuerpo en JSON
+     * @param format  el formato pedido
+     * @return el cuerpo en el formato pedido
+     * @throws IOException si falla la codificacion
+     */
+    public SerializedPayload encode(SerializedPayload payload, WireFormat format) throws IOException {
+        if (format == WireFormat.JSON) {
+            return payload;
+        }
+        LaunchSnapshot current = snapshot;
+        boolean cacheable = current != null && current.payload() == payload;
+        if (cacheable) {
+            EncodedPayload cached = encodedPayloads.get(format);
+            if (cached != null && cached.source() == payload) {
+                return cached.payload();
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, payload.json().length / 2));
+        try (JsonParser parser = jsonFactory.createParser(payload.json());
+                JsonGenerator generator = format == WireFormat.SMILE ? smileFactory.createGenerator(out)
+                        : cborFactory.createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        SerializedPayload encoded = cacheable ? SerializedPayload.precomputed(out.toByteArray())
+                : SerializedPayload.of(out.toByteArray());
+        if (cacheable) {
+            encodedPayloads.put(format, new EncodedPayload(payload, encoded));
+        }
+        return encoded;
+    }
+
+    /**
+     * Busca lanzamientos por texto en el nombre de mision y los detalles del
+     * ultimo snapshot valido. Se exigen todos los terminos de la consulta; los
+     * terminados en <code>*</code> se buscan como prefijo. Los resultados se
+     * ordenan por relevancia.
+     * 
+     * @param query la consulta
+     * @param limit la cantidad maxima de resultados, acotada por
+     *              <code>spacex.search.max-results</code>
+     * @return los lanzamientos encontrados serializados y el total de
+     *         coincidencias
+     * @throws IllegalArgumentException  si la consulta no tiene terminos o el
+     *                                   limite no es positivo
+     * @throws IOException               si falla al obtener el contenido
+     * @throws SSLConfigurationException si falla en configurar SSL
+     * @throws Exception                 si falla por cualquier otro motivo
+     */
+    public LaunchPage searchLunches(String query, int limit) throws IOException, SSLConfigurationException, Exception {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit debe ser mayor a cero: " + limit);
+        }
+        LaunchSnapshot current = snapshot;
+        if (current == null) {
+            current = loadSnapshot(false);
+        }
+        SearchIndex.Result result = current.searchIndex().search(query, Math.min(limit, searchMaxResults));
+        List<SpexLunches> found = new ArrayList<>(result.flightNumbers().length);
+        for (int flightNumber : result.flightNumbers()) {
+            found.add(current.findByFlightNumber(flightNumber));
+        }
+        return new LaunchPage(SerializedPayload.of(toJson(found)), result.total());
+    }
+
+    /**
+     * Convierte la lista de campos pedidos en una mascara de bits sobre
+     * {@link #PROJECTABLE_FIELDS}.
+     * 
+     * @param fields los campos separados por coma, o <code>null</code>
+     * @return la mascara de campos a escribir
+     * @throws IllegalArgumentException si algun campo no existe
+     */
+    private static int parseProjection(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return ALL_FIELDS;
+        }
+        int projection = 0;
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            int bit = -1;
+            for (int i = 0; i < PROJECTABLE_FIELDS.length; i++) {
+                if (PROJECTABLE_FIELDS[i].equals(name)) {
+                    bit = i;
+                    break;
+                }
+            }
+            if (bit < 0) {
+                throw new IllegalArgumentException("Campo desconocido en fields: " + name);
+            }
+            projection |= 1 << bit;
+        }
+        return projection == 0 ? ALL_FIELDS : projection;
+    }
+
+    /**
+     * Escribe un lanzamiento con los campos indicados por la mascara.
+     * 
+     * @param generator   el generador JSON
+     * @param spexLunches el lanzamiento a escribir
+     * @param projection  la mascara de campos
+     * @throws IOException si falla la escritura
+     */
+    private void writeProjected(JsonGenerator generator, SpexLunches spexLunches, int projection)
+            throws IOException {
+        generator.writeStartObject();
+        if ((projection & 1) != 0) {
+            generator.writeNumberField(PROJECTABLE_FIELDS[0], spexLunches.flightNumber());
+        }
+        if ((projection & 2) != 0) {
+            generator.writeStringField(PROJECTABLE_FIELDS[1], spexLunches.missionName());
+        }
+        if ((projection & 4) != 0) {
+            generator.writeStringField(PROJECTABLE_FIELDS[2], spexLunches.details());
+        }
+        if ((projection & 8) != 0) {
+            generator.writeFieldName(PROJECTABLE_FIELDS[3]);
+            rocketWriter.writeValue(generator, spexLunches.rocket());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Refresca en segundo plano el snapshot de lanzamientos cada
+     * <code>spacex.snapshot.ttl-ms</code> milisegundos. Si el refresco falla se
+     * conserva el ultimo snapshot valido.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${spacex.snapshot.ttl-ms:300000}")
+    public void refreshSnapshot() {
+        try {
+            loadSnapshot(true);
+        } catch (Exception ex) {
+            log.error("Error refrescando el snapshot de lanzamientos, se conserva el anterior: {}", ex.toString());
+        }
+    }
+
+    /**
+     * Refresca el snapshot compartiendo un unico refresco entre los llamadores
+     * concurrentes. El primero descarga y publica el snapshot; los que llegan
+     * mientras tanto esperan ese mismo resultado, o su misma excepcion, sin
+     * consultar la API de SpaceX.
+     * <p>
+     * Las lecturas llaman sin <code>force</code> cuando todavia no hay snapshot.
+     * Entre esa comprobacion y tomar el refresco, otro hilo pudo haber terminado
+     * de cargarlo, por lo que el que gana vuelve a mirar el snapshot y solo
+     * descarga si sigue sin haber uno.
+     * <p>
+     * Una lectura espera a lo sumo <code>spacex.upstream.foreground-timeout-ms</code>,
+     * tanto si descarga ella misma (con un solo intento) como si espera un
+     * refresco en segundo plano que puede estar reintentando; si no llega a
+     * tiempo responde con UpstreamUnavailableException.
+     * 
+     * @param force <code>true</code> para descargar aunque ya haya un snapshot,
+     *              como en el refresco periodico
+     * @return el snapshot publicado
+     * @throws UpstreamUnavailableException si una lectura no obtiene el
+     *                                      snapshot a tiempo
+     * @throws IOException                  si falla al obtener el contenido
+     * @throws SSLConfigurationException    si falla en configurar SSL
+     * @throws Exception                    si falla por cualquier otro motivo
+     */
+    private LaunchSnapshot loadSnapshot(boolean force) throws IOException, SSLConfigurationException, Exception {
+        CompletableFuture<LaunchSnapshot> refresh = new CompletableFuture<>();
+        CompletableFuture<LaunchSnapshot> running = inflightRefresh.compareAndExchange(null, refresh);
+        if (running != null) {
+            try {
+                return force ? running.get() : running.get(upstreamForegroundTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                throw new UpstreamUnavailableException("La API de SpaceX no respondio a tiempo, el snapshot se sigue"
+                        + " cargando en segundo plano");
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw new Exception("Error refrescando el snapshot: " + ex.getCause(), ex.getCause());
+            }
+        }
+        try {
+            LaunchSnapshot current = snapshot;
+            LaunchSnapshot loaded = !force && current != null ? current : fetchSnapshot(force);
+            refresh.complete(loaded);
+            return loaded;
+        } catch (Exception | Error ex) {
+            refresh.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inflightRefresh.set(null);
+        }
+    }
+
+    /**
+     * Descarga los lanzamientos y cohetes pasando por el circuit breaker. En
+     * segundo plano, si la descarga falla se reintenta hasta
+     * <code>spacex.upstream.retries</code> veces, esperando entre intentos un
+     * tiempo que crece de forma exponencial con una variacion aleatoria, para que
+     * las instancias no reintenten todas a la vez. Los errores de SSL y las
+     * respuestas vacias no se reintentan. Para un request que espera la respuesta
+     * se hace un solo intento, limitado a
+     * <code>spacex.upstream.foreground-timeout-ms</code>.
+     * 
+     * @param background <code>true</code> si es el refresco en segundo plano
+     * @return la lista de lanzamientos asociados con sus cohetes
+     * @throws UpstreamUnavailableException si el circuito esta abierto o se
+     *                                      agotan los reintentos
+     * @throws SSLConfigurationException    si falla en configurar SSL
+     * @throws NoContentException           si la respuesta viene vacia
+     * @throws Exception                    si se interrumpe la espera
+     */
+    private List<SpexLunches> fetchWithRetries(boolean background) throws Exception {
+        int retries = background ? upstreamRetries : 0;
+        long timeoutMs = background ? upstreamTimeoutMs : Math.min(upstreamTimeoutMs, upstreamForegroundTimeoutMs);
+        for (int attempt = 0;; attempt++) {
+            if (!circuitBreaker.allowRequest()) {
+                throw new UpstreamUnavailableException("La API de SpaceX no esta disponible (circuito abierto)");
+            }
+            try {
+                List<SpexLunches> lunches = serializeSpexLunches(timeoutMs);
+                circuitBreaker.recordSuccess();
+                return lunches;
+            } catch (SSLConfigurationException | NoContentException ex) {
+                circuitBreaker.recordFailure();
+                throw ex;
+            } catch (Exception ex) {
+                circuitBreaker.recordFailure();
+                if (attempt >= retries) {
+                    throw new UpstreamUnavailableException("La API de SpaceX no esta disponible: " + ex.getMessage(),
+                            ex);
+                }
+                long backoff = upstreamRetryBackoffMs << attempt;
+                long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                log.warn("Fallo la descarga de SpaceX (intento {}), se reintenta en {} ms: {}", attempt + 1, delay,
+                        ex.toString());
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * Descarga los lanzamientos y cohetes, los asocia y publica el resultado como
+     * nuevo snapshot. Si no es la primera carga, sus cambios se envian a los
+     * suscriptores del stream y el id de ese evento pasa a ser la version del
+     * snapshot. Registra el resultado del refresco en las metricas.
+     * 
+     * @param background <code>true</code> si es el refresco en segundo plano
+     * @return el nuevo snapshot publicado
+     * @throws IOException               si falla al obtener el contenido
+     * @throws SSLConfigurationException si falla en configurar SSL
+     * @throws Exception                 si falla por cualquier otro motivo
+     */
+    private LaunchSnapshot fetchSnapshot(boolean background) throws IOException, SSLConfigurationException, Exception {
+        try {
+            LaunchSnapshot current = snapshot;
+            List<SpexLunches> lunches = fetchWithRetries(background);
+            LaunchSnapshot loaded = current != null && lunches == current.lunches()
+                    ? current.refreshed(Instant.now())
+                    : LaunchSnapshot.of(lunches, current, this::toJson, OFF_HEAP.equals(snapshotStorage),
+                            Instant.now());
+            if (loaded.diff().size() > 0) {
+                log.info("Snapshot actualizado: {} nuevos, {} modificados, {} eliminados",
+                        loaded.diff().added().length, loaded.diff().changed().length,
+                        loaded.diff().removed().length);
+            }
+            // Los cambios se publican antes de que el snapshot sea visible, con su
+            // version: quien lo lea ya puede suscribirse desde ese evento.
+            loaded = loaded.withVersion(current == null ? changeFeed.lastEventId() : changeFeed.publish(loaded));
+            snapshot = loaded;
+            refreshSuccess.increment();
+            return loaded;
+        } catch (Exception ex) {
+            refreshFailure.increment();
+            throw ex;
+        }
+    }
+
+    /**
+     * Indica si ya se cargo un snapshot. Mientras no haya ninguno, pedir
+     * lanzamientos descarga los datos de la API de SpaceX y bloquea al llamador.
+     * 
+     * @return <code>true</code> si hay un snapshot cargado
+     */
+    public boolean isSnapshotLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * Indica si la lista completa de lanzamientos del snapshot ya esta
+     * serializada en el formato indicado, de modo que
+     * {@link #encode(SerializedPayload, WireFormat)} la retorna sin codificar
+     * nada.
+     * 
+     * @param format el formato
+     * @return <code>true</code> si hay un snapshot cargado y su lista completa ya
+     *         esta en ese formato
+     */
+    public boolean isPayloadEncoded(WireFormat format) {
+        LaunchSnapshot current = snapshot;
+        if (current == null) {
+            return false;
+        }
+        if (format == WireFormat.JSON) {
+            return true;
+        }
+        EncodedPayload cached = encodedPayloads.get(format);
+        return cached != null && cached.source() == current.payload();
+    }
+
+    /**
+     * Retorna la antiguedad del snapshot con el que se responden los
+     * lanzamientos. Si la API de SpaceX falla se siguen sirviendo los datos del
+     * ultimo snapshot valido, por lo que la antiguedad crece hasta que un refresco
+     * vuelve a funcionar.
+     * 
+     * @return la antiguedad del snapshot, o <code>null</code> si todavia no se
+     *         cargo ninguno
+     */
+    public Duration getSnapshotAge() {
+        LaunchSnapshot current = snapshot;
+        return current == null ? null : current.age(Instant.now());
+    }
+
+    /**
+     * Retorna la antiguedad en segundos del snapshot actual, o <code>NaN</code> si
+     * todavia no se cargo ninguno.
+     * 
+     * @return la antiguedad del snapshot en segundos
+     */
+    private double getSnapshotAgeSeconds() {
+        LaunchSnapshot current = snapshot;
+        if (current == null) {
+            return Double.NaN;
+        }
+        return current.age(Instant.now()).toMillis() / 1000.0;
     }
 
     /**
@@ -218,51 +1301,227 @@ public class SpexService {
      *         <code>null</code> si no se encuentra
      */
     private SpexLunches getSpexLunchesByFlightNumber(int flightNumber) {
-        return lunches.stream().filter(launch -> launch.getFlightNumber() == flightNumber).findFirst().orElse(null);
+        LaunchSnapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        return current.findByFlightNumber(flightNumber);
     }
 
     /**
      * Retorna la lista de lanzamientos de SpaceX que se encuentran en la lista de
-     * favoritos.
+     * favoritos del usuario. Los numeros de vuelo favoritos se resuelven contra el
+     * snapshot vigente; los que ya no existen en el snapshot se omiten.
      * 
+     * @param userId el identificador del usuario
      * @return la lista de lanzamientos favoritos
      */
-    public List<SpexLunches> getFavoritesLunches() throws NoContentException{
-        List<SpexLunches> favorites = favoritesList.getFavorites();
-        if (favorites == null) {
-            throw new NoContentException("La lista de favoritos esta vacia");
+    public List<SpexLunches> getFavoritesLunches(String userId) throws NoContentException {
+        return resolveFavorites(favoritesStore.get(userId), snapshot);
+    }
+
+    /**
+     * Retorna los favoritos del usuario ya serializados en JSON y gzip, con su
+     * ETag. Se reutilizan los bytes armados previamente mientras no cambien los
+     * favoritos del usuario ni el snapshot de lanzamientos.
+     * 
+     * @param userId el identificador del usuario
+     * @return los favoritos serializados
+     */
+    public SerializedPayload getFavoritesPayload(String userId) {
+        return getFavoritesPayload(userId, favoritesStore.get(userId));
+    }
+
+    /**
+     * Retorna la lista de favoritos indicada ya serializada, reutilizando los
+     * bytes en cache si corresponden a la misma version y al mismo snapshot.
+     * 
+     * @param userId    el identificador del usuario
+     * @param favorites la lista de favoritos del usuario
+     * @return los favoritos serializados
+     */
+    private SerializedPayload getFavoritesPayload(String userId, FavoritesList favorites) {
+        LaunchSnapshot current = snapshot;
+        FavoritesPayload cached = favoritesPayloads.get(userId);
+        if (cached != null && cached.version() == favorites.getVersion() && cached.snapshot() == current) {
+            return cached.payload();
         }
-        return favorites;
+        SerializedPayload payload = SerializedPayload.of(toJson(resolveFavorites(favorites, current)));
+        favoritesPayloads.put(userId, new FavoritesPayload(favorites.getVersion(), current, payload));
+        return payload;
     }
 
     /**
-     * Agrega un lanzamiento de SpaceX a la lista de favoritos segun su numero de vuelo.
+     * Agrega un lanzamiento de SpaceX a la lista de favoritos del usuario segun su
+     * numero de vuelo.
      * 
+     * @param userId       el identificador del usuario
      * @param flightNumber el numero de vuelo del lanzamiento que se desea agregar a la lista de favoritos
-     * @return la lista actualizada de lanzamientos favoritos
+     * @return la lista actualizada de favoritos, ya serializada
      */
-    public List<SpexLunches> addFavoriteLaunch(int flightNumber) {
+    public SerializedPayload addFavoriteLaunch(String userId, int flightNumber) {
         SpexLunches spexLunches = getSpexLunchesByFlightNumber(flightNumber);
         if (spexLunches == null) {
             throw new NoContentException("El despegue que intenta insertar no fue encontrado");
         }
-        favoritesList.getFavorites().add(spexLunches);
-        return getFavoritesLunches();
+        FavoritesList favorites;
+        try (FavoritesPersistence.Reservation wal = favoritesPersistence.reserve(1)) {
+            favorites = favoritesStore.add(userId, flightNumber, () -> wal.logAdd(userId, flightNumber));
+        }
+        return getFavoritesPayload(userId, favorites);
     }
 
     /**
-     * Elimina un lanzamiento de SpaceX de la lista de favoritos segun su numero de vuelo.
+     * Elimina un lanzamiento de SpaceX de la lista de favoritos del usuario segun
+     * su numero de vuelo.
      * 
+     * @param userId       el identificador del usuario
      * @param flightNumber el numero de vuelo del lanzamiento que se desea eliminar de la lista de favoritos
-     * @return la lista actualizada de lanzamientos favoritos
+     * @return la lista actualizada de favoritos, ya serializada
      */
 
-    public List<SpexLunches> removeFavoriteLaunch(int flightNumber) {
-        SpexLunches spexLunches = favoritesList.getFavorite(flightNumber);
-        if (spexLunches == null) {
+    public SerializedPayload removeFavoriteLaunch(String userId, int flightNumber) {
+        FavoritesList favorites;
+        try (FavoritesPersistence.Reservation wal = favoritesPersistence.reserve(1)) {
+            favorites = favoritesStore.remove(userId, flightNumber, () -> wal.logRemove(userId, flightNumber));
+        }
+        if (favorites == null) {
             throw new NoContentException("El despegue que intenta borrar de los favoritos no fue encontrado en la lista");
         }
-        favoritesList.getFavorites().remove(spexLunches);
-        return getFavoritesLunches();
+        return getFavoritesPayload(userId, favorites);
+    }
+
+    /**
+     * Aplica un lote de altas y bajas a la lista de favoritos del usuario. Las
+     * altas de numeros de vuelo que no estan en el snapshot vigente se informan
+     * como <code>not_found</code> y no se aplican; el resto se aplica de forma
+     * atomica, en orden y con una sola version nueva. Se responde el resultado de
+     * cada operacion en lugar de la lista completa, que el cliente puede pedir
+     * con <code>GET /favorites</code> si la necesita. Las operaciones que
+     * modificaron la lista se registran en el WAL dentro de la misma
+     * actualizacion, como en {@link #addFavoriteLaunch(String, int)}.
+     * 
+     * @param userId     el identificador del usuario
+     * @param operations las operaciones a aplicar
+     * @return el resultado del lote, ya serializado
+     * @throws IllegalArgumentException si alguna operacion es invalida o el lote
+     *                                  supera
+     *                                  <code>spacex.favorites.batch-max-operations</code>
+     */
+    public SerializedPayload applyFavoritesBatch(String userId, List<FavoriteOperation> operations) {
+        if (operations == null) {
+            throw new IllegalArgumentException("El lote de operaciones es obligatorio");
+        }
+        if (operations.size() > favoritesBatchMax) {
+            throw new IllegalArgumentException(
+                    "El lote supera el maximo de " + favoritesBatchMax + " operaciones: " + operations.size());
+        }
+        LaunchSnapshot current = snapshot;
+        int[] flightNumbers = new int[operations.size()];
+        boolean[] adds = new boolean[operations.size()];
+        int[] accepted = new int[operations.size()];
+        int count = 0;
+        for (int i = 0; i < operations.size(); i++) {
+            FavoriteOperation operation = operations.get(i);
+            boolean add = FavoriteOperation.ADD.equals(operation == null ? null : operation.op());
+            if (!add && !FavoriteOperation.REMOVE.equals(operation == null ? null : operation.op())) {
+                throw new IllegalArgumentException("Operacion invalida en la posicion " + i
+                        + ", se espera '" + FavoriteOperation.ADD + "' o '" + FavoriteOperation.REMOVE + "'");
+            }
+            if (add && (current == null || !current.flightIndex().contains(operation.flightNumber()))) {
+                continue;
+            }
+            flightNumbers[count] = operation.flightNumber();
+            adds[count] = add;
+            accepted[count++] = i;
+        }
+        boolean[] changed = new boolean[count];
+        int applied = count;
+        FavoritesList favorites;
+        try (FavoritesPersistence.Reservation wal = favoritesPersistence.reserve(count)) {
+            favorites = favoritesStore.apply(userId, Arrays.copyOf(flightNumbers, count),
+                    Arrays.copyOf(adds, count), changed, () -> {
+                        for (int j = 0; j < applied; j++) {
+                            if (changed[j]) {
+                                if (adds[j]) {
+                                    wal.logAdd(userId, flightNumbers[j]);
+                                } else {
+                                    wal.logRemove(userId, flightNumbers[j]);
+                                }
+                            }
+                        }
+                    });
+        }
+        FavoritesBatchResult.Item[] results = new FavoritesBatchResult.Item[operations.size()];
+        for (int j = 0; j < count; j++) {
+            String status = adds[j]
+                    ? (changed[j] ? FavoritesBatchResult.ADDED : FavoritesBatchResult.ALREADY_FAVORITE)
+                    : (changed[j] ? FavoritesBatchResult.REMOVED : FavoritesBatchResult.NOT_FAVORITE);
+            results[accepted[j]] = new FavoritesBatchResult.Item(flightNumbers[j], operations.get(accepted[j]).op(),
+                    status);
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = new FavoritesBatchResult.Item(operations.get(i).flightNumber(), operations.get(i).op(),
+                        FavoritesBatchResult.NOT_FOUND);
+            }
+        }
+        try {
+            return SerializedPayload.of(batchWriter.writeValueAsBytes(
+                    new FavoritesBatchResult(favorites.getVersion(), favorites.size(), Arrays.asList(results))));
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Serializa un lanzamiento a JSON UTF-8.
+     * 
+     * @param spexLunches el lanzamiento
+     * @return los bytes JSON
+     */
+    private byte[] toJson(SpexLunches spexLunches) {
+        try {
+            return launchWriter.writeValueAsBytes(spexLunches);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Serializa una lista de lanzamientos a JSON UTF-8.
+     * 
+     * @param lunches la lista de lanzamientos
+     * @return los bytes JSON
+     */
+    private byte[] toJson(List<SpexLunches> lunches) {
+        try {
+            return listWriter.writeValueAsBytes(lunches);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Convierte los numeros de vuelo de una lista de favoritos en los lanzamientos
+     * del snapshot vigente, en orden ascendente de numero de vuelo.
+     * 
+     * @param favorites la lista de favoritos a resolver
+     * @param current   el snapshot contra el que se resuelven, puede ser
+     *                  <code>null</code>
+     * @return la lista de lanzamientos favoritos
+     */
+    private List<SpexLunches> resolveFavorites(FavoritesList favorites, LaunchSnapshot current) {
+        if (current == null || favorites.isEmpty()) {
+            return List.of();
+        }
+        List<SpexLunches> resolved = new ArrayList<>(favorites.size());
+        for (int i = 0; i < favorites.size(); i++) {
+            SpexLunches spexLunches = current.findByFlightNumber(favorites.flightNumberAt(i));
+            if (spexLunches != null) {
+                resolved.add(spexLunches);
+            }
+        }
+        return resolved;
     }
 }
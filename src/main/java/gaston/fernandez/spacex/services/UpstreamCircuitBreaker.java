@@ -0,0 +1,136 @@
+package gaston.fernandez.spacex.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Circuit breaker de las descargas a la API de SpaceX.
+ * <p>
+ * Mientras esta cerrado deja pasar todas las descargas y cuenta las fallas
+ * consecutivas. Al llegar a <code>spacex.upstream.breaker.failure-threshold</code>
+ * se abre y rechaza las descargas sin llamar a la API durante
+ * <code>spacex.upstream.breaker.open-ms</code> milisegundos. Pasado ese tiempo
+ * queda entreabierto y deja pasar una unica descarga de prueba: si funciona se
+ * cierra y si falla vuelve a abrirse. Las transiciones son pocas y cortas, por
+ * lo que los metodos se sincronizan.
+ */
+@Component
+@Slf4j
+public class UpstreamCircuitBreaker {
+
+    /**
+     * Estados del circuit breaker. El ordinal se publica en la metrica
+     * <code>spacex.upstream.breaker.state</code>.
+     */
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    /**
+     * Cantidad de fallas consecutivas que abren el circuito.
+     */
+    @Value("${spacex.upstream.breaker.failure-threshold:3}")
+    private int failureThreshold;
+
+    /**
+     * Tiempo en milisegundos que el circuito queda abierto antes de probar de
+     * nuevo.
+     */
+    @Value("${spacex.upstream.breaker.open-ms:30000}")
+    private long openMs;
+
+    private State state = State.CLOSED;
+
+    private int failures;
+
+    private long openedAt;
+
+    private boolean probing;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Constructor de la clase UpstreamCircuitBreaker.
+     *
+     * @param meterRegistry el registro de metricas donde se publica el estado del
+     *                      circuito
+     */
+    public UpstreamCircuitBreaker(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Publica el estado del circuito, una vez construido el componente.
+     */
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("spacex.upstream.breaker.state", this, breaker -> breaker.state().ordinal())
+                .description("Estado del circuit breaker de la API de SpaceX (0 cerrado, 1 entreabierto, 2 abierto)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Indica si se puede intentar una descarga. Con el circuito abierto retorna
+     * <code>false</code> hasta que vence el tiempo de espera; a partir de ahi
+     * autoriza una sola descarga de prueba por vez.
+     *
+     * @return <code>true</code> si se puede llamar a la API
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openMs * 1_000_000L) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probing) {
+                return false;
+            }
+            probing = true;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    /**
+     * Registra una descarga exitosa y cierra el circuito.
+     */
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            log.info("API de SpaceX recuperada, se cierra el circuito");
+        }
+        state = State.CLOSED;
+        failures = 0;
+        probing = false;
+    }
+
+    /**
+     * Registra una descarga fallida. Abre el circuito si falla la descarga de
+     * prueba o si se alcanza la cantidad de fallas consecutivas.
+     */
+    public synchronized void recordFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            if (state != State.OPEN) {
+                log.warn("API de SpaceX con {} fallas consecutivas, se abre el circuito por {} ms", failures,
+                        openMs);
+            }
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            probing = false;
+        }
+    }
+
+    /**
+     * Retorna el estado actual del circuito.
+     *
+     * @return el estado
+     */
+    public synchronized State state() {
+        return state;
+    }
+}
@@ -0,0 +1,99 @@
+package gaston.fernandez.spacex;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Utilidades de medicion para las clases <code>*Benchmark</code>, que solo se
+ * ejecutan con <code>mvn -Pbenchmark test</code>.
+ * <p>
+ * Las mediciones son de un solo proceso y sin aislar la JIT como haria JMH: se
+ * descartan las primeras rondas y se informa la mediana, lo que alcanza para
+ * comparar alternativas dentro de una misma corrida.
+ */
+public final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Tarea medida, que puede lanzar excepciones.
+     */
+    @FunctionalInterface
+    public interface Task {
+
+        /**
+         * Ejecuta la tarea.
+         *
+         * @throws Exception si la tarea falla
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * Ejecuta la tarea <code>warmup</code> veces sin medir y luego
+     * <code>rounds</code> veces midiendo cada una.
+     *
+     * @param warmup las rondas de calentamiento
+     * @param rounds las rondas medidas
+     * @param task   la tarea
+     * @return la mediana en nanosegundos de las rondas medidas
+     * @throws Exception si la tarea falla
+     */
+    public static long medianNanos(int warmup, int rounds, Task task) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            task.run();
+        }
+        long[] times = new long[rounds];
+        for (int i = 0; i < rounds; i++) {
+            long started = System.nanoTime();
+            task.run();
+            times[i] = System.nanoTime() - started;
+        }
+        Arrays.sort(times);
+        return times[rounds / 2];
+    }
+
+    /**
+     * Retorna la menor cantidad de bytes que reserva el hilo actual al ejecutar
+     * la tarea, entre varias ejecuciones, para descontar la carga de clases y el
+     * calentamiento. Solo cuenta lo que reserva el hilo que llama.
+     *
+     * @param task la tarea
+     * @return los bytes reservados
+     * @throws Exception si la tarea falla
+     */
+    public static long allocatedBytes(Task task) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            task.run();
+            min = Math.min(min, threads.getCurrentThreadAllocatedBytes() - before);
+        }
+        return min;
+    }
+
+    /**
+     * Retorna el heap usado despues de forzar varias recolecciones.
+     *
+     * @return los bytes de heap usados
+     */
+    public static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Convierte nanosegundos a microsegundos con un decimal, para los reportes.
+     *
+     * @param nanos los nanosegundos
+     * @return los microsegundos
+     */
+    public static double micros(long nanos) {
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+}
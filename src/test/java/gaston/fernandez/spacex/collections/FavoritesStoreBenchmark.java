@@ -0,0 +1,75 @@
+package gaston.fernandez.spacex.collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Altas y bajas concurrentes de favoritos: varios hilos escriben sobre un
+ * mismo usuario (maxima contencion) o cada uno sobre el suyo. Verifica que no
+ * se pierdan escrituras y reporta operaciones por segundo. Se ejecuta con
+ * <code>mvn -Pbenchmark test</code>.
+ */
+@Slf4j
+class FavoritesStoreBenchmark {
+
+    private static final int THREADS = 8;
+
+    private static final int PER_THREAD = 2_000;
+
+    @Test
+    void concurrentWritesOnOneUserAndOnSeparateUsers() throws Exception {
+        for (boolean shared : new boolean[] { true, false }) {
+            FavoritesStore store = new FavoritesStore();
+            long nanos = run(store, shared);
+
+            int total = 0;
+            for (int thread = 0; thread < (shared ? 1 : THREADS); thread++) {
+                total += store.get(shared ? "user" : "user" + thread).size();
+            }
+            // Cada hilo agrega PER_THREAD vuelos propios y quita la mitad.
+            assertThat(total).isEqualTo(THREADS * PER_THREAD / 2);
+            log.info("{} hilos, {}: {} ops/s", THREADS, shared ? "un usuario" : "un usuario por hilo",
+                    THREADS * PER_THREAD * 3L / 2 * 1_000_000_000L / nanos);
+        }
+    }
+
+    private static long run(FavoritesStore store, boolean shared) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                String user = shared ? "user" : "user" + thread;
+                int base = thread * PER_THREAD;
+                tasks.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < PER_THREAD; i++) {
+                        store.add(user, base + i);
+                    }
+                    for (int i = 0; i < PER_THREAD; i += 2) {
+                        store.remove(user, base + i);
+                    }
+                    return null;
+                }));
+            }
+            long started = System.nanoTime();
+            start.countDown();
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            return System.nanoTime() - started;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package gaston.fernandez.spacex.collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Semantica de conjunto y comportamiento concurrente del almacen de
+ * favoritos.
+ */
+class FavoritesStoreTest {
+
+    private static final int THREADS = 8;
+
+    private static final int FLIGHTS = 200;
+
+    @Test
+    void addAndRemoveHaveSetSemantics() {
+        FavoritesStore store = new FavoritesStore();
+
+        store.add("u", 5);
+        store.add("u", 1);
+        FavoritesList repeated = store.add("u", 5);
+
+        assertThat(flightNumbers(repeated)).containsExactly(1, 5);
+        assertThat(store.add("u", 5)).isSameAs(repeated);
+        assertThat(store.remove("u", 7)).isNull();
+        assertThat(flightNumbers(store.remove("u", 1))).containsExactly(5);
+        assertThat(store.get("other").isEmpty()).isTrue();
+    }
+
+    @Test
+    void removingTheLastFavoriteForgetsTheUser() {
+        FavoritesStore store = new FavoritesStore();
+        store.add("u", 1);
+        store.remove("u", 1);
+
+        List<String> users = new ArrayList<>();
+        store.forEach((user, list) -> users.add(user));
+
+        assertThat(users).isEmpty();
+        assertThat(store.get("u")).isSameAs(FavoritesList.EMPTY);
+    }
+
+    @Test
+    void concurrentAddsAndRemovesLoseNoUpdates() throws Exception {
+        FavoritesStore store = new FavoritesStore();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+        // Cada hilo agrega todos los vuelos de su particion y quita los impares;
+        // ademas todos agregan y quitan repetidamente el mismo vuelo compartido.
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            tasks.add(executor.submit(() -> {
+                start.await();
+                for (int i = thread; i < FLIGHTS * THREADS; i += THREADS) {
+                    store.add("shared", i);
+                    store.add("shared", -1);
+                    store.remove("shared", -1);
+                }
+                for (int i = thread; i < FLIGHTS * THREADS; i += THREADS) {
+                    if (i % 2 == 1) {
+                        store.remove("shared", i);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        executor.shutdown();
+
+        int[] expected = new int[FLIGHTS * THREADS / 2];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i * 2;
+        }
+        assertThat(flightNumbers(store.get("shared"))).containsExactly(expected);
+    }
+
+    @Test
+    void changeCallbacksRunInTheOrderTheChangesWereApplied() throws Exception {
+        FavoritesStore store = new FavoritesStore();
+        ConcurrentLinkedQueue<Integer> log = new ConcurrentLinkedQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+        // Todos los hilos compiten por los mismos pocos vuelos; el registro guarda
+        // las altas como positivos y las bajas como negativos.
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            tasks.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 5_000; i++) {
+                    int flightNumber = 1 + (i * 31 + thread) % 4;
+                    if ((i + thread) % 2 == 0) {
+                        store.add("u", flightNumber, () -> log.add(flightNumber));
+                    } else {
+                        store.remove("u", flightNumber, () -> log.add(-flightNumber));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        executor.shutdown();
+
+        FavoritesStore replayed = new FavoritesStore();
+        for (int entry : log) {
+            if (entry > 0) {
+                assertThat(replayed.get("u").contains(entry)).isFalse();
+                replayed.add("u", entry);
+            } else {
+                assertThat(replayed.remove("u", -entry)).isNotNull();
+            }
+        }
+        assertThat(flightNumbers(replayed.get("u"))).containsExactly(flightNumbers(store.get("u")));
+    }
+
+    @Test
+    void batchCallbacksRunInTheOrderTheBatchesWereApplied() throws Exception {
+        FavoritesStore store = new FavoritesStore();
+        ConcurrentLinkedQueue<Integer> log = new ConcurrentLinkedQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+        // Lotes de dos operaciones mezclados con altas y bajas sueltas sobre los
+        // mismos vuelos; cada lote registra solo las operaciones que cambiaron.
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            tasks.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 5_000; i++) {
+                    int flightNumber = 1 + (i * 31 + thread) % 4;
+                    if (thread % 2 == 0) {
+                        int[] flightNumbers = { flightNumber, 1 + flightNumber % 4 };
+                        boolean[] adds = { i % 2 == 0, i % 3 == 0 };
+                        boolean[] changed = new boolean[2];
+                        store.apply("u", flightNumbers, adds, changed, () -> {
+                            for (int j = 0; j < 2; j++) {
+                                if (changed[j]) {
+                                    log.add(adds[j] ? flightNumbers[j] : -flightNumbers[j]);
+                                }
+                            }
+                        });
+                    } else if (i % 2 == 0) {
+                        store.add("u", flightNumber, () -> log.add(flightNumber));
+                    } else {
+                        store.remove("u", flightNumber, () -> log.add(-flightNumber));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        executor.shutdown();
+
+        FavoritesStore replayed = new FavoritesStore();
+        for (int entry : log) {
+            if (entry > 0) {
+                assertThat(replayed.get("u").contains(entry)).isFalse();
+                replayed.add("u", entry);
+            } else {
+                assertThat(replayed.remove("u", -entry)).isNotNull();
+            }
+        }
+        assertThat(flightNumbers(replayed.get("u"))).containsExactly(flightNumbers(store.get("u")));
+    }
+
+    @Test
+    void readersAlwaysSeeSortedListsWithIncreasingVersions() throws Exception {
+        FavoritesStore store = new FavoritesStore();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ConcurrentLinkedQueue<String> problems = new ConcurrentLinkedQueue<>();
+        Thread reader = Thread.ofPlatform().start(() -> {
+            long lastVersion = -1;
+            while (writing.get()) {
+                FavoritesList list = store.get("u");
+                if (list.isEmpty()) {
+                    continue;
+                }
+                if (list.getVersion() < lastVersion) {
+                    problems.add("version " + list.getVersion() + " despues de " + lastVersion);
+                }
+                lastVersion = list.getVersion();
+                for (int i = 1; i < list.size(); i++) {
+                    if (list.flightNumberAt(i - 1) >= list.flightNumberAt(i)) {
+                        problems.add("lista desordenada o con repetidos");
+                    }
+                }
+            }
+        });
+        store.add("u", 0);
+        for (int round = 0; round < 2_000; round++) {
+            store.add("u", 1 + round % 50);
+            store.remove("u", 1 + (round * 7) % 50);
+        }
+        writing.set(false);
+        reader.join();
+
+        assertThat(problems).isEmpty();
+    }
+
+    private static int[] flightNumbers(FavoritesList list) {
+        int[] flightNumbers = new int[list.size()];
+        for (int i = 0; i < flightNumbers.length; i++) {
+            flightNumbers[i] = list.flightNumberAt(i);
+        }
+        return flightNumbers;
+    }
+}
@@ -0,0 +1,71 @@
+package gaston.fernandez.spacex.collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+
+import gaston.fernandez.spacex.Benchmarks;
+import gaston.fernandez.spacex.dtos.SpexLunches;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Busqueda de un lanzamiento por numero de vuelo: recorrer la lista con un
+ * stream, como antes, contra un HashMap con claves Integer y contra
+ * {@link FlightNumberIndex}. Se ejecuta con <code>mvn -Pbenchmark test</code>.
+ */
+@Slf4j
+class FlightNumberIndexBenchmark {
+
+    private static final int SIZE = 10_000;
+
+    private static final int LOOKUPS = 1_000;
+
+    @Test
+    void lookupByFlightNumber() throws Exception {
+        List<SpexLunches> lunches = new ArrayList<>(SIZE);
+        FlightNumberIndex index = new FlightNumberIndex(SIZE);
+        Map<Integer, Integer> map = new HashMap<>();
+        for (int row = 0; row < SIZE; row++) {
+            int flightNumber = row * 3 + 1;
+            lunches.add(new SpexLunches(flightNumber, "Mission " + flightNumber, null, null));
+            index.put(flightNumber, row);
+            map.put(flightNumber, row);
+        }
+        int[] keys = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            keys[i] = ThreadLocalRandom.current().nextInt(SIZE * 3);
+        }
+
+        long[] found = new long[3];
+        long stream = Benchmarks.medianNanos(5, 11, () -> {
+            for (int key : keys) {
+                found[0] += lunches.stream().filter(launch -> launch.flightNumber() == key).count();
+            }
+        });
+        long boxed = Benchmarks.medianNanos(50, 101, () -> {
+            for (int key : keys) {
+                found[1] += map.get(key) == null ? 0 : 1;
+            }
+        });
+        long primitive = Benchmarks.medianNanos(50, 101, () -> {
+            for (int key : keys) {
+                found[2] += index.get(key) == FlightNumberIndex.NOT_FOUND ? 0 : 1;
+            }
+        });
+
+        log.info("{} busquedas sobre {} lanzamientos, ns por busqueda", LOOKUPS, SIZE);
+        log.info("stream().filter: {} ns", stream / LOOKUPS);
+        log.info("HashMap<Integer, Integer>: {} ns", boxed / LOOKUPS);
+        log.info("FlightNumberIndex: {} ns", primitive / LOOKUPS);
+        // Cada variante se ejecuto rondas de calentamiento mas rondas medidas.
+        assertThat(found[2]).isEqualTo(found[1]);
+        assertThat(found[0] / 16).isEqualTo(found[2] / 151);
+        assertThat(primitive).isLessThan(stream);
+    }
+}
@@ -0,0 +1,79 @@
+package gaston.fernandez.spacex.collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import gaston.fernandez.spacex.dtos.Rocket;
+import gaston.fernandez.spacex.dtos.SpexLunches;
+
+/**
+ * Tabla columnar: paginado sin filtros, paginas resueltas por un indice y
+ * recorrido que se corta al completar la pagina.
+ */
+class LaunchTableTest {
+
+    private static final Rocket FALCON1 = new Rocket("falcon1", "Falcon 1", false, 6_700_000L, "SpaceX");
+
+    private static final Rocket FALCON9 = new Rocket("falcon9", "Falcon 9", true, 50_000_000L, "SpaceX");
+
+    private final LaunchTable table = LaunchTable.of(launches(20));
+
+    @Test
+    void unfilteredPageIsARangeOfRows() {
+        assertSelection(table.select(query(null, null, null, 5, 3), 1), 20, 5, 6, 7);
+        assertSelection(table.select(query(null, null, null, 18, 5), 1), 20, 18, 19);
+        assertSelection(table.select(query(null, null, null, 25, 5), 1), 20);
+    }
+
+    @Test
+    void singleIndexedFilterIsSlicedFromTheIndex() {
+        assertSelection(table.select(query("falcon9", null, null, 2, 3), 1), 10, 4, 6, 8);
+        assertSelection(table.select(query(null, false, null, 8, 5), 1), 10, 17, 19);
+        assertSelection(table.select(query(null, null, "mission 1", 0, 4), 1), 11, 0, 9, 10, 11);
+    }
+
+    @Test
+    void combinedFiltersFillThePageAndCountTheRest() {
+        // "Mission 1" y "Mission 10" a "Mission 19" con Falcon 9: filas 0, 10, 12, 14, 16 y 18.
+        for (int threshold : new int[] { 1, Integer.MAX_VALUE }) {
+            assertSelection(table.select(query(null, true, "mission 1", 1, 2), threshold), 6, 10, 12);
+            assertSelection(table.select(query(null, true, "mission 1", 4, 10), threshold), 6, 16, 18);
+            assertSelection(table.select(query(null, true, "mission 1", 0, 0), threshold), 6);
+            assertSelection(table.select(query(null, true, "mission 1", 9, 1), threshold), 6);
+        }
+    }
+
+    @Test
+    void repeatedMissionKeysAreReturnedInSnapshotOrder() {
+        List<SpexLunches> lunches = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            lunches.add(new SpexLunches(i, i % 3 == 0 ? "Beta" : "Alpha", null, i % 2 == 0 ? FALCON1 : FALCON9));
+        }
+        LaunchTable duplicated = LaunchTable.of(lunches);
+
+        assertSelection(duplicated.select(query(null, null, "alpha", 0, 10), 1), 6, 1, 2, 4, 5, 7, 8);
+        assertSelection(duplicated.select(query("falcon1", null, "beta", 0, 10), 1), 2, 0, 6);
+    }
+
+    private static void assertSelection(LaunchTable.Selection selection, int total, int... rows) {
+        assertThat(selection.total()).isEqualTo(total);
+        assertThat(selection.rows()).containsExactly(rows);
+    }
+
+    private static LaunchQuery query(String rocketId, Boolean active, String prefix, int offset, int limit) {
+        return new LaunchQuery(rocketId, active, null, null, prefix, offset, limit);
+    }
+
+    private static List<SpexLunches> launches(int count) {
+        List<SpexLunches> lunches = new ArrayList<>();
+        for (int flightNumber = 1; flightNumber <= count; flightNumber++) {
+            lunches.add(new SpexLunches(flightNumber, "Mission " + flightNumber, null,
+                    flightNumber % 2 == 0 ? FALCON1 : FALCON9));
+        }
+        return lunches;
+    }
+}
@@ -0,0 +1,189 @@
+package gaston.fernandez.spacex.collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import gaston.fernandez.spacex.dtos.Rocket;
+import gaston.fernandez.spacex.dtos.SpexLunches;
+
+/**
+ * Lista de lanzamientos fuera del heap: lectura, comparacion contra los
+ * registros nativos, diferencia entre fotos y memoria que ocupa.
+ */
+class OffHeapLaunchListTest {
+
+    private static final Rocket FALCON1 = new Rocket("falcon1", "Falcon 1", false, 6_700_000L, "SpaceX");
+
+    private static final Rocket FALCON9 = new Rocket("falcon9", "Falcon 9", true, 50_000_000L, "SpaceX");
+
+    @Test
+    void readsBackWhatWasWritten() {
+        SpexLunches[] rows = { new SpexLunches(1, "FalconSat", "Engine failure", FALCON1),
+                new SpexLunches(2, "DemoSat \u00e1\u00e9 \ud83d\ude80", null, FALCON9),
+                new SpexLunches(3, "", "", null) };
+
+        OffHeapLaunchList list = OffHeapLaunchList.of(rows);
+
+        assertThat(list).containsExactly(rows);
+        assertThat(list.flightNumberAt(1)).isEqualTo(2);
+        assertThat(list.get(0).rocket()).isSameAs(FALCON1);
+    }
+
+    @Test
+    void matchesComparesAgainstTheNativeRecord() {
+        SpexLunches launch = new SpexLunches(2, "DemoSat \u00e1\u00e9", "Details", FALCON9);
+        OffHeapLaunchList list = OffHeapLaunchList.of(new SpexLunches[] { launch,
+                new SpexLunches(3, "", null, null) });
+
+        assertThat(list.matches(0, new SpexLunches(2, new String("DemoSat \u00e1\u00e9"), "Details",
+                new Rocket("falcon9", "Falcon 9", true, 50_000_000L, "SpaceX")))).isTrue();
+        assertThat(list.matches(0, new SpexLunches(2, "DemoSat \u00e1\u00e8", "Details", FALCON9))).isFalse();
+        assertThat(list.matches(0, new SpexLunches(2, "DemoSat \u00e1\u00e9", "Detail", FALCON9))).isFalse();
+        assertThat(list.matches(0, new SpexLunches(2, "DemoSat \u00e1\u00e9", "Details!", FALCON9))).isFalse();
+        assertThat(list.matches(0, new SpexLunches(2, "DemoSat \u00e1\u00e9", null, FALCON9))).isFalse();
+        assertThat(list.matches(0, new SpexLunches(2, "DemoSat \u00e1\u00e9", "Details", FALCON1))).isFalse();
+        assertThat(list.matches(0, new SpexLunches(4, "DemoSat \u00e1\u00e9", "Details", FALCON9))).isFalse();
+        assertThat(list.matches(1, new SpexLunches(3, "", null, null))).isTrue();
+        assertThat(list.matches(1, new SpexLunches(3, null, null, null))).isFalse();
+        assertThat(list.matches(1, new SpexLunches(3, "", "", null))).isFalse();
+        assertThat(list.matches(1, new SpexLunches(3, "", null, FALCON1))).isFalse();
+    }
+
+    @Test
+    void unchangedRefreshReusesThePreviousSnapshot() {
+        AtomicInteger serialized = new AtomicInteger();
+        LaunchSnapshot previous = LaunchSnapshot.of(launches(1_000, -1), null, counting(serialized), true,
+                Instant.now());
+        serialized.set(0);
+
+        LaunchSnapshot next = LaunchSnapshot.of(launches(1_000, -1), previous, counting(serialized), true,
+                Instant.now());
+
+        assertThat(next.lunches()).isSameAs(previous.lunches());
+        assertThat(next.payload()).isSameAs(previous.payload());
+        assertThat(next.diff().isEmpty()).isTrue();
+        assertThat(serialized).hasValue(0);
+    }
+
+    @Test
+    void changedRowsAreTheOnlyOnesSerializedAgain() {
+        AtomicInteger serialized = new AtomicInteger();
+        LaunchSnapshot previous = LaunchSnapshot.of(launches(1_000, -1), null, counting(serialized), true,
+                Instant.now());
+        serialized.set(0);
+
+        List<SpexLunches> changed = launches(1_000, 500);
+        changed.set(10, new SpexLunches(11, "Mission 11", "Details 11", FALCON1));
+        changed.set(20, new SpexLunches(21, "Mission 21 \u00e1", "Details 21", FALCON9));
+        changed.set(30, new SpexLunches(31, "Mission 31", null, FALCON9));
+        LaunchSnapshot next = LaunchSnapshot.of(changed, previous, counting(serialized), true, Instant.now());
+
+        assertThat(next.diff().changed()).containsExactly(11, 21, 31, 501);
+        assertThat(next.diff().added()).isEmpty();
+        assertThat(next.diff().removed()).isEmpty();
+        assertThat(serialized).hasValue(4);
+        LaunchSnapshot onHeap = LaunchSnapshot.of(changed, null, OffHeapLaunchListTest::toJson, false,
+                Instant.now());
+        assertThat(next.payload().json()).isEqualTo(onHeap.payload().json());
+    }
+
+    @Test
+    void diffDoesNotBuildThePreviousLaunches() {
+        int size = 20_000;
+        LaunchSnapshot previous = LaunchSnapshot.of(launches(size, -1), null, OffHeapLaunchListTest::toJson, true,
+                Instant.now());
+        List<SpexLunches> next = launches(size, -1);
+        // Calentamiento, para no medir la carga de clases ni la compilacion.
+        for (int i = 0; i < 3; i++) {
+            LaunchSnapshot.of(next, previous, OffHeapLaunchListTest::toJson, true, Instant.now());
+            readAll(previous.lunches());
+        }
+
+        long diffBytes = allocatedBytes(
+                () -> LaunchSnapshot.of(next, previous, OffHeapLaunchListTest::toJson, true, Instant.now()));
+        long readBytes = allocatedBytes(() -> readAll(previous.lunches()));
+
+        // Sin cambios no se arma una lista nueva ni se serializa nada: solo se asignan
+        // los arreglos por fila de la diferencia. Antes de comparar contra los
+        // registros nativos ademas se armaba cada lanzamiento anterior, que cuesta al
+        // menos lo mismo que leerlos todos.
+        assertThat(diffBytes).isLessThan(readBytes);
+    }
+
+    @Test
+    void launchesOffHeapDoNotStayOnTheHeap() {
+        int size = 200_000;
+        long baseline = usedHeapAfterGc();
+        List<SpexLunches> onHeap = List.copyOf(launches(size, -1));
+        long onHeapBytes = usedHeapAfterGc() - baseline;
+        assertThat(onHeap).hasSize(size);
+        onHeap = null;
+
+        baseline = usedHeapAfterGc();
+        OffHeapLaunchList offHeap = OffHeapLaunchList.of(launches(size, -1).toArray(new SpexLunches[0]));
+        long offHeapBytes = usedHeapAfterGc() - baseline;
+
+        assertThat(offHeap.nativeBytes()).isGreaterThan(size * 32L);
+        assertThat(offHeapBytes).isLessThan(onHeapBytes / 4);
+    }
+
+    /**
+     * Arma lanzamientos con textos nuevos en cada llamada, como los que llegan en
+     * cada descarga. El lanzamiento <code>changed</code> (base 0) se arma con
+     * otros detalles.
+     */
+    private static List<SpexLunches> launches(int count, int changed) {
+        List<SpexLunches> launches = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            launches.add(new SpexLunches(i, "Mission " + i, (i - 1 == changed ? "Scrubbed " : "Details ") + i,
+                    i % 2 == 0 ? FALCON1 : FALCON9));
+        }
+        return launches;
+    }
+
+    private static Function<SpexLunches, byte[]> counting(AtomicInteger serialized) {
+        return launch -> {
+            serialized.incrementAndGet();
+            return toJson(launch);
+        };
+    }
+
+    private static byte[] toJson(SpexLunches launch) {
+        return ("{\"flight_number\":" + launch.flightNumber() + ",\"mission_name\":\"" + launch.missionName()
+                + "\",\"details\":\"" + launch.details() + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void readAll(List<SpexLunches> lunches) {
+        for (SpexLunches launch : lunches) {
+            if (launch.missionName() == null) {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    private static long allocatedBytes(Runnable task) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        task.run();
+        return threads.getCurrentThreadAllocatedBytes() - before;
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
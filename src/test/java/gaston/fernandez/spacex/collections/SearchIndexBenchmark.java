@@ -0,0 +1,92 @@
+package gaston.fernandez.spacex.collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import gaston.fernandez.spacex.Benchmarks;
+import gaston.fernandez.spacex.dtos.SpexLunches;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Consultas sobre el indice invertido contra un recorrido de todos los
+ * lanzamientos, con 100000 lanzamientos sinteticos: un termino, dos terminos y
+ * un prefijo amplio. Tambien mide el costo de actualizar el indice cuando
+ * cambia un lanzamiento. Se ejecuta con <code>mvn -Pbenchmark test</code>.
+ */
+@Slf4j
+class SearchIndexBenchmark {
+
+    private static final int SIZE = 100_000;
+
+    private static final String[] WORDS = { "falcon", "dragon", "starlink", "satellite", "orbit", "landing",
+            "booster", "crew", "cargo", "station", "mission", "payload", "fairing", "engine", "failure", "success",
+            "ocean", "drone", "ship", "recovery", "geostationary", "transfer", "polar", "demo", "test" };
+
+    @Test
+    void queriesAgainstABruteForceScan() throws Exception {
+        SpexLunches[] launches = new SpexLunches[SIZE + 1];
+        Random random = new Random(42);
+        int[] added = new int[SIZE];
+        for (int flightNumber = 1; flightNumber <= SIZE; flightNumber++) {
+            launches[flightNumber] = new SpexLunches(flightNumber, text(random, 3), text(random, 12), null);
+            added[flightNumber - 1] = flightNumber;
+        }
+        SearchIndex index = SearchIndex.update(null, new SnapshotDiff(added, new int[0], new int[0]),
+                flightNumber -> launches[flightNumber]);
+
+        for (String query : new String[] { "geostationary", "drone ship", "sta*" }) {
+            int expected = scan(launches, query);
+            assertThat(index.search(query, 10).total()).isEqualTo(expected);
+            long indexed = Benchmarks.medianNanos(50, 101, () -> index.search(query, 10));
+            long scanned = Benchmarks.medianNanos(2, 5, () -> scan(launches, query));
+            log.info("\"{}\": {} coincidencias, indice {} us, recorrido {} us", query, expected,
+                    Benchmarks.micros(indexed), Benchmarks.micros(scanned));
+        }
+
+        long update = Benchmarks.medianNanos(5, 11, () -> {
+            launches[500] = new SpexLunches(500, text(random, 3), text(random, 12), null);
+            SearchIndex.update(index, new SnapshotDiff(new int[0], new int[] { 500 }, new int[0]),
+                    flightNumber -> launches[flightNumber]);
+        });
+        long rebuild = Benchmarks.medianNanos(1, 3, () -> SearchIndex.update(null,
+                new SnapshotDiff(added, new int[0], new int[0]), flightNumber -> launches[flightNumber]));
+        log.info("Un lanzamiento modificado: actualizacion {} ms, reconstruccion completa {} ms",
+                update / 1_000_000, rebuild / 1_000_000);
+    }
+
+    private static String text(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Cuenta los lanzamientos cuya mision o detalles contienen todos los
+     * terminos, como haria un filtro sin indice.
+     */
+    private static int scan(SpexLunches[] launches, String query) {
+        String[] terms = query.toLowerCase(Locale.ROOT).split(" ");
+        int count = 0;
+        for (int flightNumber = 1; flightNumber < launches.length; flightNumber++) {
+            String[] words = (launches[flightNumber].missionName() + " " + launches[flightNumber].details())
+                    .toLowerCase(Locale.ROOT).split(" ");
+            boolean all = true;
+            for (String term : terms) {
+                boolean found = false;
+                for (String word : words) {
+                    found |= term.endsWith("*") ? word.startsWith(term.substring(0, term.length() - 1))
+                            : word.equals(term);
+                }
+                all &= found;
+            }
+            count += all ? 1 : 0;
+        }
+        return count;
+    }
+}
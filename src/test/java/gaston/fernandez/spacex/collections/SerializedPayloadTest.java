@@ -0,0 +1,58 @@
+package gaston.fernandez.spacex.collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compresion diferida del cuerpo serializado y negociacion de gzip.
+ */
+class SerializedPayloadTest {
+
+    private static final byte[] JSON = "[{\"flight_number\":1}]".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void gzipIsComputedOnceOnDemand() throws Exception {
+        SerializedPayload payload = SerializedPayload.of(JSON);
+
+        byte[] gzip = payload.body(true);
+
+        assertThat(payload.body(true)).isSameAs(gzip);
+        assertThat(payload.body(false)).isSameAs(JSON);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            assertThat(in.readAllBytes()).isEqualTo(JSON);
+        }
+    }
+
+    @Test
+    void precomputedAndLazyPayloadsShareTheirEtags() {
+        SerializedPayload lazy = SerializedPayload.of(JSON);
+        SerializedPayload precomputed = SerializedPayload.precomputed(JSON);
+
+        assertThat(lazy.etag()).isEqualTo(precomputed.etag()).startsWith("\"").endsWith("\"");
+        assertThat(lazy.etag(true)).isEqualTo(precomputed.etag(true)).endsWith("-gzip\"");
+        assertThat(lazy.matches("W/" + lazy.etag() + ", \"other\"", false)).isTrue();
+        assertThat(lazy.matches(lazy.etag(), true)).isFalse();
+    }
+
+    @Test
+    void acceptEncodingWeightsAreRespected() {
+        assertThat(SerializedPayload.acceptsGzip(null)).isFalse();
+        assertThat(SerializedPayload.acceptsGzip("")).isFalse();
+        assertThat(SerializedPayload.acceptsGzip("gzip")).isTrue();
+        assertThat(SerializedPayload.acceptsGzip("GZIP, deflate, br")).isTrue();
+        assertThat(SerializedPayload.acceptsGzip("x-gzip")).isTrue();
+        assertThat(SerializedPayload.acceptsGzip("gzip;q=0.5")).isTrue();
+        assertThat(SerializedPayload.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(SerializedPayload.acceptsGzip("gzip; Q=0.000, br")).isFalse();
+        assertThat(SerializedPayload.acceptsGzip("gzip;q=abc")).isFalse();
+        assertThat(SerializedPayload.acceptsGzip("br;q=1, *;q=0.1")).isTrue();
+        assertThat(SerializedPayload.acceptsGzip("*;q=0")).isFalse();
+        assertThat(SerializedPayload.acceptsGzip("gzip;q=0, *")).isFalse();
+        assertThat(SerializedPayload.acceptsGzip("identity, gzipfoo")).isFalse();
+    }
+}
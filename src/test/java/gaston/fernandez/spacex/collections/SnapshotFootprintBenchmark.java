@@ -0,0 +1,120 @@
+package gaston.fernandez.spacex.collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import gaston.fernandez.spacex.dtos.Rocket;
+import gaston.fernandez.spacex.dtos.SpexLunches;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compara la memoria que retiene el servicio y el trabajo del GC con el
+ * snapshot en el heap y fuera del heap. Se ejecuta con
+ * <code>mvn -Pbenchmark test</code>.
+ * <p>
+ * En el heap el servicio retiene la lista descargada (para reasociarla si solo
+ * cambian los cohetes) y la lista del snapshot; fuera del heap solo retiene el
+ * snapshot. En ambos casos el JSON serializado, la tabla columnar y el indice de
+ * texto quedan en el heap. Cada refresco descarga objetos nuevos con un
+ * lanzamiento modificado, como en produccion.
+ */
+@Slf4j
+class SnapshotFootprintBenchmark {
+
+    private static final int SIZE = 200_000;
+
+    private static final int REFRESHES = 20;
+
+    private static final Rocket FALCON1 = new Rocket("falcon1", "Falcon 1", false, 6_700_000L, "SpaceX");
+
+    private static final Rocket FALCON9 = new Rocket("falcon9", "Falcon 9", true, 50_000_000L, "SpaceX");
+
+    @Test
+    void heapVersusOffHeap() {
+        Result heap = measure(false);
+        Result offHeap = measure(true);
+
+        log.info("Snapshot de {} lanzamientos, {} refrescos", SIZE, REFRESHES);
+        log.info("heap:     retenido {} MB, nativo {} MB, {} GCs, {} ms de GC", heap.retainedMb(), heap.nativeMb(),
+                heap.collections(), heap.gcMs());
+        log.info("off-heap: retenido {} MB, nativo {} MB, {} GCs, {} ms de GC", offHeap.retainedMb(),
+                offHeap.nativeMb(), offHeap.collections(), offHeap.gcMs());
+        assertThat(offHeap.retainedMb()).isLessThan(heap.retainedMb());
+    }
+
+    private static Result measure(boolean offHeap) {
+        long baseline = usedHeapAfterGc();
+        List<SpexLunches> downloaded = launches(-1);
+        LaunchSnapshot snapshot = LaunchSnapshot.of(downloaded, null, SnapshotFootprintBenchmark::toJson, offHeap,
+                Instant.now());
+        List<SpexLunches> cached = offHeap ? null : downloaded;
+        downloaded = null;
+        long retained = usedHeapAfterGc() - baseline;
+
+        long collections = collections();
+        long gcMs = gcMillis();
+        for (int refresh = 0; refresh < REFRESHES; refresh++) {
+            downloaded = launches(refresh);
+            snapshot = LaunchSnapshot.of(downloaded, snapshot, SnapshotFootprintBenchmark::toJson, offHeap,
+                    Instant.now());
+            cached = offHeap ? null : downloaded;
+        }
+        Result result = new Result(retained >> 20,
+                snapshot.lunches() instanceof OffHeapLaunchList list ? list.nativeBytes() >> 20 : 0,
+                collections() - collections, gcMillis() - gcMs);
+        assertThat(cached == null || cached.size() == SIZE).isTrue();
+        return result;
+    }
+
+    /**
+     * Arma lanzamientos con textos nuevos en cada llamada. El lanzamiento
+     * <code>changed</code> (base 0) se arma con otros detalles.
+     */
+    private static List<SpexLunches> launches(int changed) {
+        List<SpexLunches> launches = new ArrayList<>(SIZE);
+        for (int i = 1; i <= SIZE; i++) {
+            launches.add(new SpexLunches(i, "Mission " + i, (i - 1 == changed ? "Scrubbed " : "Details ") + i,
+                    i % 2 == 0 ? FALCON1 : FALCON9));
+        }
+        return launches;
+    }
+
+    private static byte[] toJson(SpexLunches launch) {
+        return ("{\"flight_number\":" + launch.flightNumber() + ",\"mission_name\":\"" + launch.missionName()
+                + "\",\"details\":\"" + launch.details() + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private record Result(long retainedMb, long nativeMb, long collections, long gcMs) {
+    }
+}
@@ -0,0 +1,58 @@
+package gaston.fernandez.spacex.dtos;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import gaston.fernandez.spacex.Benchmarks;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Memoria que retienen los lanzamientos cuando cada uno tiene su propia copia
+ * del cohete, como cuando se deserializaba un Rocket por lanzamiento, contra
+ * records que comparten una instancia por cohete. Se ejecuta con
+ * <code>mvn -Pbenchmark test</code>.
+ */
+@Slf4j
+class LaunchFootprintBenchmark {
+
+    private static final int SIZE = 200_000;
+
+    @Test
+    void rocketPerLaunchVersusSharedRocket() {
+        long baseline = Benchmarks.usedHeapAfterGc();
+        List<SpexLunches> copies = launches(false);
+        long copiesBytes = Benchmarks.usedHeapAfterGc() - baseline;
+        assertThat(copies).hasSize(SIZE);
+        copies = null;
+
+        baseline = Benchmarks.usedHeapAfterGc();
+        List<SpexLunches> shared = launches(true);
+        long sharedBytes = Benchmarks.usedHeapAfterGc() - baseline;
+        assertThat(shared).hasSize(SIZE);
+
+        log.info("{} lanzamientos", SIZE);
+        log.info("Un Rocket por lanzamiento: {} MB, {} bytes por lanzamiento", copiesBytes >> 20,
+                copiesBytes / SIZE);
+        log.info("Rocket compartido: {} MB, {} bytes por lanzamiento", sharedBytes >> 20, sharedBytes / SIZE);
+        assertThat(sharedBytes).isLessThan(copiesBytes);
+    }
+
+    /**
+     * Arma lanzamientos con textos nuevos, como los que llegan en cada descarga.
+     */
+    private static List<SpexLunches> launches(boolean sharedRocket) {
+        Rocket falcon9 = new Rocket("falcon9", "Falcon 9", true, 50_000_000L, "SpaceX");
+        List<SpexLunches> launches = new ArrayList<>(SIZE);
+        for (int i = 1; i <= SIZE; i++) {
+            Rocket rocket = sharedRocket ? falcon9
+                    : new Rocket(new String("falcon9"), new String("Falcon 9"), true, 50_000_000L,
+                            new String("SpaceX"));
+            launches.add(new SpexLunches(i, "Mission " + i, "Details " + i, rocket));
+        }
+        return launches;
+    }
+}
@@ -0,0 +1,84 @@
+package gaston.fernandez.spacex.dtos;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import gaston.fernandez.spacex.collections.RocketDictionary;
+
+/**
+ * Cohete de cada lanzamiento resuelto contra el diccionario durante el parseo:
+ * instancias compartidas, cohetes desconocidos y memoria que se reserva.
+ */
+class RocketReferenceDeserializerTest {
+
+    private static final Rocket FALCON9 = new Rocket("falcon9", "Falcon 9", true, 50_000_000L, "SpaceX");
+
+    private final ObjectReader reader = new ObjectMapper().readerForListOf(SpexLunches.class);
+
+    private final ObjectReader dictionaryReader = reader.withAttribute(RocketReferenceDeserializer.DICTIONARY_ATTRIBUTE,
+            RocketDictionary.of(Map.of("falcon9", FALCON9)));
+
+    @Test
+    void knownRocketsResolveToTheSharedInstance() throws Exception {
+        List<SpexLunches> lunches = dictionaryReader.readValue(launches(3, "falcon9"));
+
+        assertThat(lunches).extracting(SpexLunches::rocket).containsOnly(FALCON9);
+        assertThat(lunches.get(0).rocket()).isSameAs(FALCON9).isSameAs(lunches.get(2).rocket());
+    }
+
+    @Test
+    void unknownRocketKeepsOnlyTheIdSoTheServiceCanCountIt() throws Exception {
+        List<SpexLunches> lunches = dictionaryReader.readValue(launches(1, "bfr"));
+
+        assertThat(lunches.get(0).rocket()).isEqualTo(new Rocket("bfr", null, false, 0L, null));
+    }
+
+    @Test
+    void resolvingAgainstTheDictionaryAllocatesLessThanAFullRocketPerLaunch() throws Exception {
+        int count = 5_000;
+        String json = launches(count, "falcon9");
+
+        long shared = minAllocatedBytes(() -> dictionaryReader.readValue(json));
+        long full = minAllocatedBytes(() -> reader.readValue(json));
+
+        // Cada Rocket completo reserva al menos el objeto y los textos del nombre y la empresa.
+        assertThat(full - shared).isGreaterThan(count * 64L);
+    }
+
+    private static String launches(int count, String rocketId) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 1; i <= count; i++) {
+            json.append(i == 1 ? "" : ",").append("{\"flight_number\":").append(i)
+                    .append(",\"mission_name\":\"Mission ").append(i).append("\",\"details\":null,")
+                    .append("\"rocket\":{\"rocket_id\":\"").append(rocketId)
+                    .append("\",\"rocket_name\":\"Falcon 9\",\"active\":true,\"cost_per_launch\":50000000,")
+                    .append("\"company\":\"SpaceX\",\"first_stage\":{\"cores\":[{\"core_serial\":\"B1\"}]}}}");
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Retorna la menor cantidad de bytes reservados por el hilo en varias
+     * ejecuciones, para descontar la carga de clases y el calentamiento.
+     */
+    private static long minAllocatedBytes(Callable<?> task) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            task.call();
+            min = Math.min(min, threads.getCurrentThreadAllocatedBytes() - before);
+        }
+        return min;
+    }
+}
@@ -0,0 +1,250 @@
+package gaston.fernandez.spacex.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import gaston.fernandez.spacex.Benchmarks;
+import gaston.fernandez.spacex.SpacexApplication;
+import gaston.fernandez.spacex.controllers.SpexResponses;
+import gaston.fernandez.spacex.dtos.FavoriteOperation;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Prueba de carga de la aplicacion completa contra un {@link UpstreamStub}:
+ * clientes HTTP concurrentes sobre el servidor real, con la API de SpaceX
+ * demorada. Reporta latencias y requests por segundo, y compara el alta de
+ * favoritos de a uno contra el endpoint por lotes. Se ejecuta con
+ * <code>mvn -Pbenchmark test</code>.
+ */
+@Slf4j
+class ApplicationLoadBenchmark {
+
+    private static final int CLIENTS = 200;
+
+    private static final int REQUESTS = 4_000;
+
+    private UpstreamStub stub;
+
+    private ExecutorService clients;
+
+    private HttpClient http;
+
+    @BeforeEach
+    void start() throws Exception {
+        stub = new UpstreamStub();
+        stub.delay(UpstreamStub.LAUNCHES, 200);
+        stub.delay(UpstreamStub.ROCKETS, 200);
+        clients = Executors.newVirtualThreadPerTaskExecutor();
+        http = HttpClient.newBuilder().executor(clients).build();
+    }
+
+    @AfterEach
+    void stop() {
+        http.close();
+        clients.shutdownNow();
+        stub.close();
+    }
+
+    @Test
+    void servletOnVirtualThreads() throws Exception {
+        try (ConfigurableApplicationContext context = startApplication()) {
+            lunchesUnderLoad("Servlet con hilos virtuales", baseUrl(context));
+        }
+    }
+
+    @Test
+    void reactiveOnNetty() throws Exception {
+        try (ConfigurableApplicationContext context = startApplication("--spring.profiles.active=reactive")) {
+            lunchesUnderLoad("WebFlux sobre Netty", baseUrl(context));
+        }
+    }
+
+    /**
+     * Alta y baja de 200 favoritos por una sola conexion: una peticion PUT o
+     * DELETE por vuelo contra dos POST a <code>/favorites/batch</code>.
+     */
+    @Test
+    void favoritesPerItemVersusBatch() throws Exception {
+        int favorites = 200;
+        stub.body(UpstreamStub.LAUNCHES, UpstreamStub.launches(favorites));
+        try (ConfigurableApplicationContext context = startApplication()) {
+            String baseUrl = baseUrl(context);
+            send(HttpRequest.newBuilder(URI.create(baseUrl + "/lunches")).GET().build());
+
+            long[] perItemBytes = new long[1];
+            long perItem = Benchmarks.medianNanos(1, 5, () -> {
+                perItemBytes[0] = 0;
+                for (String method : new String[] { "PUT", "DELETE" }) {
+                    for (int flightNumber = 1; flightNumber <= favorites; flightNumber++) {
+                        perItemBytes[0] += send(favorites(baseUrl + "/favorites/" + flightNumber)
+                                .method(method, HttpRequest.BodyPublishers.noBody()).build());
+                    }
+                }
+            });
+            long[] batchBytes = new long[1];
+            long batch = Benchmarks.medianNanos(1, 5, () -> {
+                batchBytes[0] = 0;
+                for (String op : new String[] { FavoriteOperation.ADD, FavoriteOperation.REMOVE }) {
+                    StringBuilder body = new StringBuilder("[");
+                    for (int flightNumber = 1; flightNumber <= favorites; flightNumber++) {
+                        body.append(flightNumber == 1 ? "" : ",").append("{\"op\":\"").append(op)
+                                .append("\",\"flight_number\":").append(flightNumber).append('}');
+                    }
+                    batchBytes[0] += send(favorites(baseUrl + "/favorites/batch")
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .POST(HttpRequest.BodyPublishers.ofString(body.append(']').toString())).build());
+                }
+            });
+
+            log.info("{} altas y {} bajas de favoritos en una conexion", favorites, favorites);
+            log.info("PUT/DELETE por vuelo: {} ms, {} ops/s, {} KB de respuestas", perItem / 1_000_000,
+                    2L * favorites * 1_000_000_000L / perItem, perItemBytes[0] >> 10);
+            log.info("POST /favorites/batch: {} ms, {} ops/s, {} KB de respuestas", batch / 1_000_000,
+                    2L * favorites * 1_000_000_000L / batch, batchBytes[0] >> 10);
+            assertThat(batch).isLessThan(perItem);
+        }
+    }
+
+    private static HttpRequest.Builder favorites(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).header(SpexResponses.USER_HEADER, "benchmark");
+    }
+
+    /**
+     * Envia la peticion y retorna el largo del cuerpo de la respuesta. Falla si
+     * la respuesta es un error.
+     */
+    private long send(HttpRequest request) throws Exception {
+        HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        assertThat(response.statusCode()).isLessThan(400);
+        return response.body().length;
+    }
+
+    /**
+     * Pide <code>/lunches</code> antes y despues de que exista el snapshot, y una
+     * pagina filtrada que se arma en cada request.
+     */
+    private void lunchesUnderLoad(String server, String baseUrl) throws Exception {
+        Stats cold = load(baseUrl + "/lunches", CLIENTS, CLIENTS);
+        Stats warm = load(baseUrl + "/lunches", CLIENTS, REQUESTS);
+        Stats filtered = load(baseUrl + "/lunches?active=true&mission=mission%201&limit=5&fields=flight_number",
+                CLIENTS, REQUESTS);
+
+        log.info("{}, {} clientes concurrentes", server, CLIENTS);
+        report("sin snapshot", cold);
+        report("con snapshot", warm);
+        report("filtrado y proyectado", filtered);
+        log.info("Peticiones a la API de SpaceX: {} lanzamientos, {} cohetes", stub.requests(UpstreamStub.LAUNCHES),
+                stub.requests(UpstreamStub.ROCKETS));
+        assertThat(cold.errors() + warm.errors() + filtered.errors()).isZero();
+    }
+
+    /**
+     * Arranca la aplicacion en un puerto libre, apuntando al stub y sin
+     * persistencia de favoritos. Los argumentos tienen la forma
+     * <code>--propiedad=valor</code>.
+     */
+    private ConfigurableApplicationContext startApplication(String... arguments) {
+        // Como argumentos de linea de comandos, para que tengan prioridad sobre el .env.
+        List<String> all = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--LAUNCHES_URL=" + stub.url(UpstreamStub.LAUNCHES),
+                "--ROCKETS_URL=" + stub.url(UpstreamStub.ROCKETS),
+                "--spacex.favorites.persistence.enabled=false",
+                "--logging.level.org.springframework=WARN"));
+        all.addAll(Arrays.asList(arguments));
+        return new SpringApplicationBuilder(BenchmarkApplication.class).run(all.toArray(new String[0]));
+    }
+
+    private static String baseUrl(ConfigurableApplicationContext context) {
+        return "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port");
+    }
+
+    /**
+     * Envia <code>requests</code> GET a la URL desde <code>concurrency</code>
+     * clientes a la vez.
+     */
+    private Stats load(String url, int concurrency, int requests) throws Exception {
+        return load(concurrency, requests, HttpRequest.newBuilder(URI.create(url)).GET().build());
+    }
+
+    /**
+     * Envia <code>requests</code> peticiones desde <code>concurrency</code>
+     * clientes a la vez, repartiendo las peticiones indicadas en orden.
+     */
+    Stats load(int concurrency, int requests, HttpRequest... templates) throws Exception {
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>();
+        long started = System.nanoTime();
+        for (int worker = 0; worker < concurrency; worker++) {
+            workers.add(clients.submit(() -> {
+                for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                    long sent = System.nanoTime();
+                    HttpResponse<byte[]> response = http.send(templates[i % templates.length],
+                            HttpResponse.BodyHandlers.ofByteArray());
+                    latencies[i] = System.nanoTime() - sent;
+                    if (response.statusCode() >= 400) {
+                        errors.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        long elapsed = System.nanoTime() - started;
+        Arrays.sort(latencies);
+        return new Stats(requests, elapsed, latencies[requests / 2], latencies[requests * 99 / 100],
+                errors.get());
+    }
+
+    static void report(String scenario, Stats stats) {
+        log.info("{}: {} requests, {} req/s, p50 {} ms, p99 {} ms, {} errores", scenario, stats.requests(),
+                stats.requests() * 1_000_000_000L / stats.elapsedNanos(), stats.p50Nanos() / 1_000_000,
+                stats.p99Nanos() / 1_000_000, stats.errors());
+    }
+
+    record Stats(int requests, long elapsedNanos, long p50Nanos, long p99Nanos, int errors) {
+    }
+
+    /**
+     * La misma configuracion que {@link SpacexApplication}, sin el contexto de
+     * los tests del servicio, que tambien esta en el classpath de tests.
+     */
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EnableScheduling
+    @ComponentScan(basePackageClasses = SpacexApplication.class, excludeFilters = {
+            @ComponentScan.Filter(type = FilterType.CUSTOM, classes = TypeExcludeFilter.class),
+            @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = { SpacexApplication.class,
+                    SpexServiceTestConfig.class }) })
+    static class BenchmarkApplication {
+    }
+}
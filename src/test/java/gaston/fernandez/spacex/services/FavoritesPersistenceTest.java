@@ -0,0 +1,155 @@
+package gaston.fernandez.spacex.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import gaston.fernandez.spacex.collections.FavoritesList;
+import gaston.fernandez.spacex.collections.FavoritesStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Recuperacion de los favoritos persistidos cuando la compactacion ocurre
+ * mientras se escriben cambios.
+ */
+class FavoritesPersistenceTest {
+
+    private static final long NEVER = 3_600_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void compactionWaitsForUpdatesWhoseOperationsAreAlreadyInTheWal() throws Exception {
+        FavoritesStore store = new FavoritesStore();
+        MeterRegistry registry = new SimpleMeterRegistry();
+        FavoritesPersistence persistence = start(store, registry, NEVER);
+        CountDownLatch logged = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // El alta queda registrada en el WAL pero su lista todavia no es visible.
+        Thread update = Thread.ofPlatform().start(() -> {
+            try (FavoritesPersistence.Reservation wal = persistence.reserve(1)) {
+                store.add("u", 7, () -> {
+                    wal.logAdd("u", 7);
+                    logged.countDown();
+                    awaitUninterruptibly(release);
+                });
+            }
+        });
+        logged.await();
+        while (registry.get("spacex.favorites.wal.flush").timer().count() == 0) {
+            Thread.sleep(5);
+        }
+        long generation = (long) ReflectionTestUtils.getField(persistence, "walGeneration");
+        Thread compaction = Thread.ofPlatform()
+                .start(() -> ReflectionTestUtils.invokeMethod(persistence, "compact", generation + 1));
+        compaction.join(500);
+        release.countDown();
+        update.join();
+        compaction.join();
+
+        // Se recupera sin detener la instancia anterior, como despues de una caida.
+        FavoritesStore recovered = new FavoritesStore();
+        FavoritesPersistence restarted = start(recovered, new SimpleMeterRegistry(), NEVER);
+        assertThat(recovered.get("u").contains(7)).isTrue();
+        restarted.stop();
+        persistence.stop();
+    }
+
+    @Test
+    void concurrentWritesDuringCompactionAreRecovered() throws Exception {
+        FavoritesStore store = new FavoritesStore();
+        // Con un intervalo de 1 ms el escritor compacta despues de cada lote.
+        FavoritesPersistence persistence = start(store, new SimpleMeterRegistry(), 1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            tasks.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 2_000; i++) {
+                    String user = "user-" + random.nextInt(16);
+                    int flightNumber = 1 + random.nextInt(32);
+                    try (FavoritesPersistence.Reservation wal = persistence.reserve(1)) {
+                        if (random.nextBoolean()) {
+                            store.add(user, flightNumber, () -> wal.logAdd(user, flightNumber));
+                        } else {
+                            store.remove(user, flightNumber, () -> wal.logRemove(user, flightNumber));
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        executor.shutdown();
+        persistence.stop();
+
+        FavoritesStore recovered = new FavoritesStore();
+        FavoritesPersistence restarted = start(recovered, new SimpleMeterRegistry(), NEVER);
+        assertThat(contents(recovered)).isEqualTo(contents(store));
+        assertThat(restarted.health().getStatus().getCode()).isEqualTo("UP");
+        restarted.stop();
+    }
+
+    private FavoritesPersistence start(FavoritesStore store, MeterRegistry registry, long compactIntervalMs)
+            throws Exception {
+        FavoritesPersistence persistence = new FavoritesPersistence(store, registry);
+        ReflectionTestUtils.setField(persistence, "enabled", true);
+        ReflectionTestUtils.setField(persistence, "directory", directory.toString());
+        ReflectionTestUtils.setField(persistence, "batchSize", 1024);
+        ReflectionTestUtils.setField(persistence, "compactIntervalMs", compactIntervalMs);
+        ReflectionTestUtils.setField(persistence, "writeRetries", 3);
+        ReflectionTestUtils.setField(persistence, "reserveTimeoutMs", 5_000L);
+        persistence.start();
+        return persistence;
+    }
+
+    private static Map<String, List<Integer>> contents(FavoritesStore store) {
+        Map<String, List<Integer>> contents = new HashMap<>();
+        store.forEach((user, favorites) -> contents.put(user, flightNumbers(favorites)));
+        return contents;
+    }
+
+    private static List<Integer> flightNumbers(FavoritesList favorites) {
+        List<Integer> flightNumbers = new ArrayList<>(favorites.size());
+        for (int i = 0; i < favorites.size(); i++) {
+            flightNumbers.add(favorites.flightNumberAt(i));
+        }
+        return flightNumbers;
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
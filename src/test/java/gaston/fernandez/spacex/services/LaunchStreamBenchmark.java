@@ -0,0 +1,76 @@
+package gaston.fernandez.spacex.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.OutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import gaston.fernandez.spacex.Benchmarks;
+import gaston.fernandez.spacex.collections.LaunchQuery;
+import gaston.fernandez.spacex.collections.LaunchStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Armar la respuesta completa de <code>/lunches</code> en memoria contra
+ * escribirla como NDJSON de a bloques: memoria reservada por request y tiempo
+ * hasta el primer bloque, con y sin proyeccion, sobre un catalogo de 20000
+ * lanzamientos. Se ejecuta con <code>mvn -Pbenchmark test</code>.
+ */
+@Slf4j
+class LaunchStreamBenchmark {
+
+    private static final int LAUNCHES = 20_000;
+
+    private static final LaunchQuery ACTIVE = new LaunchQuery(null, true, null, null, null, 0, Integer.MAX_VALUE);
+
+    private UpstreamStub stub;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        stub = new UpstreamStub();
+        stub.body(UpstreamStub.LAUNCHES, UpstreamStub.launches(LAUNCHES));
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    void bufferedPageVersusNdjsonChunks() throws Exception {
+        // La primera carga de 20000 lanzamientos puede superar la espera por defecto en una maquina lenta.
+        SpexServiceTestConfig.runner(stub).withPropertyValues("spacex.upstream.foreground-timeout-ms=120000")
+                .run(context -> {
+                    SpexService service = context.getBean(SpexService.class);
+                    service.getSpexLunches();
+                    for (String fields : new String[] { null, "flight_number,mission_name" }) {
+                        compare(service, fields);
+                    }
+                });
+    }
+
+    private static void compare(SpexService service, String fields) throws Exception {
+        long bufferedBytes = Benchmarks.allocatedBytes(() -> service.queryLunches(ACTIVE, fields));
+        long streamedBytes = Benchmarks.allocatedBytes(() -> drain(service.streamLunches(ACTIVE, fields)));
+        long buffered = Benchmarks.medianNanos(10, 21, () -> service.queryLunches(ACTIVE, fields));
+        long firstChunk = Benchmarks.medianNanos(10, 21,
+                () -> service.streamLunches(ACTIVE, fields).chunks().writeNext(OutputStream.nullOutputStream()));
+
+        log.info("{} lanzamientos activos, campos {}", LAUNCHES / 2, fields == null ? "todos" : fields);
+        log.info("JSON en memoria: {} KB reservados, respuesta lista en {} us", bufferedBytes >> 10,
+                Benchmarks.micros(buffered));
+        log.info("NDJSON por bloques: {} KB reservados, primer bloque en {} us", streamedBytes >> 10,
+                Benchmarks.micros(firstChunk));
+        assertThat(streamedBytes).isLessThan(bufferedBytes);
+    }
+
+    private static void drain(LaunchStream stream) throws Exception {
+        OutputStream out = OutputStream.nullOutputStream();
+        while (stream.chunks().writeNext(out)) {
+            // Cada llamada escribe un bloque de spacex.lunches.stream-flush-rows lanzamientos.
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package gaston.fernandez.spacex.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import gaston.fernandez.spacex.Benchmarks;
+import gaston.fernandez.spacex.dtos.SpexLunches;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Costo de crear un ObjectMapper en cada refresco, como antes, contra usar
+ * lectores y escritores armados una sola vez sobre el ObjectMapper compartido,
+ * con y sin Blackbird. Cada ronda lee y vuelve a escribir la lista de
+ * lanzamientos. Se ejecuta con <code>mvn -Pbenchmark test</code>.
+ */
+@Slf4j
+class ObjectMapperBenchmark {
+
+    private static final TypeReference<List<SpexLunches>> LAUNCH_LIST = new TypeReference<>() {
+    };
+
+    private final byte[] body = UpstreamStub.launches(1_000).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void mapperPerCallVersusSharedReaders() throws Exception {
+        ObjectMapper reflection = new ObjectMapper();
+        ObjectReader reflectionReader = reflection.readerFor(LAUNCH_LIST);
+        ObjectWriter reflectionWriter = reflection.writerFor(LAUNCH_LIST);
+        ObjectMapper blackbird = new ObjectMapper().registerModule(new BlackbirdModule());
+        ObjectReader blackbirdReader = blackbird.readerFor(LAUNCH_LIST);
+        ObjectWriter blackbirdWriter = blackbird.writerFor(LAUNCH_LIST);
+
+        long perCall = Benchmarks.medianNanos(20, 50, () -> {
+            ObjectMapper mapper = new ObjectMapper();
+            mapper.writeValueAsBytes(mapper.readValue(body, LAUNCH_LIST));
+        });
+        long shared = Benchmarks.medianNanos(200, 200,
+                () -> reflectionWriter.writeValueAsBytes(reflectionReader.readValue(body)));
+        long sharedBlackbird = Benchmarks.medianNanos(200, 200,
+                () -> blackbirdWriter.writeValueAsBytes(blackbirdReader.readValue(body)));
+
+        log.info("Leer y escribir 1000 lanzamientos ({} KB)", body.length >> 10);
+        log.info("ObjectMapper nuevo por llamada: {} us", Benchmarks.micros(perCall));
+        log.info("Lector y escritor compartidos: {} us", Benchmarks.micros(shared));
+        log.info("Compartidos con Blackbird: {} us", Benchmarks.micros(sharedBlackbird));
+        assertThat(shared).isLessThan(perCall);
+    }
+}
@@ -0,0 +1,193 @@
+package gaston.fernandez.spacex.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import gaston.fernandez.spacex.collections.LaunchPage;
+import gaston.fernandez.spacex.collections.LaunchQuery;
+
+/**
+ * Paginacion, filtros y proyeccion de <code>GET /lunches</code> en sus casos
+ * limite. El stub publica 20 lanzamientos: los pares con falcon1 (inactivo,
+ * 6700000) y los impares con falcon9 (activo, 50000000).
+ */
+class SpexServiceQueryTest {
+
+    private static final long FALCON1_COST = 6_700_000L;
+
+    private static final long FALCON9_COST = 50_000_000L;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private UpstreamStub stub;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        stub = new UpstreamStub();
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    void offsetPastTheEndReturnsAnEmptyPageWithTheTotal() throws Exception {
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+
+            assertPage(service.queryLunches(page(20, 10), null), 20);
+            assertPage(service.queryLunches(page(500, 10), null), 20);
+            assertPage(service.queryLunches(page(Integer.MAX_VALUE, Integer.MAX_VALUE), null), 20);
+        });
+    }
+
+    @Test
+    void limitZeroReturnsAnEmptyPageWithTheTotal() throws Exception {
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+
+            assertPage(service.queryLunches(page(0, 0), null), 20);
+            assertPage(service.queryLunches(new LaunchQuery("falcon9", null, null, null, null, 3, 0), null), 10);
+        });
+    }
+
+    @Test
+    void lastPageIsTruncated() throws Exception {
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+
+            assertPage(service.queryLunches(page(18, 5), null), 20, 19, 20);
+            assertPage(service.queryLunches(page(19, Integer.MAX_VALUE), null), 20, 20);
+        });
+    }
+
+    @Test
+    void fullUnfilteredPageReusesTheSnapshotPayload() throws Exception {
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+
+            assertThat(service.queryLunches(page(0, 20), null).payload())
+                    .isSameAs(service.getSpexLunchesPayload());
+            assertThat(service.queryLunches(page(0, 19), null).payload())
+                    .isNotSameAs(service.getSpexLunchesPayload());
+        });
+    }
+
+    @Test
+    void costBoundsAreInclusive() throws Exception {
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+
+            assertPage(service.queryLunches(cost(FALCON9_COST, null), null), 10, odd());
+            assertPage(service.queryLunches(cost(null, FALCON1_COST), null), 10, even());
+            assertPage(service.queryLunches(cost(FALCON1_COST, FALCON1_COST), null), 10, even());
+            assertPage(service.queryLunches(cost(FALCON1_COST + 1, FALCON9_COST - 1), null), 0);
+        });
+    }
+
+    @Test
+    void missionPrefixIsCaseInsensitive() throws Exception {
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+
+            assertPage(service.queryLunches(mission("mISSION 1"), null), 11, 1, 10, 11, 12, 13, 14, 15, 16, 17, 18,
+                    19);
+            assertPage(service.queryLunches(mission("Mission 20"), null), 1, 20);
+            assertPage(service.queryLunches(mission("Mission 200"), null), 0);
+            // Un prefijo vacio equivale a no filtrar.
+            assertThat(service.queryLunches(mission(""), null).payload())
+                    .isSameAs(service.getSpexLunchesPayload());
+        });
+    }
+
+    @Test
+    void rocketAndActiveFiltersAreCombined() throws Exception {
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+
+            assertPage(service.queryLunches(new LaunchQuery("falcon1", false, null, null, null, 0, 3), null), 10,
+                    2, 4, 6);
+            assertPage(service.queryLunches(new LaunchQuery("falcon9", false, null, null, null, 0, 20), null), 0);
+            assertPage(service.queryLunches(new LaunchQuery("bfr", null, null, null, null, 0, 20), null), 0);
+            assertPage(service.queryLunches(new LaunchQuery(null, true, null, null, "Mission 1", 2, 2), null), 6,
+                    13, 15);
+        });
+    }
+
+    @Test
+    void parallelScanReturnsTheSameRows() throws Exception {
+        SpexServiceTestConfig.runner(stub).withPropertyValues("spacex.lunches.parallel-scan-threshold=1")
+                .run(context -> {
+                    SpexService service = context.getBean(SpexService.class);
+
+                    assertPage(service.queryLunches(cost(FALCON9_COST, null), null), 10, odd());
+                    assertPage(service.queryLunches(new LaunchQuery(null, true, null, null, null, 8, 5), null), 10,
+                            17, 19);
+                });
+    }
+
+    @Test
+    void projectionKeepsOnlyTheRequestedFields() throws Exception {
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+
+            JsonNode page = mapper.readTree(service.queryLunches(page(0, 2), "flight_number, rocket").payload()
+                    .json());
+
+            assertThat(page).hasSize(2);
+            List<String> names = new ArrayList<>();
+            page.get(0).fieldNames().forEachRemaining(names::add);
+            assertThat(names).containsExactly("flight_number", "rocket");
+            assertThatThrownBy(() -> service.queryLunches(page(0, 2), "flight_number,cost"))
+                    .isInstanceOf(IllegalArgumentException.class);
+        });
+    }
+
+    @Test
+    void invalidBoundsAreRejected() {
+        assertThatThrownBy(() -> page(-1, 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> page(0, -1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> cost(FALCON9_COST, FALCON1_COST)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void assertPage(LaunchPage page, int total, int... flightNumbers) throws Exception {
+        List<Integer> actual = new ArrayList<>();
+        for (JsonNode launch : mapper.readTree(page.payload().json())) {
+            actual.add(launch.get("flight_number").asInt());
+        }
+        assertThat(page.total()).isEqualTo(total);
+        assertThat(actual).containsExactly(Arrays.stream(flightNumbers).boxed().toArray(Integer[]::new));
+    }
+
+    private static LaunchQuery page(int offset, int limit) {
+        return new LaunchQuery(null, null, null, null, null, offset, limit);
+    }
+
+    private static LaunchQuery cost(Long minCost, Long maxCost) {
+        return new LaunchQuery(null, null, minCost, maxCost, null, 0, Integer.MAX_VALUE);
+    }
+
+    private static LaunchQuery mission(String prefix) {
+        return new LaunchQuery(null, null, null, null, prefix, 0, Integer.MAX_VALUE);
+    }
+
+    private static int[] odd() {
+        return new int[] { 1, 3, 5, 7, 9, 11, 13, 15, 17, 19 };
+    }
+
+    private static int[] even() {
+        return new int[] { 2, 4, 6, 8, 10, 12, 14, 16, 18, 20 };
+    }
+}
@@ -0,0 +1,242 @@
+package gaston.fernandez.spacex.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import gaston.fernandez.spacex.collections.CachedResponse;
+import gaston.fernandez.spacex.collections.LaunchQuery;
+import gaston.fernandez.spacex.collections.LaunchSnapshot;
+import gaston.fernandez.spacex.collections.SerializedPayload;
+import gaston.fernandez.spacex.dtos.Rocket;
+import gaston.fernandez.spacex.dtos.SpexLunches;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Refresco del snapshot: carga compartida entre llamadores concurrentes,
+ * peticiones condicionales con ETag, asociacion de los lanzamientos con sus
+ * cohetes en una sola pasada y la cache de favoritos serializados, que depende
+ * del snapshot.
+ */
+class SpexServiceRefreshTest {
+
+    private UpstreamStub stub;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        stub = new UpstreamStub();
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    void concurrentColdCallersShareOneFetch() throws Exception {
+        stub.delay(UpstreamStub.LAUNCHES, 300);
+
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+
+            List<Object> results = callConcurrently(64, service);
+
+            assertThat(stub.requests(UpstreamStub.LAUNCHES)).isEqualTo(1);
+            assertThat(stub.requests(UpstreamStub.ROCKETS)).isEqualTo(1);
+            assertThat(results).doesNotContainNull();
+        });
+    }
+
+    @Test
+    void readerThatSawNoSnapshotDoesNotFetchOnceItIsLoaded() throws Exception {
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+            List<SpexLunches> loaded = service.getSpexLunches();
+
+            // Un lector que vio el snapshot vacio justo antes de que otro terminara de
+            // cargarlo llega al refresco cuando ya no hay ninguno en curso.
+            LaunchSnapshot reloaded = ReflectionTestUtils.invokeMethod(service, "loadSnapshot", false);
+
+            assertThat(reloaded.lunches()).isSameAs(loaded);
+            assertThat(stub.requests(UpstreamStub.LAUNCHES)).isEqualTo(1);
+
+            service.refreshSnapshot();
+
+            assertThat(stub.requests(UpstreamStub.LAUNCHES)).isEqualTo(2);
+        });
+    }
+
+    @Test
+    void notModifiedResponsesKeepTheCurrentSnapshot() throws Exception {
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+            List<SpexLunches> loaded = service.getSpexLunches();
+
+            service.refreshSnapshot();
+
+            assertThat(stub.requests(UpstreamStub.LAUNCHES)).isEqualTo(2);
+            assertThat(stub.notModified(UpstreamStub.LAUNCHES)).isEqualTo(1);
+            assertThat(stub.notModified(UpstreamStub.ROCKETS)).isEqualTo(1);
+            assertThat(service.getSpexLunches()).isSameAs(loaded);
+        });
+    }
+
+    @Test
+    void offHeapSnapshotKeepsOnlyTheValidatorsOfTheLaunches() throws Exception {
+        SpexServiceTestConfig.runner(stub).withPropertyValues("spacex.snapshot.storage=off-heap").run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+            List<SpexLunches> loaded = service.getSpexLunches();
+
+            CachedResponse<?> cached = (CachedResponse<?>) ReflectionTestUtils.getField(service, "cachedLaunches");
+            assertThat(cached.etag()).isNotNull();
+            assertThat(cached.value()).isNull();
+
+            service.refreshSnapshot();
+            assertThat(stub.requests(UpstreamStub.LAUNCHES)).isEqualTo(2);
+            assertThat(stub.notModified(UpstreamStub.LAUNCHES)).isEqualTo(1);
+            assertThat(service.getSpexLunches()).isSameAs(loaded);
+
+            // Sin la lista guardada, un cambio de cohetes obliga a descargar de nuevo los lanzamientos.
+            stub.body(UpstreamStub.ROCKETS, UpstreamStub.rockets().replace("50000000", "62000000"));
+            service.refreshSnapshot();
+            assertThat(stub.requests(UpstreamStub.LAUNCHES)).isEqualTo(4);
+            assertThat(stub.notModified(UpstreamStub.LAUNCHES)).isEqualTo(2);
+            assertThat(service.getSpexLunches().get(0).rocket().costPerLaunch()).isEqualTo(62_000_000L);
+            assertThat(service.getSpexLunches().get(1).rocket().costPerLaunch()).isEqualTo(6_700_000L);
+        });
+    }
+
+    @Test
+    void joinSharesOneRocketInstancePerRocketId() throws Exception {
+        stub.body(UpstreamStub.LAUNCHES, "[" + UpstreamStub.launch(1, "A", "a", "falcon9") + ","
+                + UpstreamStub.launch(2, "B", "b", "falcon1") + ","
+                + UpstreamStub.launch(3, "C", "c", "falcon9") + ","
+                + UpstreamStub.launch(4, "D", "d", "starship") + "]");
+
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+            List<SpexLunches> lunches = service.getSpexLunches();
+
+            assertThat(lunches).extracting(SpexLunches::flightNumber).containsExactly(1, 2, 3, 4);
+            assertThat(lunches.get(0).rocket())
+                    .isEqualTo(new Rocket("falcon9", "Falcon 9", true, 50_000_000L, "SpaceX"))
+                    .isSameAs(lunches.get(2).rocket());
+            assertThat(lunches.get(1).rocket().costPerLaunch()).isEqualTo(6_700_000L);
+            assertThat(lunches.get(3).rocket()).isNull();
+            assertThat(context.getBean(MeterRegistry.class).get("spacex.snapshot.unknown-rockets").counter()
+                    .count()).isEqualTo(1.0);
+            assertThat(context.getBean(MeterRegistry.class).get("spacex.snapshot.age").gauge().value())
+                    .isNotNaN();
+            assertThat(context.getBean(MeterRegistry.class).get("spacex.upstream.breaker.state").gauge().value())
+                    .isZero();
+            assertThat(new String(service.getSpexLunchesPayload().json(), StandardCharsets.UTF_8))
+                    .contains("\"flight_number\":4,\"mission_name\":\"D\",\"details\":\"d\",\"rocket\":null}");
+            // Un lanzamiento sin cohete no cumple los filtros sobre el cohete.
+            assertThat(service.queryLunches(new LaunchQuery(null, false, null, null, null, 0, 10), null).total())
+                    .isEqualTo(1);
+            assertThat(service.queryLunches(new LaunchQuery(null, null, null, 10L, null, 0, 10), null).total())
+                    .isZero();
+        });
+    }
+
+    @Test
+    void refreshReusesUnchangedLaunchesAndRebuildsChangedOnes() throws Exception {
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+            List<SpexLunches> before = service.getSpexLunches();
+
+            StringBuilder changed = new StringBuilder("[");
+            for (int i = 1; i <= 20; i++) {
+                changed.append(i > 1 ? "," : "").append(UpstreamStub.launch(i, "Mission " + i,
+                        i == 3 ? "Scrubbed" : "Details " + i, i % 2 == 0 ? "falcon1" : "falcon9"));
+            }
+            stub.body(UpstreamStub.LAUNCHES, changed.append(']').toString());
+            service.refreshSnapshot();
+            List<SpexLunches> after = service.getSpexLunches();
+
+            assertThat(after.get(2).details()).isEqualTo("Scrubbed");
+            for (int i = 0; i < 20; i++) {
+                if (i != 2) {
+                    assertThat(after.get(i)).isSameAs(before.get(i));
+                }
+            }
+        });
+    }
+
+    @Test
+    void changedRocketsAreJoinedIntoUnchangedLaunches() throws Exception {
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+            List<SpexLunches> before = service.getSpexLunches();
+
+            stub.body(UpstreamStub.ROCKETS, UpstreamStub.rockets().replace("50000000", "62000000"));
+            service.refreshSnapshot();
+            List<SpexLunches> after = service.getSpexLunches();
+
+            assertThat(stub.notModified(UpstreamStub.LAUNCHES)).isEqualTo(1);
+            assertThat(after.get(0).rocket().costPerLaunch()).isEqualTo(62_000_000L);
+            assertThat(after.get(1)).isSameAs(before.get(1));
+        });
+    }
+
+    @Test
+    void favoritesPayloadCacheEvictsTheLeastRecentlyUsedUser() throws Exception {
+        SpexServiceTestConfig.runner(stub).withPropertyValues("spacex.favorites.response-cache-size=2")
+                .run(context -> {
+                    SpexService service = context.getBean(SpexService.class);
+                    service.getSpexLunches();
+                    SerializedPayload first = service.addFavoriteLaunch("first", 1);
+                    SerializedPayload second = service.addFavoriteLaunch("second", 1);
+                    assertThat(service.getFavoritesPayload("first")).isSameAs(first);
+
+                    service.addFavoriteLaunch("third", 1);
+
+                    assertThat(service.getFavoritesPayload("first")).isSameAs(first);
+                    SerializedPayload rebuilt = service.getFavoritesPayload("second");
+                    assertThat(rebuilt).isNotSameAs(second);
+                    assertThat(rebuilt.etag()).isEqualTo(second.etag());
+                });
+    }
+
+    /**
+     * Llama en paralelo a las distintas lecturas del servicio, todas a la vez y
+     * con el snapshot todavia sin cargar.
+     */
+    private static List<Object> callConcurrently(int callers, SpexService service) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> calls = new ArrayList<>(callers);
+        try {
+            for (int i = 0; i < callers; i++) {
+                int caller = i;
+                calls.add(executor.submit(() -> {
+                    start.await();
+                    return switch (caller % 3) {
+                        case 0 -> service.getSpexLunches();
+                        case 1 -> service.getSpexLunchesPayload();
+                        default -> service.queryLunches(new LaunchQuery(null, null, null, null, null, 0, 5), null);
+                    };
+                }));
+            }
+            start.countDown();
+            List<Object> results = new ArrayList<>(callers);
+            for (Future<Object> call : calls) {
+                results.add(call.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
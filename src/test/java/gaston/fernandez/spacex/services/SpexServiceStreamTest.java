@@ -0,0 +1,122 @@
+package gaston.fernandez.spacex.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import gaston.fernandez.spacex.collections.LaunchQuery;
+import gaston.fernandez.spacex.collections.LaunchStream;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cuerpos que se escriben como stream: el NDJSON de <code>GET /lunches</code>
+ * escrito de a bloques y los frames del stream de cambios.
+ */
+class SpexServiceStreamTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private UpstreamStub stub;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        stub = new UpstreamStub();
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    void chunksConcatenateToTheRequestedPage() throws Exception {
+        SpexServiceTestConfig.runner(stub).withPropertyValues("spacex.lunches.stream-flush-rows=3")
+                .run(context -> {
+                    SpexService service = context.getBean(SpexService.class);
+                    LaunchQuery query = new LaunchQuery(null, null, null, null, null, 2, 13);
+
+                    for (String fields : new String[] { null, "flight_number,mission_name" }) {
+                        LaunchStream stream = service.streamLunches(query, fields);
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        int chunks = 0;
+                        boolean more;
+                        do {
+                            more = stream.chunks().writeNext(out);
+                            chunks++;
+                        } while (more);
+
+                        assertThat(stream.total()).isEqualTo(20);
+                        assertThat(chunks).isEqualTo(5);
+                        JsonNode page = mapper.readTree(service.queryLunches(query, fields).payload().json());
+                        List<JsonNode> lines = new ArrayList<>();
+                        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+                            lines.add(mapper.readTree(line));
+                        }
+                        assertThat(lines).containsExactlyElementsOf(page);
+                    }
+                });
+    }
+
+    @Test
+    void framesDeliverNewEventsAndReleaseTheSubscriberOnCancel() throws Exception {
+        SpexServiceTestConfig.runner(stub).withPropertyValues("spacex.stream.heartbeat-ms=60000")
+                .run(context -> {
+                    SpexService service = context.getBean(SpexService.class);
+                    service.getSpexLunches();
+                    LaunchChangeFeed.Subscription subscription = service.streamChanges(null);
+
+                    CompletableFuture<List<byte[]>> frames = subscription.frames().take(2).collectList()
+                            .toFuture();
+                    stub.body(UpstreamStub.LAUNCHES, UpstreamStub.launches(21));
+                    service.refreshSnapshot();
+
+                    List<byte[]> received = frames.get(5, TimeUnit.SECONDS);
+                    assertThat(new String(received.get(0), StandardCharsets.UTF_8)).startsWith(":");
+                    String delta = new String(received.get(1), StandardCharsets.UTF_8);
+                    assertThat(delta).contains("event: delta").contains("\"flight_number\":21");
+                    assertThat(context.getBean(MeterRegistry.class).get("spacex.stream.subscribers").gauge()
+                            .value()).isZero();
+                });
+    }
+
+    @Test
+    void snapshotVersionResumesTheStreamAfterThatSnapshot() throws Exception {
+        SpexServiceTestConfig.runner(stub).withPropertyValues("spacex.stream.heartbeat-ms=60000")
+                .run(context -> {
+                    SpexService service = context.getBean(SpexService.class);
+                    long initial = service.getSnapshotVersion();
+
+                    service.refreshSnapshot();
+                    assertThat(service.getSnapshotVersion()).isEqualTo(initial);
+
+                    stub.body(UpstreamStub.LAUNCHES, UpstreamStub.launches(21));
+                    service.refreshSnapshot();
+                    long changed = service.getSnapshotVersion();
+                    assertThat(changed).isGreaterThan(initial);
+
+                    List<byte[]> missed = service.streamChanges(Long.toString(initial)).frames()
+                            .take(Duration.ofMillis(300)).collectList().block();
+                    assertThat(missed).hasSize(2);
+                    assertThat(new String(missed.get(1), StandardCharsets.UTF_8)).startsWith("id: " + changed)
+                            .contains("\"flight_number\":21");
+
+                    List<byte[]> upToDate = service.streamChanges(Long.toString(changed)).frames()
+                            .take(Duration.ofMillis(300)).collectList().block();
+                    assertThat(upToDate).hasSize(1);
+                    assertThat(new String(upToDate.get(0), StandardCharsets.UTF_8)).startsWith(":");
+                });
+    }
+}
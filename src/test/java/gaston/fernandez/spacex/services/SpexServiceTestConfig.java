@@ -0,0 +1,53 @@
+package gaston.fernandez.spacex.services;
+
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.client.RestTemplate;
+
+import gaston.fernandez.spacex.collections.FavoritesStore;
+import gaston.fernandez.spacex.configs.JacksonConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Contexto minimo de Spring para probar {@link SpexService} contra un
+ * {@link UpstreamStub}: el servicio con sus colaboradores reales y el
+ * ObjectMapper configurado como en la aplicacion, sin servidor web ni refresco
+ * programado.
+ */
+@Configuration
+@Import({ SpexService.class, FavoritesStore.class, FavoritesPersistence.class, UpstreamCircuitBreaker.class,
+        LaunchChangeFeed.class, JacksonConfig.class })
+class SpexServiceTestConfig {
+
+    @Bean
+    RestTemplate restTemplate() {
+        return new RestTemplate();
+    }
+
+    @Bean
+    MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+
+    /**
+     * Retorna un runner con el servicio apuntando al stub, sin persistencia de
+     * favoritos, sin reintentos y sin descargas duplicadas. Cada test puede
+     * sobreescribir las propiedades que necesite.
+     */
+    static ApplicationContextRunner runner(UpstreamStub stub) {
+        return new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(JacksonAutoConfiguration.class))
+                .withUserConfiguration(SpexServiceTestConfig.class)
+                .withPropertyValues(
+                        "LAUNCHES_URL=" + stub.url(UpstreamStub.LAUNCHES),
+                        "ROCKETS_URL=" + stub.url(UpstreamStub.ROCKETS),
+                        "spacex.favorites.persistence.enabled=false",
+                        "spacex.upstream.retries=0",
+                        "spacex.upstream.hedge-delay-ms=0");
+    }
+}
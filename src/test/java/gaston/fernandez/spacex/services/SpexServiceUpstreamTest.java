@@ -0,0 +1,213 @@
+package gaston.fernandez.spacex.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import gaston.fernandez.spacex.dtos.Rocket;
+import gaston.fernandez.spacex.dtos.SpexLunches;
+import gaston.fernandez.spacex.exceptions.NoContentException;
+import gaston.fernandez.spacex.exceptions.UpstreamUnavailableException;
+
+/**
+ * Descarga de lanzamientos y cohetes desde la API de SpaceX: el parseo en
+ * streaming, las descargas en paralelo, los reintentos y el mapeo de errores.
+ */
+class SpexServiceUpstreamTest {
+
+    private UpstreamStub stub;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        stub = new UpstreamStub();
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    void streamingParseMatchesTreeModelParse() throws Exception {
+        String launches = "[" + UpstreamStub.launch(1, "FalconSat", "Engine failure at 33 seconds", "falcon1") + ","
+                + UpstreamStub.launch(2, "DemoSat \\u00e1\\u00e9 \\\"quoted\\\"", null, "falcon9") + ","
+                + UpstreamStub.launch(3, "Trailblazer", "Residual stage 1 thrust", "falcon1") + ","
+                + UpstreamStub.launch(4, "Unknown rocket", "d", "bfr") + "]";
+        stub.body(UpstreamStub.LAUNCHES, launches);
+
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            ObjectMapper mapper = context.getBean(ObjectMapper.class);
+            List<SpexLunches> expected = parseWithTreeModel(mapper, launches, UpstreamStub.rockets());
+
+            List<SpexLunches> parsed = context.getBean(SpexService.class).getSpexLunches();
+
+            assertThat(parsed).containsExactlyElementsOf(expected);
+            assertThat(parsed.get(1).missionName()).isEqualTo("DemoSat \u00e1\u00e9 \"quoted\"");
+            assertThat(parsed.get(1).details()).isNull();
+            assertThat(parsed.get(3).rocket()).isNull();
+        });
+    }
+
+    @Test
+    void fetchesLaunchesAndRocketsConcurrently() throws Exception {
+        stub.hold(UpstreamStub.LAUNCHES);
+        stub.hold(UpstreamStub.ROCKETS);
+
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                Future<List<SpexLunches>> lunches = executor.submit(context.getBean(SpexService.class)::getSpexLunches);
+
+                // En serie, la segunda peticion no sale hasta que se responde la primera.
+                assertThat(stub.awaitInFlight(2)).isTrue();
+                stub.release(UpstreamStub.LAUNCHES);
+                stub.release(UpstreamStub.ROCKETS);
+
+                assertThat(lunches.get()).hasSize(20);
+            }
+        });
+    }
+
+    @Test
+    void failedFetchCancelsTheOtherOne() throws Exception {
+        stub.hold(UpstreamStub.LAUNCHES);
+        stub.hold(UpstreamStub.ROCKETS);
+        stub.fail(UpstreamStub.ROCKETS, 500);
+
+        SpexServiceTestConfig.runner(stub).withPropertyValues("spacex.upstream.foreground-timeout-ms=60000")
+                .run(context -> {
+                    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                        Future<List<SpexLunches>> lunches = executor
+                                .submit(context.getBean(SpexService.class)::getSpexLunches);
+                        assertThat(stub.awaitInFlight(2)).isTrue();
+                        stub.release(UpstreamStub.ROCKETS);
+
+                        assertThatThrownBy(lunches::get).hasCauseInstanceOf(UpstreamUnavailableException.class)
+                                .hasMessageContaining("500");
+                        // Respondio con el error de los cohetes sin esperar a los lanzamientos.
+                        assertThat(stub.inFlight(UpstreamStub.LAUNCHES)).isEqualTo(1);
+                    }
+                });
+    }
+
+    @Test
+    void launchesWaitingForRocketsDoNotHoldAPermit() throws Exception {
+        stub.hold(UpstreamStub.ROCKETS);
+
+        SpexServiceTestConfig.runner(stub)
+                .withPropertyValues("spacex.upstream.max-concurrent-requests=2", "spacex.upstream.hedge-delay-ms=100")
+                .run(context -> {
+                    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                        Future<List<SpexLunches>> lunches = executor
+                                .submit(context.getBean(SpexService.class)::getSpexLunches);
+
+                        // Con los dos permisos ocupados por los cohetes y los lanzamientos que los
+                        // esperan, el segundo intento de cohetes nunca llegaria al servidor.
+                        assertThat(stub.awaitRequests(UpstreamStub.ROCKETS, 2)).isTrue();
+                        stub.release(UpstreamStub.ROCKETS);
+
+                        assertThat(lunches.get()).hasSize(20);
+                    }
+                });
+    }
+
+    @Test
+    void coldStartDoesNotRetryInTheForeground() throws Exception {
+        stub.fail(UpstreamStub.LAUNCHES, 500);
+
+        SpexServiceTestConfig.runner(stub)
+                .withPropertyValues("spacex.upstream.retries=2", "spacex.upstream.retry-backoff-ms=10",
+                        "spacex.upstream.breaker.failure-threshold=100")
+                .run(context -> {
+                    SpexService service = context.getBean(SpexService.class);
+
+                    assertThatThrownBy(service::getSpexLunches).isInstanceOf(UpstreamUnavailableException.class);
+                    assertThat(stub.requests(UpstreamStub.LAUNCHES)).isEqualTo(1);
+
+                    // El refresco en segundo plano si reintenta.
+                    service.refreshSnapshot();
+                    assertThat(stub.requests(UpstreamStub.LAUNCHES)).isEqualTo(4);
+                    assertThat(service.isSnapshotLoaded()).isFalse();
+                });
+    }
+
+    @Test
+    void coldStartIsBoundedByTheForegroundTimeout() throws Exception {
+        stub.hold(UpstreamStub.LAUNCHES);
+
+        SpexServiceTestConfig.runner(stub).withPropertyValues("spacex.upstream.foreground-timeout-ms=300")
+                .run(context -> {
+                    assertThatThrownBy(() -> context.getBean(SpexService.class).getSpexLunches())
+                            .isInstanceOf(UpstreamUnavailableException.class);
+                    // La respuesta de lanzamientos todavia no llego.
+                    assertThat(stub.inFlight(UpstreamStub.LAUNCHES)).isEqualTo(1);
+                });
+    }
+
+    @Test
+    void readerStopsWaitingForASlowBackgroundRefresh() throws Exception {
+        stub.hold(UpstreamStub.LAUNCHES);
+
+        SpexServiceTestConfig.runner(stub)
+                .withPropertyValues("spacex.upstream.foreground-timeout-ms=300", "spacex.upstream.hedge-delay-ms=60000")
+                .run(context -> {
+                    SpexService service = context.getBean(SpexService.class);
+                    Thread background = Thread.ofVirtual().start(service::refreshSnapshot);
+                    assertThat(stub.awaitRequests(UpstreamStub.LAUNCHES, 1)).isTrue();
+
+                    assertThatThrownBy(service::getSpexLunches).isInstanceOf(UpstreamUnavailableException.class)
+                            .hasMessageContaining("segundo plano");
+                    // El refresco sigue esperando la respuesta de lanzamientos.
+                    assertThat(stub.inFlight(UpstreamStub.LAUNCHES)).isEqualTo(1);
+
+                    stub.release(UpstreamStub.LAUNCHES);
+                    background.join();
+                    assertThat(service.getSpexLunches()).hasSize(20);
+                    assertThat(stub.requests(UpstreamStub.LAUNCHES)).isEqualTo(1);
+                });
+    }
+
+    @Test
+    void emptyResponseMapsToNoContentException() throws Exception {
+        stub.body(UpstreamStub.LAUNCHES, "");
+
+        SpexServiceTestConfig.runner(stub).run(context -> assertThatThrownBy(
+                () -> context.getBean(SpexService.class).getSpexLunches())
+                .isInstanceOf(NoContentException.class));
+    }
+
+    /**
+     * Parsea las respuestas armando el arbol JSON completo y asocia los cohetes,
+     * como hacia el servicio antes de leer en streaming.
+     */
+    private static List<SpexLunches> parseWithTreeModel(ObjectMapper mapper, String launches, String rockets)
+            throws Exception {
+        Map<String, Rocket> rocketsById = new HashMap<>();
+        for (JsonNode node : mapper.readTree(rockets)) {
+            Rocket rocket = mapper.treeToValue(node, Rocket.class);
+            rocketsById.put(rocket.rocketId(), rocket);
+        }
+        List<SpexLunches> joined = new ArrayList<>();
+        for (JsonNode node : mapper.readTree(launches)) {
+            JsonNode rocketNode = node.get("rocket");
+            // Un cohete que no esta en la lista se publica como null.
+            Rocket rocket = rocketsById.get(rocketNode.get("rocket_id").asText());
+            joined.add(new SpexLunches(node.get("flight_number").asInt(), node.get("mission_name").asText(),
+                    node.get("details").isNull() ? null : node.get("details").asText(), rocket));
+        }
+        return joined;
+    }
+}
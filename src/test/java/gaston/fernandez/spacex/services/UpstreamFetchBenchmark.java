@@ -0,0 +1,48 @@
+package gaston.fernandez.spacex.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import gaston.fernandez.spacex.Benchmarks;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Latencia de un refresco contra un stub lento: lanzamientos y cohetes se
+ * descargan en paralelo, por lo que un refresco tarda lo que la descarga mas
+ * lenta y no la suma de ambas. Se ejecuta con <code>mvn -Pbenchmark test</code>.
+ */
+@Slf4j
+class UpstreamFetchBenchmark {
+
+    private static final long DELAY_MS = 200;
+
+    private UpstreamStub stub;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        stub = new UpstreamStub();
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    void refreshLatencyAgainstASlowUpstream() throws Exception {
+        stub.delay(UpstreamStub.LAUNCHES, DELAY_MS);
+        stub.delay(UpstreamStub.ROCKETS, DELAY_MS);
+
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+            long median = Benchmarks.medianNanos(2, 10, service::refreshSnapshot);
+
+            log.info("Refresco con {} ms de demora por endpoint: mediana {} ms (en serie serian al menos {} ms)",
+                    DELAY_MS, median / 1_000_000, 2 * DELAY_MS);
+            assertThat(median / 1_000_000).isLessThan(2 * DELAY_MS);
+        });
+    }
+}
@@ -0,0 +1,74 @@
+package gaston.fernandez.spacex.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import gaston.fernandez.spacex.Benchmarks;
+import gaston.fernandez.spacex.dtos.SpexLunches;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Memoria y tiempo de parsear la respuesta de lanzamientos leyendo el cuerpo
+ * completo a un String, como antes, contra recorrer el arreglo con un
+ * JsonParser sobre el stream y armar un elemento a la vez, como hace
+ * <code>SpexService.readArray</code>. Se ejecuta con
+ * <code>mvn -Pbenchmark test</code>.
+ */
+@Slf4j
+class UpstreamParseBenchmark {
+
+    private static final int LAUNCHES = 5_000;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final ObjectReader launchReader = mapper.readerFor(SpexLunches.class);
+
+    private final byte[] body = UpstreamStub.launches(LAUNCHES).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void bufferedStringVersusStreamingParse() throws Exception {
+        assertThat(streamed()).isEqualTo(buffered());
+
+        long bufferedBytes = Benchmarks.allocatedBytes(this::buffered);
+        long streamedBytes = Benchmarks.allocatedBytes(this::streamed);
+        long bufferedNanos = Benchmarks.medianNanos(20, 30, this::buffered);
+        long streamedNanos = Benchmarks.medianNanos(20, 30, this::streamed);
+
+        log.info("Cuerpo de {} lanzamientos, {} KB", LAUNCHES, body.length >> 10);
+        log.info("String + readValue: {} KB reservados, {} us", bufferedBytes >> 10,
+                Benchmarks.micros(bufferedNanos));
+        log.info("JsonParser en stream: {} KB reservados, {} us", streamedBytes >> 10,
+                Benchmarks.micros(streamedNanos));
+        assertThat(streamedBytes).isLessThan(bufferedBytes);
+    }
+
+    private List<SpexLunches> buffered() throws Exception {
+        String response = new String(new ByteArrayInputStream(body).readAllBytes(), StandardCharsets.UTF_8);
+        return mapper.readValue(response, new TypeReference<List<SpexLunches>>() {
+        });
+    }
+
+    private List<SpexLunches> streamed() throws Exception {
+        List<SpexLunches> launches = new ArrayList<>();
+        try (InputStream in = new ByteArrayInputStream(body); JsonParser parser = launchReader.createParser(in)) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                launches.add(launchReader.readValue(parser));
+            }
+        }
+        return launches;
+    }
+}
@@ -0,0 +1,240 @@
+package gaston.fernandez.spacex.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Servidor HTTP local que imita los endpoints de lanzamientos y cohetes de la
+ * API de SpaceX para los tests.
+ * <p>
+ * Responde cada ruta con el cuerpo configurado y su ETag, y con 304 si la
+ * peticion trae ese ETag en <code>If-None-Match</code>. Cuenta las peticiones
+ * por ruta, y cuantas estan en curso a la vez, y permite demorar, retener o
+ * hacer fallar las respuestas.
+ */
+final class UpstreamStub implements AutoCloseable {
+
+    static final String LAUNCHES = "/launches";
+
+    static final String ROCKETS = "/rockets";
+
+    private final HttpServer server;
+
+    private final Map<String, byte[]> bodies = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> delays = new ConcurrentHashMap<>();
+
+    private final Map<String, Integer> failures = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicInteger> notModified = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    private final Map<String, CountDownLatch> holds = new ConcurrentHashMap<>();
+
+    private final AtomicInteger totalInFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    UpstreamStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", this::handle);
+        server.start();
+        body(LAUNCHES, launches(20));
+        body(ROCKETS, rockets());
+    }
+
+    /**
+     * Retorna un arreglo JSON de lanzamientos numerados de 1 a
+     * <code>count</code>, con atributos que el servicio no mapea. Los pares usan
+     * el cohete <code>falcon1</code>, los impares <code>falcon9</code>.
+     */
+    static String launches(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 1; i <= count; i++) {
+            if (i > 1) {
+                json.append(',');
+            }
+            json.append(launch(i, "Mission " + i, "Details " + i, i % 2 == 0 ? "falcon1" : "falcon9"));
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Retorna un lanzamiento en el formato de la API, con atributos extra que el
+     * servicio debe ignorar.
+     */
+    static String launch(int flightNumber, String missionName, String details, String rocketId) {
+        return "{\"flight_number\":" + flightNumber + ",\"mission_name\":\"" + missionName + "\",\"details\":"
+                + (details == null ? "null" : "\"" + details + "\"") + ",\"rocket\":{\"rocket_id\":\"" + rocketId
+                + "\",\"rocket_name\":\"parcial\",\"first_stage\":{\"cores\":[{\"core_serial\":\"B1\"}]}},"
+                + "\"links\":{\"patch\":null,\"flickr\":[]},\"upcoming\":false}";
+    }
+
+    /**
+     * Retorna los cohetes <code>falcon1</code> (inactivo, 6700000) y
+     * <code>falcon9</code> (activo, 50000000).
+     */
+    static String rockets() {
+        return "[{\"rocket_id\":\"falcon1\",\"rocket_name\":\"Falcon 1\",\"active\":false,"
+                + "\"cost_per_launch\":6700000,\"company\":\"SpaceX\",\"height\":{\"meters\":22.25}},"
+                + "{\"rocket_id\":\"falcon9\",\"rocket_name\":\"Falcon 9\",\"active\":true,"
+                + "\"cost_per_launch\":50000000,\"company\":\"SpaceX\"}]";
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    void body(String path, String json) {
+        bodies.put(path, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    void delay(String path, long millis) {
+        delays.put(path, millis);
+    }
+
+    void fail(String path, int status) {
+        failures.put(path, status);
+    }
+
+    void recover(String path) {
+        failures.remove(path);
+    }
+
+    /**
+     * Retiene las respuestas de la ruta hasta que se llame a
+     * {@link #release(String)}.
+     */
+    void hold(String path) {
+        holds.put(path, new CountDownLatch(1));
+    }
+
+    void release(String path) {
+        CountDownLatch hold = holds.remove(path);
+        if (hold != null) {
+            hold.countDown();
+        }
+    }
+
+    /**
+     * Retorna la cantidad de peticiones de la ruta que todavia no se
+     * respondieron.
+     */
+    int inFlight(String path) {
+        return counter(inFlight, path).get();
+    }
+
+    /**
+     * Retorna la mayor cantidad de peticiones sin responder que hubo a la vez,
+     * sumando todas las rutas.
+     */
+    int maxInFlight() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * Espera a que la ruta reciba <code>count</code> peticiones. Retorna
+     * <code>false</code> si no llegan en 10 segundos.
+     */
+    boolean awaitRequests(String path, int count) throws InterruptedException {
+        return await(() -> requests(path) >= count);
+    }
+
+    /**
+     * Espera a que haya <code>count</code> peticiones sin responder a la vez,
+     * sumando todas las rutas. Retorna <code>false</code> si no se alcanzan en 10
+     * segundos.
+     */
+    boolean awaitInFlight(int count) throws InterruptedException {
+        return await(() -> maxInFlight() >= count);
+    }
+
+    /**
+     * Retorna la cantidad de peticiones recibidas en la ruta, incluidas las que
+     * se respondieron con 304.
+     */
+    int requests(String path) {
+        return counter(requests, path).get();
+    }
+
+    int notModified(String path) {
+        return counter(notModified, path).get();
+    }
+
+    @Override
+    public void close() {
+        holds.keySet().forEach(this::release);
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        counter(requests, path).incrementAndGet();
+        counter(inFlight, path).incrementAndGet();
+        maxInFlight.accumulateAndGet(totalInFlight.incrementAndGet(), Math::max);
+        try (exchange) {
+            long delay = delays.getOrDefault(path, 0L);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            CountDownLatch hold = holds.get(path);
+            if (hold != null) {
+                hold.await();
+            }
+            Integer failure = failures.get(path);
+            byte[] body = bodies.get(path);
+            if (failure != null || body == null) {
+                exchange.sendResponseHeaders(failure == null ? 404 : failure, -1);
+                return;
+            }
+            String etag = "\"" + Integer.toHexString(java.util.Arrays.hashCode(body)) + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                counter(notModified, path).incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            totalInFlight.decrementAndGet();
+            counter(inFlight, path).decrementAndGet();
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private static AtomicInteger counter(Map<String, AtomicInteger> counters, String path) {
+        return counters.computeIfAbsent(path, key -> new AtomicInteger());
+    }
+}
@@ -0,0 +1,69 @@
+package gaston.fernandez.spacex.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import gaston.fernandez.spacex.Benchmarks;
+import gaston.fernandez.spacex.collections.SerializedPayload;
+import gaston.fernandez.spacex.collections.WireFormat;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tamano y tiempo de decodificacion de la lista de lanzamientos en JSON, Smile
+ * y CBOR, sobre un catalogo de 200 lanzamientos. Cada formato se decodifica con
+ * un ObjectMapper de su tipo, como haria un cliente. Se ejecuta con
+ * <code>mvn -Pbenchmark test</code>.
+ */
+@Slf4j
+class WireFormatBenchmark {
+
+    private static final int LAUNCHES = 200;
+
+    private UpstreamStub stub;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        stub = new UpstreamStub();
+        stub.body(UpstreamStub.LAUNCHES, UpstreamStub.launches(LAUNCHES));
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    void sizeAndDecodeTimePerFormat() throws Exception {
+        SpexServiceTestConfig.runner(stub).run(context -> {
+            SpexService service = context.getBean(SpexService.class);
+            SerializedPayload json = service.getSpexLunchesPayload();
+            JsonNode expected = new ObjectMapper().readTree(json.json());
+
+            log.info("{} lanzamientos", LAUNCHES);
+            for (WireFormat format : WireFormat.values()) {
+                byte[] body = service.encode(json, format).json();
+                ObjectMapper mapper = mapper(format);
+                assertThat(mapper.readTree(body)).isEqualTo(expected);
+                long decode = Benchmarks.medianNanos(500, 501, () -> mapper.readTree(body));
+                log.info("{}: {} bytes, {} gzip, decodificado en {} us", format, body.length,
+                        SerializedPayload.of(body).gzip().length, Benchmarks.micros(decode));
+            }
+        });
+    }
+
+    private static ObjectMapper mapper(WireFormat format) {
+        return switch (format) {
+        case JSON -> new ObjectMapper();
+        case SMILE -> new ObjectMapper(new SmileFactory());
+        case CBOR -> new ObjectMapper(new CBORFactory());
+        };
+    }
+}